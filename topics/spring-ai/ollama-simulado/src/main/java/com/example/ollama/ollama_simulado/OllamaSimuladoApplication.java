@@ -0,0 +1,13 @@
+package com.example.ollama.ollama_simulado;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class OllamaSimuladoApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(OllamaSimuladoApplication.class, args);
+	}
+
+}
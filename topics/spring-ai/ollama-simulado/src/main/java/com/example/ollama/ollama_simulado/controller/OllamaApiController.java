@@ -0,0 +1,260 @@
+package com.example.ollama.ollama_simulado.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.example.ollama.ollama_simulado.service.CompletionService;
+import com.example.ollama.ollama_simulado.service.CompletionService.Completion;
+import com.example.ollama.ollama_simulado.service.HashEmbeddingService;
+import com.example.ollama.ollama_simulado.service.LatencySimulator;
+
+import tools.jackson.databind.json.JsonMapper;
+
+/*
+Subconjunto de la API HTTP de Ollama que usa Spring AI: /api/chat y /api/generate (con y sin stream,
+en NDJSON como Ollama), /api/embed y el antiguo /api/embeddings, más /api/tags, /api/show, /api/pull y
+/api/version para los clientes que consultan los modelos al arrancar. Se acepta cualquier nombre de
+modelo. Los errores se devuelven como {"error": "..."}, igual que Ollama.
+*/
+@RestController
+public class OllamaApiController {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaApiController.class);
+
+    private final HashEmbeddingService embeddingService;
+    private final CompletionService completionService;
+    private final LatencySimulator latency;
+    private final JsonMapper jsonMapper;
+    private final List<String> models;
+    private final double embedMillis;
+    private final double embedMillisPerText;
+    private final double firstTokenMillis;
+    private final double tokenMillis;
+
+    public OllamaApiController(HashEmbeddingService embeddingService,
+                               CompletionService completionService,
+                               LatencySimulator latency,
+                               JsonMapper jsonMapper,
+                               @Value("${simulado.modelos:llama3.1:latest}") List<String> models,
+                               @Value("${simulado.embed.latencia-ms:15}") double embedMillis,
+                               @Value("${simulado.embed.latencia-por-texto-ms:2}") double embedMillisPerText,
+                               @Value("${simulado.chat.primer-token-ms:200}") double firstTokenMillis,
+                               @Value("${simulado.chat.por-token-ms:15}") double tokenMillis) {
+        this.embeddingService = embeddingService;
+        this.completionService = completionService;
+        this.latency = latency;
+        this.jsonMapper = jsonMapper;
+        this.models = models;
+        this.embedMillis = embedMillis;
+        this.embedMillisPerText = embedMillisPerText;
+        this.firstTokenMillis = firstTokenMillis;
+        this.tokenMillis = tokenMillis;
+    }
+
+    @GetMapping("/")
+    public String estado() {
+        return "Ollama is running";
+    }
+
+    @GetMapping("/api/version")
+    public Map<String, Object> version() {
+        return Map.of("version", "0.0.0-simulado");
+    }
+
+    @GetMapping("/api/tags")
+    public Map<String, Object> modelos() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (String model : models) {
+            list.add(Map.of(
+                    "name", model,
+                    "model", model,
+                    "modified_at", Instant.EPOCH.toString(),
+                    "size", 0,
+                    "digest", Long.toHexString(HashEmbeddingService.hash(model)),
+                    "details", Map.of("format", "simulado", "family", "simulado")));
+        }
+        return Map.of("models", list);
+    }
+
+    @PostMapping("/api/show")
+    public Map<String, Object> mostrar(@RequestBody Map<String, Object> request) {
+        return Map.of(
+                "modelfile", "",
+                "parameters", "",
+                "template", "",
+                "details", Map.of("format", "simulado", "family", "simulado"),
+                "model_info", Map.of(),
+                "capabilities", List.of("completion", "embedding"));
+    }
+
+    // no hay nada que descargar: responde como si el modelo ya estuviera disponible
+    @PostMapping("/api/pull")
+    public Map<String, Object> descargar(@RequestBody Map<String, Object> request) {
+        return Map.of("status", "success");
+    }
+
+    @PostMapping("/api/embed")
+    public ResponseEntity<?> embed(@RequestBody Map<String, Object> request) {
+        long start = System.nanoTime();
+        List<String> inputs = new ArrayList<>();
+        if (request.get("input") instanceof List<?> list) {
+            list.forEach(input -> inputs.add(String.valueOf(input)));
+        } else if (request.get("input") != null) {
+            inputs.add(String.valueOf(request.get("input")));
+        }
+
+        SplittableRandom random = latency.nextRequest();
+        latency.sleep(embedMillis + embedMillisPerText * inputs.size(), random);
+        if (latency.shouldFail(random)) {
+            return error("error simulado al calcular embeddings");
+        }
+
+        List<float[]> embeddings = new ArrayList<>(inputs.size());
+        int tokens = 0;
+        for (String input : inputs) {
+            embeddings.add(embeddingService.embed(input));
+            tokens += HashEmbeddingService.estimateTokens(input);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("model", request.get("model"));
+        response.put("embeddings", embeddings);
+        response.put("total_duration", System.nanoTime() - start);
+        response.put("load_duration", 0);
+        response.put("prompt_eval_count", tokens);
+        return ResponseEntity.ok(response);
+    }
+
+    // API anterior a /api/embed: un solo texto en "prompt"
+    @PostMapping("/api/embeddings")
+    public ResponseEntity<?> embeddings(@RequestBody Map<String, Object> request) {
+        SplittableRandom random = latency.nextRequest();
+        latency.sleep(embedMillis + embedMillisPerText, random);
+        if (latency.shouldFail(random)) {
+            return error("error simulado al calcular embeddings");
+        }
+        return ResponseEntity.ok(Map.of("embedding",
+                embeddingService.embed(String.valueOf(request.getOrDefault("prompt", "")))));
+    }
+
+    @PostMapping("/api/chat")
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<?> chat(@RequestBody Map<String, Object> request) {
+        List<Map<String, Object>> messages = request.get("messages") instanceof List<?> list
+                ? (List<Map<String, Object>>) list
+                : List.of();
+        return responder(request, messages, true);
+    }
+
+    @PostMapping("/api/generate")
+    public ResponseEntity<?> generate(@RequestBody Map<String, Object> request) {
+        List<Map<String, Object>> messages = new ArrayList<>();
+        if (request.get("system") != null) {
+            messages.add(Map.of("role", "system", "content", request.get("system")));
+        }
+        messages.add(Map.of("role", "user", "content", request.getOrDefault("prompt", "")));
+        return responder(request, messages, false);
+    }
+
+    private ResponseEntity<?> responder(Map<String, Object> request, List<Map<String, Object>> messages,
+                                        boolean chat) {
+        long start = System.nanoTime();
+        String model = String.valueOf(request.getOrDefault("model", ""));
+        // como en Ollama, stream es true salvo que se pida lo contrario
+        boolean stream = !Boolean.FALSE.equals(request.get("stream"));
+        SplittableRandom random = latency.nextRequest();
+        Completion completion = completionService.completar(model, messages, request.get("format"));
+
+        if (latency.shouldFail(random)) {
+            latency.sleep(firstTokenMillis, random);
+            return error("error simulado del modelo " + model);
+        }
+
+        if (!stream) {
+            long millis = latency.sampleMillis(firstTokenMillis, random);
+            for (int i = 0; i < completion.getCompletionTokens(); i++) {
+                millis += latency.sampleMillis(tokenMillis, random);
+            }
+            latency.pause(millis);
+            Map<String, Object> response = chunk(model, completion.getText(), chat);
+            response.putAll(summary(completion, start));
+            return ResponseEntity.ok(response);
+        }
+
+        boolean cut = latency.shouldCutStream(random);
+        StreamingResponseBody body = output -> {
+            latency.sleep(firstTokenMillis, random);
+            List<String> pieces = completion.getPieces();
+            for (int i = 0; i < pieces.size(); i++) {
+                if (cut && i == pieces.size() / 2) {
+                    log.debug("Corte simulado del stream de {} tras {} fragmentos", model, i);
+                    throw new IOException("Corte simulado del stream");
+                }
+                if (i > 0) {
+                    latency.sleep(tokenMillis, random);
+                }
+                writeLine(output, chunk(model, pieces.get(i), chat));
+            }
+            Map<String, Object> last = chunk(model, "", chat);
+            last.putAll(summary(completion, start));
+            writeLine(output, last);
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private Map<String, Object> chunk(String model, String content, boolean chat) {
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        if (chat) {
+            chunk.put("message", Map.of("role", "assistant", "content", content));
+        } else {
+            chunk.put("response", content);
+        }
+        chunk.put("done", false);
+        return chunk;
+    }
+
+    // campos del último mensaje: Spring AI toma de aquí el uso de tokens
+    private Map<String, Object> summary(Completion completion, long start) {
+        long total = System.nanoTime() - start;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("done_reason", "stop");
+        summary.put("done", true);
+        summary.put("total_duration", total);
+        summary.put("load_duration", 0);
+        summary.put("prompt_eval_count", completion.getPromptTokens());
+        summary.put("prompt_eval_duration", 0);
+        summary.put("eval_count", completion.getCompletionTokens());
+        summary.put("eval_duration", total);
+        return summary;
+    }
+
+    private void writeLine(OutputStream output, Map<String, Object> line) throws IOException {
+        output.write(jsonMapper.writeValueAsBytes(line));
+        output.write('\n');
+        output.flush();
+    }
+
+    private ResponseEntity<?> error(String message) {
+        log.debug("Error simulado: {}", message);
+        return ResponseEntity.status(latency.getErrorStatus()).body(Map.of("error", message));
+    }
+}
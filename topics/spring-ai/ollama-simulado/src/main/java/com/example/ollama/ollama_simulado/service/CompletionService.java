@@ -0,0 +1,235 @@
+package com.example.ollama.ollama_simulado.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+/*
+Respuestas deterministas del modelo de chat: el mismo modelo con los mismos mensajes produce siempre el
+mismo texto, porque todas las elecciones salen de un generador sembrado con el hash de la conversación.
+
+- Texto libre: la plantilla simulado.chat.plantilla, donde {modelo} es el modelo pedido y {texto} son
+  simulado.chat.palabras palabras tomadas del último mensaje del usuario, en frases. Una plantilla sin
+  {texto} da una respuesta fija.
+- JSON (format = "json" o un esquema): un objeto que cumple el esquema. Si format es "json", el esquema
+  se busca en el prompt entre ``` (como lo escribe BeanOutputConverter). Para un campo de texto sin enum
+  se eligen valores de una línea del prompt del tipo "- categoria: RED, SOFTWARE, HARDWARE"; así la
+  clasificación de tickets recibe categorías válidas.
+*/
+@Service
+public class CompletionService {
+
+    private static final Pattern UPPERCASE_OPTION = Pattern.compile("[\\p{Lu}0-9_]+");
+    private static final int JSON_PIECE_LENGTH = 8;
+
+    private final JsonMapper jsonMapper;
+    private final String template;
+    private final int words;
+
+    public CompletionService(
+            JsonMapper jsonMapper,
+            @Value("${simulado.chat.plantilla:Respuesta simulada de {modelo}. {texto}}") String template,
+            @Value("${simulado.chat.palabras:60}") int words) {
+        this.jsonMapper = jsonMapper;
+        this.template = template;
+        this.words = words;
+    }
+
+    public Completion completar(String model, List<Map<String, Object>> messages, Object format) {
+        StringBuilder conversation = new StringBuilder(model);
+        String lastUserMessage = "";
+        for (Map<String, Object> message : messages) {
+            String content = String.valueOf(message.getOrDefault("content", ""));
+            conversation.append('\n').append(message.get("role")).append(": ").append(content);
+            if ("user".equals(message.get("role"))) {
+                lastUserMessage = content;
+            }
+        }
+        String prompt = conversation.toString();
+        SplittableRandom random = new SplittableRandom(HashEmbeddingService.hash(prompt));
+
+        int promptTokens = HashEmbeddingService.estimateTokens(prompt);
+        if (format == null || "".equals(format)) {
+            String text = template.replace("{modelo}", model).replace("{texto}", sentences(lastUserMessage, random));
+            return new Completion(splitWords(text), promptTokens);
+        }
+
+        Object schema = format instanceof Map<?, ?> ? format : schemaInPrompt(prompt);
+        Object value = schema instanceof Map<?, ?> map
+                ? instance(map, "", prompt, lastUserMessage, random)
+                : Map.of("respuesta", sentences(lastUserMessage, random));
+        String json = jsonMapper.writeValueAsString(value);
+        List<String> pieces = new ArrayList<>();
+        for (int i = 0; i < json.length(); i += JSON_PIECE_LENGTH) {
+            pieces.add(json.substring(i, Math.min(json.length(), i + JSON_PIECE_LENGTH)));
+        }
+        return new Completion(pieces, promptTokens);
+    }
+
+    // valor que cumple el esquema (subconjunto de JSON Schema: type, enum, properties, items)
+    private Object instance(Map<?, ?> schema, String name, String prompt, String source, SplittableRandom random) {
+        if (schema.get("enum") instanceof List<?> options && !options.isEmpty()) {
+            return options.get(random.nextInt(options.size()));
+        }
+        String type = type(schema.get("type"));
+        switch (type) {
+            case "object" -> {
+                Map<String, Object> object = new LinkedHashMap<>();
+                if (schema.get("properties") instanceof Map<?, ?> properties) {
+                    properties.forEach((property, subschema) -> object.put(property.toString(),
+                            subschema instanceof Map<?, ?> map
+                                    ? instance(map, property.toString(), prompt, source, random)
+                                    : null));
+                }
+                return object;
+            }
+            case "array" -> {
+                List<Object> items = new ArrayList<>();
+                int count = 1 + random.nextInt(3);
+                for (int i = 0; i < count; i++) {
+                    items.add(schema.get("items") instanceof Map<?, ?> map
+                            ? instance(map, name, prompt, source, random)
+                            : sentence(source, random));
+                }
+                return items;
+            }
+            case "integer" -> {
+                return 1 + random.nextInt(100);
+            }
+            case "number" -> {
+                return Math.round(random.nextDouble() * 10000) / 100.0;
+            }
+            case "boolean" -> {
+                return random.nextBoolean();
+            }
+            default -> {
+                List<String> options = optionsInPrompt(name, prompt);
+                return options.isEmpty() ? sentence(source, random) : options.get(random.nextInt(options.size()));
+            }
+        }
+    }
+
+    private static String type(Object type) {
+        if (type instanceof List<?> types) {
+            return types.stream().map(Object::toString).filter(t -> !"null".equals(t)).findFirst().orElse("string");
+        }
+        return type == null ? "string" : type.toString();
+    }
+
+    // "- nombre: OPCION_A, OPCION_B, ..." en alguna línea del prompt
+    private static List<String> optionsInPrompt(String name, String prompt) {
+        if (name.isEmpty()) {
+            return List.of();
+        }
+        Matcher matcher = Pattern.compile("(?im)^[\\s\\-*]*" + Pattern.quote(name) + "\\s*:\\s*(.+)$").matcher(prompt);
+        while (matcher.find()) {
+            List<String> options = new ArrayList<>();
+            for (String option : matcher.group(1).split(",")) {
+                options.add(option.strip());
+            }
+            if (options.size() > 1 && options.stream().allMatch(o -> UPPERCASE_OPTION.matcher(o).matches())) {
+                return options;
+            }
+        }
+        return List.of();
+    }
+
+    // primer bloque entre ``` que sea un objeto JSON; "```json markdown" y otros bloques se saltan
+    private Object schemaInPrompt(String prompt) {
+        int start = prompt.indexOf("```");
+        while (start >= 0) {
+            int end = prompt.indexOf("```", start + 3);
+            if (end < 0) {
+                return null;
+            }
+            String block = prompt.substring(start + 3, end).strip();
+            if (block.startsWith("json")) {
+                block = block.substring(4).strip();
+            }
+            if (block.startsWith("{")) {
+                try {
+                    return jsonMapper.readValue(block, Map.class);
+                } catch (JacksonException e) {
+                    // no era un esquema: se sigue buscando
+                }
+            }
+            start = block.startsWith("{") ? end + 3 : end;
+        }
+        return null;
+    }
+
+    // frases de 6 a 14 palabras del texto de origen, en total simulado.chat.palabras palabras
+    private String sentences(String source, SplittableRandom random) {
+        StringBuilder text = new StringBuilder();
+        int remaining = words;
+        while (remaining > 0) {
+            int length = Math.min(remaining, 6 + random.nextInt(9));
+            text.append(text.isEmpty() ? "" : " ").append(sentence(source, random, length));
+            remaining -= length;
+        }
+        return text.toString();
+    }
+
+    private static String sentence(String source, SplittableRandom random) {
+        return sentence(source, random, 6 + random.nextInt(7));
+    }
+
+    private static String sentence(String source, SplittableRandom random, int length) {
+        List<String> vocabulary = HashEmbeddingService.tokenize(source);
+        if (vocabulary.isEmpty()) {
+            vocabulary = List.of("respuesta", "simulada", "sin", "contenido");
+        }
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            String word = vocabulary.get(random.nextInt(vocabulary.size()));
+            sentence.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : " " + word);
+        }
+        return sentence.append('.').toString();
+    }
+
+    // cada palabra con su espacio es un "token" del stream, como los fragmentos de Ollama
+    private static List<String> splitWords(String text) {
+        List<String> pieces = new ArrayList<>();
+        Matcher matcher = Pattern.compile("\\S+\\s*").matcher(text);
+        while (matcher.find()) {
+            pieces.add(matcher.group());
+        }
+        return pieces;
+    }
+
+    public static class Completion {
+        private final List<String> pieces;
+        private final int promptTokens;
+
+        Completion(List<String> pieces, int promptTokens) {
+            this.pieces = pieces;
+            this.promptTokens = promptTokens;
+        }
+
+        public List<String> getPieces() {
+            return pieces;
+        }
+
+        public String getText() {
+            return String.join("", pieces);
+        }
+
+        public int getPromptTokens() {
+            return promptTokens;
+        }
+
+        public int getCompletionTokens() {
+            return pieces.size();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ollama.ollama_simulado.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/*
+Embeddings deterministas sin modelo (feature hashing): cada término del texto (minúsculas, sin acentos,
+de al menos tres letras) y cada par de términos consecutivos suma ±peso en la dimensión que indica su
+hash. El peso crece con el logaritmo de la frecuencia para que las palabras repetidas no dominen. El
+vector se normaliza como los de Ollama, así que textos que comparten términos quedan cerca en coseno y
+el mismo texto da siempre el mismo vector, en cualquier máquina.
+
+No entiende sinónimos: sirve para probar el lado Java (troceado, índices, persistencia, caché) con
+recuperación razonable, no para medir la calidad de un modelo real.
+*/
+@Service
+public class HashEmbeddingService {
+
+    private static final float BIGRAM_WEIGHT = 0.5f;
+    private static final int MIN_TOKEN_LENGTH = 3;
+
+    private final int dimensions;
+
+    public HashEmbeddingService(@Value("${simulado.embed.dimensiones:768}") int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    public float[] embed(String text) {
+        List<String> tokens = tokenize(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            frequencies.merge(tokens.get(i), 1, Integer::sum);
+            if (i > 0) {
+                frequencies.merge(tokens.get(i - 1) + ' ' + tokens.get(i), 1, Integer::sum);
+            }
+        }
+
+        float[] vector = new float[dimensions];
+        frequencies.forEach((feature, frequency) -> {
+            long hash = hash(feature);
+            float weight = (feature.indexOf(' ') < 0 ? 1f : BIGRAM_WEIGHT) * (1f + (float) Math.log(frequency));
+            vector[(int) Long.remainderUnsigned(hash, dimensions)] += hash < 0 ? -weight : weight;
+        });
+        return normalize(vector);
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    // aproximación del conteo de tokens de Ollama (~4 caracteres por token), para prompt_eval_count
+    public static int estimateTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : Math.max(1, (text.length() + 3) / 4);
+    }
+
+    static List<String> tokenize(String text) {
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= MIN_TOKEN_LENGTH) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // un texto sin términos recibe un vector unitario fijo en lugar de ceros (que no se pueden normalizar)
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            vector[0] = 1f;
+            return vector;
+        }
+        float inverse = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inverse;
+        }
+        return vector;
+    }
+
+    // FNV-1a de 64 bits seguido del mezclador de SplitMix64
+    public static long hash(String feature) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < feature.length(); i++) {
+            hash ^= feature.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
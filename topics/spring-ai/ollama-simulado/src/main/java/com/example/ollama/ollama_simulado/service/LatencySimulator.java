@@ -0,0 +1,102 @@
+package com.example.ollama.ollama_simulado.service;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/*
+Latencias y errores simulados. Cada petición recibe su propio generador derivado de simulado.semilla,
+en el orden de llegada: con la misma secuencia de peticiones se repiten las mismas latencias y los
+mismos fallos (con concurrencia el orden de llegada puede variar, pero la distribución es la misma).
+
+Las latencias configuradas son medianas; la distribución se elige con simulado.latencia.distribucion:
+- fija: siempre la mediana;
+- uniforme: entre mediana * (1 - dispersion) y mediana * (1 + dispersion);
+- exponencial: cola larga con la mediana indicada (dispersion no se usa);
+- lognormal: mediana * e^(dispersion * N(0, 1)), la forma típica de la latencia de un servicio; con
+  dispersion 0.5 el p99 es unas 3.2 veces la mediana.
+Las esperas son Thread.sleep: con hilos virtuales (spring.threads.virtual.enabled) miles de peticiones
+esperando no ocupan hilos de plataforma.
+*/
+@Service
+public class LatencySimulator {
+
+    public enum Distribution {
+        FIJA, UNIFORME, EXPONENCIAL, LOGNORMAL
+    }
+
+    private final Distribution distribution;
+    private final double dispersion;
+    private final double errorRate;
+    private final double streamCutRate;
+    private final int errorStatus;
+    private final SplittableRandom root;
+
+    public LatencySimulator(@Value("${simulado.latencia.distribucion:lognormal}") String distribution,
+                            @Value("${simulado.latencia.dispersion:0.5}") double dispersion,
+                            @Value("${simulado.errores.tasa:0.0}") double errorRate,
+                            @Value("${simulado.errores.corte-stream:0.0}") double streamCutRate,
+                            @Value("${simulado.errores.estado:503}") int errorStatus,
+                            @Value("${simulado.semilla:42}") long seed) {
+        this.distribution = Distribution.valueOf(distribution.toUpperCase(Locale.ROOT));
+        this.dispersion = dispersion;
+        this.errorRate = errorRate;
+        this.streamCutRate = streamCutRate;
+        this.errorStatus = errorStatus;
+        this.root = new SplittableRandom(seed);
+    }
+
+    public synchronized SplittableRandom nextRequest() {
+        return root.split();
+    }
+
+    // la petición falla por completo con simulado.errores.estado
+    public boolean shouldFail(SplittableRandom random) {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    // el stream se corta a mitad de la respuesta, sin el mensaje final done=true
+    public boolean shouldCutStream(SplittableRandom random) {
+        return streamCutRate > 0 && random.nextDouble() < streamCutRate;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public long sampleMillis(double medianMillis, SplittableRandom random) {
+        if (medianMillis <= 0) {
+            return 0;
+        }
+        double sample = switch (distribution) {
+            case FIJA -> medianMillis;
+            case UNIFORME -> medianMillis * (1 - dispersion + 2 * dispersion * random.nextDouble());
+            case EXPONENCIAL -> -medianMillis / Math.log(2) * Math.log(1 - random.nextDouble());
+            case LOGNORMAL -> medianMillis * Math.exp(dispersion * gaussian(random));
+        };
+        return Math.max(0, Math.round(sample));
+    }
+
+    public void sleep(double medianMillis, SplittableRandom random) {
+        pause(sampleMillis(medianMillis, random));
+    }
+
+    public void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Box-Muller
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.ollama.ollama_simulado;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class OllamaSimuladoApplicationTests {
+
+	@Test
+	void contextLoads() {
+	}
+
+}
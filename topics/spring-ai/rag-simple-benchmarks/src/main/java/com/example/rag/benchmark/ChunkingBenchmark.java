@@ -0,0 +1,79 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.service.ParagraphChunker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Throughput del troceado de documentos. baselineSplit reproduce el dividirEnFragmentos original
+(archivo completo en memoria + split por regex); streaming es el ParagraphChunker que usa la carga.
+Con -prof gc se ve la diferencia de memoria asignada por operación.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkingBenchmark {
+
+    private static final int CHUNK_SIZE = 500;
+
+    @Param({"1000", "50000"})
+    private int paragraphs;
+
+    private byte[] document;
+    private ParagraphChunker chunker;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        document = SyntheticCorpus.text(paragraphs, 42).getBytes(StandardCharsets.UTF_8);
+        chunker = new ParagraphChunker(CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public int streaming(Blackhole blackhole) throws IOException {
+        return chunker.split(new ByteArrayInputStream(document), StandardCharsets.UTF_8, blackhole::consume);
+    }
+
+    @Benchmark
+    public List<String> baselineSplit() {
+        String text = new String(document, StandardCharsets.UTF_8);
+        List<String> chunks = new ArrayList<>();
+        String[] paragraphs = text.split("\n\n+");
+
+        StringBuilder currentChunk = new StringBuilder();
+        for (String paragraph : paragraphs) {
+            if (currentChunk.length() + paragraph.length() > CHUNK_SIZE) {
+                if (currentChunk.length() > 0) {
+                    chunks.add(currentChunk.toString().trim());
+                    currentChunk = new StringBuilder();
+                }
+            }
+            currentChunk.append(paragraph).append("\n\n");
+        }
+
+        if (currentChunk.length() > 0) {
+            chunks.add(currentChunk.toString().trim());
+        }
+        return chunks;
+    }
+}
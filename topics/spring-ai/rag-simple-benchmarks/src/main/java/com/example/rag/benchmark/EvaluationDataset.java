@@ -0,0 +1,202 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.service.ParagraphChunker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/*
+Preguntas etiquetadas con los fragmentos que las responden. Un conjunto en disco es un directorio con
+los documentos en documentos/*.txt y un preguntas.tsv con una pregunta por línea seguida (tras un
+tabulador) de uno o más textos esperados, también separados por tabuladores:
+
+    ¿Cuántos días de vacaciones tengo?	Los empleados tienen 22 días hábiles
+
+Los documentos se trocean con el mismo ParagraphChunker que la carga, y un fragmento es relevante si
+contiene alguno de los textos esperados (comparando con los espacios normalizados), así las etiquetas
+no dependen de los ids ni del tamaño de fragmento. Las líneas vacías o que empiezan con # se ignoran.
+*/
+public final class EvaluationDataset {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "ta", "so", "vi", "pe", "du", "ge", "zo", "fa", "bi", "xu", "ha"
+    };
+
+    private final String description;
+    private final List<String> chunkTexts = new ArrayList<>();
+    private final List<String> chunkSources = new ArrayList<>();
+    private final List<Question> questions = new ArrayList<>();
+    private final int documentCount;
+    private int unansweredQuestions;
+
+    private EvaluationDataset(String description, Map<String, String> documents,
+                              Map<String, List<String>> expectedTexts) {
+        this.description = description;
+        this.documentCount = documents.size();
+
+        ParagraphChunker chunker = new ParagraphChunker(CHUNK_SIZE);
+        List<String> normalizedChunks = new ArrayList<>();
+        for (Map.Entry<String, String> document : documents.entrySet()) {
+            for (String chunk : chunker.split(document.getValue())) {
+                chunkTexts.add(chunk);
+                chunkSources.add(document.getKey());
+                normalizedChunks.add(normalize(chunk));
+            }
+        }
+
+        for (Map.Entry<String, List<String>> entry : expectedTexts.entrySet()) {
+            Set<Integer> relevant = new LinkedHashSet<>();
+            for (String expected : entry.getValue()) {
+                String normalizedExpected = normalize(expected);
+                for (int i = 0; i < normalizedChunks.size(); i++) {
+                    if (normalizedChunks.get(i).contains(normalizedExpected)) {
+                        relevant.add(i);
+                    }
+                }
+            }
+            if (relevant.isEmpty()) {
+                unansweredQuestions++;
+            } else {
+                questions.add(new Question(entry.getKey(), relevant));
+            }
+        }
+    }
+
+    public static EvaluationDataset load(Path directory) throws IOException {
+        Map<String, String> documents = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.list(directory.resolve("documentos"))) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".txt")).sorted().toList()) {
+                documents.put(file.getFileName().toString(), Files.readString(file, StandardCharsets.UTF_8));
+            }
+        }
+
+        Map<String, List<String>> expectedTexts = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(directory.resolve("preguntas.tsv"), StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\t");
+            if (columns.length < 2) {
+                throw new IllegalArgumentException("Falta el texto esperado en la línea: " + line);
+            }
+            expectedTexts.computeIfAbsent(columns[0].trim(), key -> new ArrayList<>())
+                    .addAll(List.of(columns).subList(1, columns.length));
+        }
+        return new EvaluationDataset(directory.toString(), documents, expectedTexts);
+    }
+
+    /*
+    Conjunto sintético reproducible: párrafos de relleno (SyntheticCorpus.text) y, en cada uno, un dato
+    "El <tema> <objeto> corresponde a <valor>." con palabras inventadas. Cada tema aparece en unos diez
+    párrafos y los objetos casi nunca se repiten, así que una pregunta "¿Qué es el <tema> <objeto>?"
+    comparte términos con varios fragmentos pero solo uno tiene los dos.
+    */
+    public static EvaluationDataset synthetic(int documents, int paragraphsPerDocument, int questionCount,
+                                              long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int topics = Math.max(1, Math.min(1 << 12, documents * paragraphsPerDocument / 10));
+        Set<String> usedPairs = new HashSet<>();
+
+        Map<String, String> texts = new LinkedHashMap<>();
+        List<String[]> facts = new ArrayList<>();
+        for (int d = 0; d < documents; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int p = 0; p < paragraphsPerDocument; p++) {
+                String topic;
+                String object;
+                do {
+                    topic = word(random.nextInt(topics), 3);
+                    object = word(random.nextInt(1 << 20), 5);
+                } while (!usedPairs.add(topic + ' ' + object));
+                String value = word(random.nextInt(1 << 20), 4);
+
+                String fact = "El " + topic + " " + object + " corresponde a " + value + ".";
+                String filler = SyntheticCorpus.text(1, random.nextLong()).strip();
+                text.append(random.nextBoolean() ? fact + " " + filler : filler + " " + fact).append("\n\n");
+                facts.add(new String[]{topic, object, fact});
+            }
+            texts.put(String.format("documento-%04d.txt", d), text.toString());
+        }
+
+        Map<String, List<String>> expectedTexts = new LinkedHashMap<>();
+        for (int q = 0; q < Math.min(questionCount, facts.size()); q++) {
+            // muestreo sin repetición (Fisher-Yates parcial)
+            int pick = q + random.nextInt(facts.size() - q);
+            String[] fact = facts.set(pick, facts.get(q));
+            facts.set(q, fact);
+            expectedTexts.put("¿Qué es el " + fact[0] + " " + fact[1] + "?", List.of(fact[2]));
+        }
+        return new EvaluationDataset(String.format("sintético (%d documentos x %d párrafos, semilla %d)",
+                documents, paragraphsPerDocument, seed), texts, expectedTexts);
+    }
+
+    public String description() {
+        return description;
+    }
+
+    public int documentCount() {
+        return documentCount;
+    }
+
+    public List<String> chunkTexts() {
+        return chunkTexts;
+    }
+
+    public List<String> chunkSources() {
+        return chunkSources;
+    }
+
+    public List<Question> questions() {
+        return questions;
+    }
+
+    // preguntas descartadas porque ningún fragmento contiene su texto esperado
+    public int unansweredQuestions() {
+        return unansweredQuestions;
+    }
+
+    private static String normalize(String text) {
+        return text.replaceAll("\\s+", " ").strip();
+    }
+
+    // palabra inventada de syllables sílabas a partir de n (base 16)
+    private static String word(int n, int syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[n & 15]);
+            n >>>= 4;
+        }
+        return word.toString();
+    }
+
+    public static final class Question {
+        private final String text;
+        private final Set<Integer> relevantChunks;
+
+        private Question(String text, Set<Integer> relevantChunks) {
+            this.text = text;
+            this.relevantChunks = relevantChunks;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        // posiciones en chunkTexts()
+        public Set<Integer> relevantChunks() {
+            return relevantChunks;
+        }
+    }
+}
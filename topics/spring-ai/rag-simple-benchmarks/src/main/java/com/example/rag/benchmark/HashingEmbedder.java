@@ -0,0 +1,70 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.lexical.Tokenizer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Embedding determinista sin modelo, para evaluar la recuperación sin Ollama: cada término (tokenizado
+igual que el índice BM25) y cada par de términos consecutivos suma ±peso en una dimensión elegida por
+su hash (feature hashing). El peso crece con el logaritmo de la frecuencia, como la saturación de tf en
+BM25, para que las palabras de relleno repetidas no tapen a las que distinguen el texto, y los términos
+de menos de tres letras (artículos, preposiciones) se ignoran. Textos que comparten términos quedan
+cerca en coseno, y el mismo texto da siempre el mismo vector, así los resultados son comparables entre
+ejecuciones y máquinas. No captura sinónimos: mide el comportamiento de los índices, no la calidad
+semántica de un modelo real.
+*/
+public final class HashingEmbedder {
+
+    private static final float BIGRAM_WEIGHT = 0.5f;
+    private static final int MIN_TOKEN_LENGTH = 3;
+
+    private final int dimensions;
+
+    public HashingEmbedder(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    // vector sin normalizar; FloatVectorStore y los índices normalizan al insertar y al buscar
+    public float[] embed(String text) {
+        List<String> tokens = Tokenizer.tokenize(text).stream()
+                .filter(token -> token.length() >= MIN_TOKEN_LENGTH)
+                .toList();
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            frequencies.merge(tokens.get(i), 1, Integer::sum);
+            if (i > 0) {
+                frequencies.merge(tokens.get(i - 1) + ' ' + tokens.get(i), 1, Integer::sum);
+            }
+        }
+
+        float[] vector = new float[dimensions];
+        frequencies.forEach((feature, frequency) -> add(vector, feature,
+                (feature.indexOf(' ') < 0 ? 1f : BIGRAM_WEIGHT) * (1f + (float) Math.log(frequency))));
+        return vector;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        long hash = hash(feature);
+        int index = (int) Long.remainderUnsigned(hash, dimensions);
+        vector[index] += hash < 0 ? -weight : weight;
+    }
+
+    // FNV-1a de 64 bits seguido del mezclador de SplitMix64, para repartir bien los bits altos y bajos
+    private static long hash(String feature) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < feature.length(); i++) {
+            hash ^= feature.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
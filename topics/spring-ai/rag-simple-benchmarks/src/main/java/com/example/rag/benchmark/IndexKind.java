@@ -0,0 +1,57 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.index.FloatVectorStore;
+import com.example.rag.rag_simple.index.HnswVectorIndex;
+import com.example.rag.rag_simple.index.IvfPqCodebook;
+import com.example.rag.rag_simple.index.IvfPqVectorIndex;
+import com.example.rag.rag_simple.index.QuantizedVectorIndex;
+import com.example.rag.rag_simple.index.SimdScanVectorIndex;
+import com.example.rag.rag_simple.index.VectorIndex;
+
+import java.nio.file.Path;
+
+/*
+Implementaciones de VectorIndex que comparan los benchmarks, con los mismos valores por defecto que
+application.properties. Para medir un índice nuevo basta con agregar aquí una constante: todos los
+benchmarks parametrizados por "index" lo recorren automáticamente.
+*/
+public enum IndexKind {
+
+    EXACT {
+        @Override
+        VectorIndex create(FloatVectorStore store, Path workDir) {
+            return new SimdScanVectorIndex(store);
+        }
+    },
+    HNSW {
+        @Override
+        VectorIndex create(FloatVectorStore store, Path workDir) {
+            return new HnswVectorIndex(store, 16, 200, 100);
+        }
+    },
+    QUANTIZED {
+        @Override
+        VectorIndex create(FloatVectorStore store, Path workDir) {
+            return new QuantizedVectorIndex(store, workDir.resolve("quantized.f32"), 50);
+        }
+    },
+    IVF_PQ {
+        @Override
+        VectorIndex create(FloatVectorStore store, Path workDir) {
+            IvfPqCodebook codebook = new IvfPqCodebook(store.dimensions(), 256, 64, 16384);
+            return new IvfPqVectorIndex(store, workDir.resolve("ivfpq.f32"), codebook, 16, 20);
+        }
+    };
+
+    abstract VectorIndex create(FloatVectorStore store, Path workDir);
+
+    // construye el índice con todos los vectores del almacén y lo sella, igual que un segmento lleno
+    public VectorIndex build(FloatVectorStore store, Path workDir) {
+        VectorIndex index = create(store, workDir);
+        for (int id = 0; id < store.size(); id++) {
+            index.add(id);
+        }
+        index.seal();
+        return index;
+    }
+}
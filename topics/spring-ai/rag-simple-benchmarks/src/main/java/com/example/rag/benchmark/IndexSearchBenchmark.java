@@ -0,0 +1,79 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.index.FloatVectorStore;
+import com.example.rag.rag_simple.index.SearchResult;
+import com.example.rag.rag_simple.index.VectorIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// latencia por consulta de cada implementación de VectorIndex sobre corpus sintéticos
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class IndexSearchBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"EXACT", "HNSW", "QUANTIZED", "IVF_PQ"})
+    private IndexKind index;
+
+    @Param({"1000", "100000", "1000000"})
+    private int vectors;
+
+    @Param({"384", "768", "1024"})
+    private int dimensions;
+
+    @Param({"10"})
+    private int k;
+
+    private Path workDir;
+    private VectorIndex vectorIndex;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("rag-bench-");
+        FloatVectorStore store = SyntheticCorpus.vectors(vectors, dimensions, 42);
+        queries = SyntheticCorpus.queries(store, QUERIES, 7);
+        vectorIndex = index.build(store, workDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        vectorIndex.clear();
+        try (Stream<Path> files = Files.walk(workDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+        float[] query = queries[next++ & (QUERIES - 1)];
+        return vectorIndex.search(query, k);
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.index.ReciprocalRankFusion;
+import com.example.rag.rag_simple.index.SegmentedVectorIndex;
+import com.example.rag.rag_simple.index.VectorIndexFactory;
+import com.example.rag.rag_simple.index.VectorMath;
+import com.example.rag.rag_simple.model.ScoredChunk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/*
+Evaluación de calidad frente a latencia de cada modo de recuperación, desde la línea de comandos y sin
+Ollama: los embeddings salen de HashingEmbedder. Para cada modo construye un SegmentedVectorIndex como
+el de RagService (mismos segmentos, sellado e índice BM25), espera a que se sellen los segmentos llenos
+y mide:
+- recall@k y MRR frente a las etiquetas del conjunto (EvaluationDataset);
+- recallFrenteAExacta: fracción del top-k exacto que devuelve el modo (el costo de aproximar);
+- latencia p50/p99 de una consulta, en un solo hilo y después de una pasada de calentamiento;
+- QPS con un número fijo de hilos consultando durante duracion segundos;
+- memoria del índice (vectores, estructuras del índice, BM25 y diccionarios compartidos).
+Solo se mide la recuperación: los embeddings de las preguntas se calculan antes.
+
+El resultado se imprime como tabla y se guarda en JSON (--salida) para comparar ejecuciones:
+
+    java --add-modules jdk.incubator.vector -cp target/benchmarks.jar \
+        com.example.rag.benchmark.RetrievalEvaluation --conjunto=ruta/al/conjunto --k=3
+*/
+public final class RetrievalEvaluation {
+
+    private static final int HYBRID_CANDIDATES = 20;
+
+    // mismos modos que rag.index.type y rag.retrieval.mode; hybrid usa HNSW + BM25 como la configuración por defecto
+    enum Mode {
+        EXACT("exact", false),
+        HNSW("hnsw", false),
+        QUANTIZED("quantized", false),
+        IVF_PQ("ivfpq", false),
+        HYBRID("hnsw", true);
+
+        private final String indexType;
+        private final boolean hybrid;
+
+        Mode(String indexType, boolean hybrid) {
+            this.indexType = indexType;
+            this.hybrid = hybrid;
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private final EvaluationDataset dataset;
+    private final int k;
+    private final int concurrency;
+    private final int durationSeconds;
+    private final int segmentSize;
+    private final float[][] chunkEmbeddings;
+    private final float[][] questionEmbeddings;
+
+    private RetrievalEvaluation(EvaluationDataset dataset, HashingEmbedder embedder, int k, int concurrency,
+                                int durationSeconds, int segmentSize) {
+        this.dataset = dataset;
+        this.k = k;
+        this.concurrency = concurrency;
+        this.durationSeconds = durationSeconds;
+        this.segmentSize = segmentSize;
+        this.chunkEmbeddings = dataset.chunkTexts().stream().map(embedder::embed).toArray(float[][]::new);
+        this.questionEmbeddings = dataset.questions().stream()
+                .map(question -> embedder.embed(question.text()))
+                .toArray(float[][]::new);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int dimensions = Integer.parseInt(options.getOrDefault("dimensiones", "768"));
+        EvaluationDataset dataset = options.containsKey("conjunto")
+                ? EvaluationDataset.load(Paths.get(options.get("conjunto")))
+                : EvaluationDataset.synthetic(
+                        Integer.parseInt(options.getOrDefault("documentos", "200")),
+                        Integer.parseInt(options.getOrDefault("parrafos", "50")),
+                        Integer.parseInt(options.getOrDefault("preguntas", "500")),
+                        Long.parseLong(options.getOrDefault("semilla", "42")));
+        List<Mode> modes = Arrays.stream(options.getOrDefault("modos", "exact,hnsw,quantized,ivf-pq,hybrid")
+                        .split(","))
+                .map(mode -> Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT).replace('-', '_')))
+                .toList();
+        Path output = Paths.get(options.getOrDefault("salida", "target/evaluacion-recuperacion.json"));
+
+        System.out.printf("Conjunto: %s — %d documentos, %d fragmentos, %d preguntas (%d sin fragmento relevante)%n",
+                dataset.description(), dataset.documentCount(), dataset.chunkTexts().size(),
+                dataset.questions().size(), dataset.unansweredQuestions());
+
+        RetrievalEvaluation evaluation = new RetrievalEvaluation(dataset, new HashingEmbedder(dimensions),
+                Integer.parseInt(options.getOrDefault("k", "3")),
+                Integer.parseInt(options.getOrDefault("concurrencia", "8")),
+                Integer.parseInt(options.getOrDefault("duracion", "5")),
+                Integer.parseInt(options.getOrDefault("segmento", "4096")));
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        System.out.printf("%-10s %8s %8s %8s %10s %10s %10s %12s %10s%n", "modo", "recall", "mrr", "vsExacta",
+                "p50 (µs)", "p99 (µs)", "qps", "memoria", "bytes/frag");
+        for (Mode mode : modes) {
+            Map<String, Object> result = evaluation.run(mode);
+            results.add(result);
+            System.out.printf(Locale.ROOT, "%-10s %8.3f %8.3f %8s %10d %10d %10.0f %12d %10.1f%n",
+                    mode.label(), result.get("recall"), result.get("mrr"),
+                    result.get("recallFrenteAExacta") == null
+                            ? "-" : String.format(Locale.ROOT, "%.3f", result.get("recallFrenteAExacta")),
+                    result.get("latenciaP50Micros"), result.get("latenciaP99Micros"), result.get("qps"),
+                    result.get("memoriaBytes"), result.get("bytesPorFragmento"));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("fecha", Instant.now().toString());
+        Map<String, Object> datasetSummary = new LinkedHashMap<>();
+        datasetSummary.put("descripcion", dataset.description());
+        datasetSummary.put("documentos", dataset.documentCount());
+        datasetSummary.put("fragmentos", dataset.chunkTexts().size());
+        datasetSummary.put("preguntas", dataset.questions().size());
+        datasetSummary.put("preguntasSinFragmento", dataset.unansweredQuestions());
+        report.put("conjunto", datasetSummary);
+
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("k", evaluation.k);
+        configuration.put("concurrencia", evaluation.concurrency);
+        configuration.put("duracionSegundos", evaluation.durationSeconds);
+        configuration.put("tamanoSegmento", evaluation.segmentSize);
+        configuration.put("dimensiones", dimensions);
+        configuration.put("simd", VectorMath.isSimdAvailable());
+        configuration.put("java", System.getProperty("java.version"));
+        report.put("configuracion", configuration);
+        report.put("resultados", results);
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.writeString(output, toJson(report, "") + "\n", StandardCharsets.UTF_8);
+        System.out.println("Resultados guardados en " + output);
+    }
+
+    private Map<String, Object> run(Mode mode) throws Exception {
+        Path spillDirectory = Files.createTempDirectory("rag-eval-");
+        VectorIndexFactory factory = new VectorIndexFactory(mode.indexType, 16, 200, 100, segmentSize, 0.3, 50,
+                256, 64, 16, 20, 16384, spillDirectory.toString());
+        factory.prepararDirectorioDeVolcado();
+        SegmentedVectorIndex index = factory.createSegmented();
+        try {
+            long buildStart = System.nanoTime();
+            int[] positions = new int[chunkEmbeddings.length];
+            Map<Integer, Integer> positionById = new HashMap<>();
+            for (int i = 0; i < chunkEmbeddings.length; i++) {
+                // clave de contenido = posición, para que los fragmentos repetidos no se dedupliquen
+                int id = index.add(i, dataset.chunkTexts().get(i), dataset.chunkSources().get(i),
+                        chunkEmbeddings[i]).getId();
+                positions[i] = id;
+                positionById.put(id, i);
+            }
+            awaitSealing(index);
+            long buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - buildStart);
+
+            int questions = questionEmbeddings.length;
+            for (int q = 0; q < questions; q++) {
+                retrieve(index, mode, q);
+            }
+
+            long[] latencies = new long[questions];
+            double recall = 0;
+            double reciprocalRank = 0;
+            double exactOverlap = 0;
+            for (int q = 0; q < questions; q++) {
+                long start = System.nanoTime();
+                List<ScoredChunk> retrieved = retrieve(index, mode, q);
+                latencies[q] = System.nanoTime() - start;
+
+                Set<Integer> relevant = dataset.questions().get(q).relevantChunks();
+                int found = 0;
+                for (int rank = 0; rank < retrieved.size(); rank++) {
+                    if (relevant.contains(positionById.get(retrieved.get(rank).getChunk().getId()))) {
+                        if (found == 0) {
+                            reciprocalRank += 1.0 / (rank + 1);
+                        }
+                        found++;
+                    }
+                }
+                recall += (double) found / Math.min(relevant.size(), k);
+
+                if (!mode.hybrid) {
+                    Set<Integer> exact = new HashSet<>();
+                    index.search(questionEmbeddings[q], k, true)
+                            .forEach(result -> exact.add(result.getChunk().getId()));
+                    long overlap = retrieved.stream()
+                            .filter(result -> exact.contains(result.getChunk().getId()))
+                            .count();
+                    exactOverlap += exact.isEmpty() ? 1.0 : (double) overlap / exact.size();
+                }
+            }
+            Arrays.sort(latencies);
+
+            long memory = index.memoryBytes();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("modo", mode.label());
+            result.put("recall", recall / questions);
+            result.put("mrr", reciprocalRank / questions);
+            result.put("recallFrenteAExacta", mode.hybrid ? null : exactOverlap / questions);
+            result.put("latenciaP50Micros", TimeUnit.NANOSECONDS.toMicros(percentile(latencies, 0.50)));
+            result.put("latenciaP99Micros", TimeUnit.NANOSECONDS.toMicros(percentile(latencies, 0.99)));
+            result.put("qps", throughput(index, mode));
+            result.put("memoriaBytes", memory);
+            result.put("bytesPorFragmento", (double) memory / positions.length);
+            result.put("construccionMillis", buildMillis);
+            return result;
+        } finally {
+            index.clear();
+            index.close();
+            deleteRecursively(spillDirectory);
+        }
+    }
+
+    // igual que RagService.buscarFragmentos, con el embedding de la pregunta ya calculado
+    private List<ScoredChunk> retrieve(SegmentedVectorIndex index, Mode mode, int question) {
+        float[] embedding = questionEmbeddings[question];
+        if (!mode.hybrid) {
+            return index.search(embedding, k, false);
+        }
+        List<ScoredChunk> vectoriales = index.search(embedding, HYBRID_CANDIDATES, false);
+        List<ScoredChunk> lexicos = index.searchLexical(dataset.questions().get(question).text(), HYBRID_CANDIDATES);
+        return ReciprocalRankFusion.fuse(k, vectoriales, lexicos);
+    }
+
+    // consultas por segundo con concurrency hilos recorriendo las preguntas durante durationSeconds
+    private double throughput(SegmentedVectorIndex index, Mode mode) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            List<Future<Long>> counts = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int worker = 0; worker < concurrency; worker++) {
+                int first = worker;
+                counts.add(workers.submit(() -> {
+                    long done = 0;
+                    for (int q = first; running.get(); q = (q + 1) % questionEmbeddings.length) {
+                        retrieve(index, mode, q);
+                        done++;
+                    }
+                    return done;
+                }));
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            running.set(false);
+
+            long total = 0;
+            for (Future<Long> count : counts) {
+                total += count.get();
+            }
+            return total / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // el sellado (construir HNSW, cuantizar o entrenar IVF-PQ) corre en segundo plano
+    private static void awaitSealing(SegmentedVectorIndex index) throws InterruptedException {
+        while (index.snapshot().segments().stream().anyMatch(segment -> segment.isFull() && !segment.isSealed())) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int position = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, position))];
+    }
+
+    // --clave=valor
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Argumento inválido (se espera --clave=valor): " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static String toJson(Object value, String indent) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof String text) {
+            StringBuilder escaped = new StringBuilder("\"");
+            for (char c : text.toCharArray()) {
+                switch (c) {
+                    case '"' -> escaped.append("\\\"");
+                    case '\\' -> escaped.append("\\\\");
+                    case '\n' -> escaped.append("\\n");
+                    case '\t' -> escaped.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            escaped.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            escaped.append(c);
+                        }
+                    }
+                }
+            }
+            return escaped.append('"').toString();
+        }
+        if (value instanceof Double number) {
+            return number.isNaN() || number.isInfinite() ? "null" : String.format(Locale.ROOT, "%.6g", number);
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        String inner = indent + "  ";
+        if (value instanceof Map<?, ?> map) {
+            List<String> entries = new ArrayList<>();
+            map.forEach((key, entry) ->
+                    entries.add(inner + toJson(key.toString(), inner) + ": " + toJson(entry, inner)));
+            return entries.isEmpty() ? "{}" : "{\n" + String.join(",\n", entries) + "\n" + indent + "}";
+        }
+        if (value instanceof List<?> list) {
+            List<String> items = new ArrayList<>();
+            list.forEach(item -> items.add(inner + toJson(item, inner)));
+            return items.isEmpty() ? "[]" : "[\n" + String.join(",\n", items) + "\n" + indent + "]";
+        }
+        throw new IllegalArgumentException("Tipo no soportado en el JSON: " + value.getClass());
+    }
+}
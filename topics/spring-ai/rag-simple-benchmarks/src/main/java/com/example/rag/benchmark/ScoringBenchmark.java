@@ -0,0 +1,102 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.index.FloatVectorStore;
+import com.example.rag.rag_simple.index.VectorMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Costo de puntuar una consulta contra un corpus completo. baselineBoxedCosine reproduce la versión
+original (List<Double> y normas recalculadas en cada comparación) como referencia para el escaneo
+contiguo con producto punto escalar y con la Vector API.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ScoringBenchmark {
+
+    @Param({"1000"})
+    private int vectors;
+
+    @Param({"384", "768", "1024"})
+    private int dimensions;
+
+    private float[] data;
+    private float[] query;
+    private List<List<Double>> boxedVectors;
+    private List<Double> boxedQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FloatVectorStore store = SyntheticCorpus.vectors(vectors, dimensions, 42);
+        query = VectorMath.normalize(SyntheticCorpus.queries(store, 1, 7)[0]);
+
+        data = new float[vectors * dimensions];
+        boxedVectors = new ArrayList<>(vectors);
+        for (int id = 0; id < vectors; id++) {
+            float[] vector = store.get(id);
+            System.arraycopy(vector, 0, data, id * dimensions, dimensions);
+            boxedVectors.add(box(vector));
+        }
+        boxedQuery = box(query);
+    }
+
+    @Benchmark
+    public void simdDot(Blackhole blackhole) {
+        for (int id = 0; id < vectors; id++) {
+            blackhole.consume(VectorMath.dot(data, id * dimensions, query, dimensions));
+        }
+    }
+
+    @Benchmark
+    public void scalarDot(Blackhole blackhole) {
+        for (int id = 0; id < vectors; id++) {
+            blackhole.consume(VectorMath.scalarDot(data, id * dimensions, query, dimensions));
+        }
+    }
+
+    @Benchmark
+    public void baselineBoxedCosine(Blackhole blackhole) {
+        for (List<Double> embedding : boxedVectors) {
+            blackhole.consume(cosineSimilarity(embedding, boxedQuery));
+        }
+    }
+
+    private static double cosineSimilarity(List<Double> embedding, List<Double> other) {
+        double dotProduct = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < embedding.size(); i++) {
+            dotProduct += embedding.get(i) * other.get(i);
+            normA += embedding.get(i) * embedding.get(i);
+            normB += other.get(i) * other.get(i);
+        }
+        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static List<Double> box(float[] vector) {
+        List<Double> boxed = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            boxed.add((double) value);
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.index.FloatVectorStore;
+
+import java.util.SplittableRandom;
+
+/*
+Datos sintéticos reproducibles para los benchmarks. Los vectores se agrupan alrededor de centroides
+aleatorios (como los embeddings reales de documentos sobre pocos temas) en lugar de ser ruido uniforme,
+que en alta dimensión deja todas las distancias casi iguales y favorece artificialmente a la búsqueda
+aproximada. El texto imita un documento en español con párrafos separados por líneas en blanco.
+*/
+public final class SyntheticCorpus {
+
+    private static final int CLUSTERS = 64;
+    private static final float NOISE = 0.35f;
+    private static final String[] WORDS = {
+            "empleado", "vacaciones", "solicitud", "días", "política", "empresa", "responsable",
+            "departamento", "horario", "trabajo", "remoto", "beneficios", "seguro", "médico", "salario",
+            "evaluación", "desempeño", "proceso", "formación", "equipo", "proyecto", "cliente", "oficina",
+            "contrato", "permiso", "ausencia", "aprobación", "recursos", "humanos", "manual", "de", "la",
+            "el", "los", "las", "para", "con", "por", "según", "cada", "anual", "mensual", "mínimo"
+    };
+
+    private SyntheticCorpus() {
+    }
+
+    public static FloatVectorStore vectors(int count, int dimensions, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random, dimensions, 1f);
+        }
+
+        FloatVectorStore store = new FloatVectorStore(dimensions, count);
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < count; i++) {
+            float[] centroid = centroids[random.nextInt(CLUSTERS)];
+            for (int d = 0; d < dimensions; d++) {
+                vector[d] = centroid[d] + (float) random.nextGaussian() * NOISE;
+            }
+            store.add(vector);
+        }
+        return store;
+    }
+
+    // consultas cercanas a los datos: un vector del almacén perturbado con ruido
+    public static float[][] queries(FloatVectorStore store, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] queries = new float[count][];
+        for (int q = 0; q < count; q++) {
+            float[] base = store.get(random.nextInt(store.size()));
+            float[] query = new float[base.length];
+            for (int d = 0; d < base.length; d++) {
+                query[d] = base[d] + (float) random.nextGaussian() * 0.01f;
+            }
+            queries[q] = query;
+        }
+        return queries;
+    }
+
+    public static String text(int paragraphs, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder text = new StringBuilder();
+        for (int p = 0; p < paragraphs; p++) {
+            int sentences = 1 + random.nextInt(6);
+            for (int s = 0; s < sentences; s++) {
+                int words = 6 + random.nextInt(14);
+                for (int w = 0; w < words; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    text.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                    text.append(w == words - 1 ? ". " : " ");
+                }
+            }
+            text.append(random.nextInt(8) == 0 ? "\n\n\n" : "\n\n");
+        }
+        return text.toString();
+    }
+
+    private static float[] gaussian(SplittableRandom random, int dimensions, float sigma) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+}
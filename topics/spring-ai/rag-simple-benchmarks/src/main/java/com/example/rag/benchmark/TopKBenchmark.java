@@ -0,0 +1,68 @@
+package com.example.rag.benchmark;
+
+import com.example.rag.rag_simple.index.SearchResult;
+import com.example.rag.rag_simple.index.TopK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// selección de los k mejores puntajes: min-heap primitivo frente al sort + limit original
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int vectors;
+
+    @Param({"3", "10"})
+    private int k;
+
+    private float[] scores;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        scores = new float[vectors];
+        for (int i = 0; i < vectors; i++) {
+            scores[i] = (float) (random.nextDouble() * 2 - 1);
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> heap() {
+        TopK topK = new TopK(k);
+        for (int id = 0; id < scores.length; id++) {
+            topK.offer(id, scores[id]);
+        }
+        return topK.toSortedList();
+    }
+
+    @Benchmark
+    public List<SearchResult> sortAndLimit() {
+        return IntStream.range(0, scores.length)
+                .mapToObj(id -> new SearchResult(id, scores[id]))
+                .sorted(Comparator.comparingDouble(SearchResult::getScore).reversed())
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.rag.rag_simple.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+Caché de embeddings indexada por contenido: la clave es el XXH64 del texto normalizado (NFC,
+espacios colapsados) junto con el nombre del modelo, así el mismo párrafo o la misma pregunta no
+vuelve a pasar por Ollama. Está acotada en bytes y Caffeine aplica desalojo W-TinyLFU, que conserva
+los textos repetidos con frecuencia (encabezados, avisos legales) frente a los que aparecen una vez.
+Si rag.embedding-cache.path tiene valor, el contenido se guarda al cerrar y se recupera al arrancar.
+*/
+@Component
+public class EmbeddingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingCache.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int FILE_MAGIC = 0x454D4243;
+
+    private final long modelSeed;
+    private final String persistencePath;
+    private final Cache<Long, float[]> cache;
+
+    public EmbeddingCache(@Value("${spring.ai.ollama.embedding.options.model:default}") String modelName,
+                          @Value("${rag.embedding-cache.max-bytes:67108864}") long maxBytes,
+                          @Value("${rag.embedding-cache.path:}") String persistencePath) {
+        this.modelSeed = XxHash64.hash(modelName.getBytes(StandardCharsets.UTF_8), 0);
+        this.persistencePath = persistencePath;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long key, float[] vector) -> ENTRY_OVERHEAD_BYTES + vector.length * Float.BYTES)
+                .build();
+    }
+
+    public long key(String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC))
+                .replaceAll(" ")
+                .trim();
+        return XxHash64.hash(normalized.getBytes(StandardCharsets.UTF_8), modelSeed);
+    }
+
+    public float[] get(long key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(long key, float[] embedding) {
+        cache.put(key, embedding);
+    }
+
+    @PostConstruct
+    public void cargar() {
+        if (persistencePath.isBlank() || !Files.exists(Paths.get(persistencePath))) {
+            return;
+        }
+
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(Paths.get(persistencePath))))) {
+            if (in.readInt() != FILE_MAGIC || in.readLong() != modelSeed) {
+                log.info("Caché de embeddings ignorada: pertenece a otro modelo o formato");
+                return;
+            }
+            while (true) {
+                long key;
+                try {
+                    key = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                float[] vector = new float[in.readInt()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = in.readFloat();
+                }
+                cache.put(key, vector);
+                loaded++;
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo leer la caché de embeddings: {}", e.getMessage());
+        }
+        log.info("{} embeddings restaurados en caché", loaded);
+    }
+
+    @PreDestroy
+    public void guardar() {
+        if (persistencePath.isBlank()) {
+            return;
+        }
+
+        Path file = Paths.get(persistencePath);
+        Path tmp = Paths.get(persistencePath + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(modelSeed);
+                for (Map.Entry<Long, float[]> entry : cache.asMap().entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (float value : entry.getValue()) {
+                        out.writeFloat(value);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("No se pudo guardar la caché de embeddings: {}", e.getMessage());
+        }
+    }
+}
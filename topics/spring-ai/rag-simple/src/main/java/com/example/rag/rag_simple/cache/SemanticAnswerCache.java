@@ -0,0 +1,97 @@
+package com.example.rag.rag_simple.cache;
+
+import com.example.rag.rag_simple.index.VectorMath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/*
+Caché de respuestas por similitud semántica: una pregunta nueva reutiliza la respuesta de una
+pregunta ya respondida si sus embeddings superan similarityThreshold (coseno), aunque la redacción
+cambie. Cada entrada guarda los ids de los fragmentos usados como contexto y se invalida cuando
+alguno de ellos se elimina; un documento nuevo puede responder mejor cualquier pregunta, así que cada
+carga confirmada vacía la caché (RagCollection.invalidateAnswers). Con pocas entradas (maxEntries) un recorrido lineal es suficiente; al
+llenarse se descarta la entrada usada hace más tiempo.
+
+Cada colección tiene su propia instancia (la crea CollectionRegistry con rag.answer-cache.*): una
+pregunta nunca recibe una respuesta construida con los documentos de otra colección.
+*/
+public class SemanticAnswerCache {
+
+    private final boolean enabled;
+    private final float similarityThreshold;
+    private final int maxEntries;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public SemanticAnswerCache(boolean enabled, float similarityThreshold, int maxEntries) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+    }
+
+    public synchronized String lookup(float[] questionEmbedding) {
+        if (!enabled || entries.isEmpty()) {
+            return null;
+        }
+        float[] normalized = VectorMath.normalize(questionEmbedding);
+
+        Entry best = null;
+        float bestScore = similarityThreshold;
+        for (Entry entry : entries) {
+            float score = VectorMath.dot(entry.question, 0, normalized, normalized.length);
+            if (score >= bestScore) {
+                best = entry;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        best.lastUsed = System.nanoTime();
+        return best.answer;
+    }
+
+    public synchronized void put(float[] questionEmbedding, String answer, Set<Integer> chunkIds) {
+        if (!enabled) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            Entry oldest = entries.get(0);
+            for (Entry entry : entries) {
+                if (entry.lastUsed < oldest.lastUsed) {
+                    oldest = entry;
+                }
+            }
+            entries.remove(oldest);
+        }
+        entries.add(new Entry(VectorMath.normalize(questionEmbedding), answer, Set.copyOf(chunkIds)));
+    }
+
+    // descarta las respuestas construidas con alguno de los fragmentos eliminados
+    public synchronized void invalidateChunks(Collection<Integer> chunkIds) {
+        entries.removeIf(entry -> chunkIds.stream().anyMatch(entry.chunkIds::contains));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private final float[] question;
+        private final String answer;
+        private final Set<Integer> chunkIds;
+        private long lastUsed = System.nanoTime();
+
+        private Entry(float[] question, String answer, Set<Integer> chunkIds) {
+            this.question = question;
+            this.answer = answer;
+            this.chunkIds = chunkIds;
+        }
+    }
+}
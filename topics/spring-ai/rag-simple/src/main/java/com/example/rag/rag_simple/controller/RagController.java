@@ -1,32 +1,62 @@
 package com.example.rag.rag_simple.controller;
 
 import com.example.rag.rag_simple.dto.ChatMessage;
+import com.example.rag.rag_simple.dto.StreamingAnswer;
+import com.example.rag.rag_simple.model.MetadataFilter;
+import com.example.rag.rag_simple.service.IngestionJob;
+import com.example.rag.rag_simple.service.IngestionService;
 import com.example.rag.rag_simple.service.RagService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 @Controller
 public class RagController {
 
     private final RagService ragService;
+    private final IngestionService ingestionService;
 
-    public RagController(RagService ragService) {
+    public RagController(RagService ragService, IngestionService ingestionService) {
         this.ragService = ragService;
+        this.ingestionService = ingestionService;
     }
 
+    // coleccion: la colección que muestra la página (sin parámetro, la colección por defecto)
     @GetMapping("/")
-    public String index(Model model) {
-        model.addAttribute("documentCount", ragService.getDocumentCount());
+    public String index(@RequestParam(value = "coleccion", required = false) String coleccion, Model model) {
+        String nombre = ragService.nombreDeColeccion(coleccion);
+        model.addAttribute("coleccion", nombre);
+        model.addAttribute("colecciones", ragService.getColecciones());
+        model.addAttribute("documentCount", ragService.getDocumentCount(nombre));
+        model.addAttribute("documentos", ragService.getDocumentos(nombre));
+        model.addAttribute("etiquetas", ragService.getEtiquetas(nombre));
         return "index";
     }
 
+    // una colección que no existe se crea con la primera carga
     @PostMapping("/upload")
     public String subirDocumento(@RequestParam("file") MultipartFile file,
+                                 @RequestParam(value = "etiquetas", required = false) String etiquetas,
+                                 @RequestParam(value = "coleccion", required = false) String coleccion,
                                  RedirectAttributes redirectAttributes) {
         if (file.isEmpty()) {
             redirectAttributes.addFlashAttribute("error", "Por favor selecciona un archivo");
@@ -38,9 +68,17 @@ public class RagController {
             return "redirect:/";
         }
 
+        // la carga sigue en segundo plano; la página consulta /upload/{id} para mostrar el progreso
         try {
-            String resultado = ragService.cargarDocumento(file);
-            redirectAttributes.addFlashAttribute("mensaje", resultado);
+            IngestionJob job = ingestionService.iniciarCarga(coleccion, file, separarEtiquetas(etiquetas));
+            redirectAttributes.addFlashAttribute("mensaje", String.format(
+                    "Procesando '%s' en segundo plano (colección '%s')...", job.getSource(), job.getCollection()));
+            redirectAttributes.addFlashAttribute("jobId", job.getId());
+            redirectAttributes.addAttribute("coleccion", job.getCollection());
+        } catch (RejectedExecutionException e) {
+            redirectAttributes.addFlashAttribute("error", "Hay demasiadas cargas en curso, inténtalo más tarde");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
         } catch (IOException e) {
             redirectAttributes.addFlashAttribute("error", "Error al procesar el archivo: " + e.getMessage());
         }
@@ -48,21 +86,150 @@ public class RagController {
         return "redirect:/";
     }
 
+    @GetMapping("/upload/{id}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> progresoDeCarga(@PathVariable("id") String id) {
+        IngestionJob job = ingestionService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.progress());
+    }
+
+    @PostMapping("/upload/{id}/cancelar")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> cancelarCarga(@PathVariable("id") String id) {
+        IngestionJob job = ingestionService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!ingestionService.cancelar(id)) {
+            // ya había terminado: se devuelve su estado final
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(job.progress());
+        }
+        return ResponseEntity.ok(job.progress());
+    }
+
     @PostMapping("/preguntar")
-    public String preguntar(@RequestParam("pregunta") String pregunta, Model model) {
-        String respuesta = ragService.preguntarSobreDocumentos(pregunta);
+    public String preguntar(
+            @RequestParam("pregunta") String pregunta,
+            @RequestParam(value = "coleccion", required = false) String coleccion,
+            @RequestParam(value = "fuentes", required = false) List<String> fuentes,
+            @RequestParam(value = "etiquetas", required = false) String etiquetas,
+            @RequestParam(value = "todasLasEtiquetas", defaultValue = "false") boolean todasLasEtiquetas,
+            @RequestParam(value = "desde", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            Model model) {
+        String nombre = ragService.nombreDeColeccion(coleccion);
+        String respuesta = ragService.preguntarSobreDocumentos(nombre, pregunta,
+                filtro(fuentes, etiquetas, todasLasEtiquetas, desde));
 
         ChatMessage message = new ChatMessage(pregunta, respuesta, null);
         model.addAttribute("message", message);
-        model.addAttribute("documentCount", ragService.getDocumentCount());
+        model.addAttribute("coleccion", nombre);
+        model.addAttribute("documentCount", ragService.getDocumentCount(nombre));
 
         return "resultado";
     }
 
+    // el primer evento lleva las fuentes recuperadas; si el cliente se desconecta, Spring cancela
+    // la suscripción y con ella la petición de generación a Ollama
+    @GetMapping(value = "/preguntar/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<Object>> preguntarEnStreaming(
+            @RequestParam("pregunta") String pregunta,
+            @RequestParam(value = "coleccion", required = false) String coleccion,
+            @RequestParam(value = "fuentes", required = false) List<String> fuentes,
+            @RequestParam(value = "etiquetas", required = false) String etiquetas,
+            @RequestParam(value = "todasLasEtiquetas", defaultValue = "false") boolean todasLasEtiquetas,
+            @RequestParam(value = "desde", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde) {
+        StreamingAnswer respuesta = ragService.preguntarEnStreaming(ragService.nombreDeColeccion(coleccion),
+                pregunta, filtro(fuentes, etiquetas, todasLasEtiquetas, desde));
+
+        List<Map<String, Object>> recuperadas = respuesta.getFuentes().stream()
+                .map(result -> Map.<String, Object>of(
+                        "id", result.getChunk().getId(),
+                        "fuentes", result.getChunk().getSources(),
+                        "puntuacion", result.getScore()))
+                .toList();
+
+        return Flux.concat(
+                Flux.just(ServerSentEvent.<Object>builder(recuperadas).event("fuentes").build()),
+                respuesta.getTokens().map(token -> ServerSentEvent.<Object>builder(token).event("token").build()),
+                Flux.just(ServerSentEvent.<Object>builder("").event("fin").build()));
+    }
+
+    @GetMapping("/diagnostico")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> diagnostico(
+            @RequestParam("pregunta") String pregunta,
+            @RequestParam(value = "k", defaultValue = "3") int k,
+            @RequestParam(value = "coleccion", required = false) String coleccion) {
+        Map<String, Object> diagnostico = ragService.diagnosticarIndice(ragService.nombreDeColeccion(coleccion),
+                pregunta, k);
+        return diagnostico == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(diagnostico);
+    }
+
+    @PostMapping("/documentos/eliminar")
+    public String eliminarDocumento(@RequestParam("fuente") String fuente,
+                                    @RequestParam(value = "coleccion", required = false) String coleccion,
+                                    RedirectAttributes redirectAttributes) {
+        String nombre = ragService.nombreDeColeccion(coleccion);
+        redirectAttributes.addAttribute("coleccion", nombre);
+        try {
+            if (ragService.eliminarDocumento(nombre, fuente)) {
+                redirectAttributes.addFlashAttribute("mensaje", String.format("Documento '%s' eliminado", fuente));
+            } else {
+                redirectAttributes.addFlashAttribute("error", String.format("El documento '%s' no está cargado", fuente));
+            }
+        } catch (IOException e) {
+            redirectAttributes.addFlashAttribute("error", "Error al eliminar el documento: " + e.getMessage());
+        }
+        return "redirect:/";
+    }
+
+    // vacía solo la colección indicada
     @PostMapping("/limpiar")
-    public String limpiarDocumentos(RedirectAttributes redirectAttributes) {
-        ragService.limpiarDocumentos();
-        redirectAttributes.addFlashAttribute("mensaje", "Todos los documentos han sido eliminados");
+    public String limpiarDocumentos(@RequestParam(value = "coleccion", required = false) String coleccion,
+                                    RedirectAttributes redirectAttributes) {
+        String nombre = ragService.nombreDeColeccion(coleccion);
+        redirectAttributes.addAttribute("coleccion", nombre);
+        try {
+            ragService.limpiarDocumentos(nombre);
+            redirectAttributes.addFlashAttribute("mensaje",
+                    String.format("Todos los documentos de la colección '%s' han sido eliminados", nombre));
+        } catch (IOException e) {
+            redirectAttributes.addFlashAttribute("error", "Error al eliminar los documentos: " + e.getMessage());
+        }
         return "redirect:/";
     }
+
+    // nombre de colección no válido en cualquiera de los endpoints
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseBody
+    public ResponseEntity<String> solicitudInvalida(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // desde se interpreta como el inicio de ese día en la zona horaria del servidor
+    private static MetadataFilter filtro(List<String> fuentes, String etiquetas, boolean todasLasEtiquetas,
+                                         LocalDate desde) {
+        Set<String> fuentesSeleccionadas = fuentes == null ? Set.of() : fuentes.stream()
+                .filter(fuente -> !fuente.isBlank())
+                .collect(Collectors.toSet());
+        return new MetadataFilter(fuentesSeleccionadas, separarEtiquetas(etiquetas), todasLasEtiquetas,
+                desde == null ? null : desde.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    // "Ventas, producto-A" -> {ventas, producto-a}
+    private static Set<String> separarEtiquetas(String etiquetas) {
+        if (etiquetas == null || etiquetas.isBlank()) {
+            return Set.of();
+        }
+        return Arrays.stream(etiquetas.split(","))
+                .map(etiqueta -> etiqueta.trim().toLowerCase(Locale.ROOT))
+                .filter(etiqueta -> !etiqueta.isEmpty())
+                .collect(Collectors.toSet());
+    }
 }
@@ -0,0 +1,24 @@
+package com.example.rag.rag_simple.dto;
+
+import com.example.rag.rag_simple.model.ScoredChunk;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public class StreamingAnswer {
+    private final List<ScoredChunk> fuentes;
+    private final Flux<String> tokens;
+
+    public StreamingAnswer(List<ScoredChunk> fuentes, Flux<String> tokens) {
+        this.fuentes = fuentes;
+        this.tokens = tokens;
+    }
+
+    public List<ScoredChunk> getFuentes() {
+        return fuentes;
+    }
+
+    public Flux<String> getTokens() {
+        return tokens;
+    }
+}
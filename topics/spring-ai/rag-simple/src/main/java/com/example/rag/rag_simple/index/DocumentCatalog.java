@@ -0,0 +1,270 @@
+package com.example.rag.rag_simple.index;
+
+import com.example.rag.rag_simple.model.DocumentMetadata;
+import com.example.rag.rag_simple.model.MetadataFilter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Catálogo de documentos: para cada origen, los ids de sus fragmentos en un ChunkBitmap, y sus
+metadatos (etiquetas y fecha de carga). Los fragmentos de una carga reciben ids consecutivos, así que
+el bitmap de un documento ocupa unos pocos contenedores aunque tenga miles de fragmentos.
+
+Los filtros de una pregunta se resuelven aquí en un bitmap de candidatos: el bitmap de cada etiqueta
+es la unión de los documentos que la llevan y se guarda hasta la siguiente escritura, así que una
+pregunta filtrada solo combina unos pocos bitmaps ya construidos. Lo modifica el escritor de
+SegmentedVectorIndex; las consultas toman el lock de lectura el tiempo justo de combinar los bitmaps.
+*/
+public class DocumentCatalog {
+
+    private final Map<String, ChunkBitmap> documents = new HashMap<>();
+    private final Map<String, DocumentMetadata> metadata = new HashMap<>();
+    private final Map<String, ChunkBitmap> tagBitmaps = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void add(String source, int id) {
+        lock.writeLock().lock();
+        try {
+            documents.computeIfAbsent(source, key -> new ChunkBitmap()).add(id);
+            invalidateTags();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // quita los fragmentos del documento y devuelve su bitmap (null si no existía); los metadatos se
+    // conservan por si el documento se está reemplazando
+    ChunkBitmap remove(String source) {
+        lock.writeLock().lock();
+        try {
+            invalidateTags();
+            return documents.remove(source);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void put(String source, ChunkBitmap chunks) {
+        lock.writeLock().lock();
+        try {
+            if (chunks.isEmpty()) {
+                documents.remove(source);
+            } else {
+                documents.put(source, chunks);
+            }
+            invalidateTags();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void forget(String source) {
+        lock.writeLock().lock();
+        try {
+            metadata.remove(source);
+            invalidateTags();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // solo lo invoca el escritor del índice, que es el único que modifica el bitmap
+    ChunkBitmap chunks(String source) {
+        lock.readLock().lock();
+        try {
+            return documents.get(source);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // registra o reemplaza las etiquetas y la fecha de carga de un documento
+    public void describe(DocumentMetadata documentMetadata) {
+        lock.writeLock().lock();
+        try {
+            metadata.put(documentMetadata.getSource(), documentMetadata);
+            invalidateTags();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // metadatos de los documentos cargados
+    public List<DocumentMetadata> metadata() {
+        lock.readLock().lock();
+        try {
+            List<DocumentMetadata> loaded = new ArrayList<>();
+            for (DocumentMetadata documentMetadata : metadata.values()) {
+                if (documents.containsKey(documentMetadata.getSource())) {
+                    loaded.add(documentMetadata);
+                }
+            }
+            return loaded;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+    Ids que cumplen el filtro, o null si el filtro no restringe nada. Cada atributo se resuelve a un
+    bitmap (OR de los documentos que lo cumplen) y los atributos se intersecan; el resultado es una
+    copia, así que la búsqueda puede usarlo sin lock aunque sigan llegando fragmentos.
+    */
+    public ChunkBitmap candidates(MetadataFilter filter) {
+        if (filter.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            ChunkBitmap result = null;
+            if (!filter.getSources().isEmpty()) {
+                ChunkBitmap sources = new ChunkBitmap();
+                for (String source : filter.getSources()) {
+                    ChunkBitmap chunks = documents.get(source);
+                    if (chunks != null) {
+                        sources = ChunkBitmap.or(sources, chunks);
+                    }
+                }
+                result = sources;
+            }
+            if (!filter.getTags().isEmpty()) {
+                ChunkBitmap tags = null;
+                for (String tag : filter.getTags()) {
+                    ChunkBitmap tagged = tagBitmaps.computeIfAbsent(tag, this::tagBitmap);
+                    if (tags == null) {
+                        tags = tagged;
+                    } else {
+                        tags = filter.isAllTags() ? ChunkBitmap.and(tags, tagged) : ChunkBitmap.or(tags, tagged);
+                    }
+                }
+                result = intersect(result, tags);
+            }
+            if (filter.getUploadedSince() != null) {
+                result = intersect(result, uploadedSince(filter.getUploadedSince()));
+            }
+            return result.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String source) {
+        lock.readLock().lock();
+        try {
+            return documents.containsKey(source);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int documentCount() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // origen -> cantidad de fragmentos, en orden alfabético
+    public Map<String, Integer> documents() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            documents.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> counts.put(entry.getKey(), entry.getValue().cardinality()));
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // origen -> etiquetas de cada documento cargado
+    public Map<String, List<String>> tags() {
+        lock.readLock().lock();
+        try {
+            Map<String, List<String>> tags = new HashMap<>();
+            for (String source : documents.keySet()) {
+                DocumentMetadata documentMetadata = metadata.get(source);
+                tags.put(source, documentMetadata == null
+                        ? List.of()
+                        : documentMetadata.getTags().stream().sorted().toList());
+            }
+            return tags;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // bitmaps de los documentos y de las etiquetas ya combinadas
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (ChunkBitmap chunks : documents.values()) {
+                bytes += chunks.sizeInBytes();
+            }
+            for (ChunkBitmap chunks : tagBitmaps.values()) {
+                bytes += chunks.sizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            metadata.clear();
+            invalidateTags();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // se invoca con el lock de lectura tomado
+    private ChunkBitmap tagBitmap(String tag) {
+        ChunkBitmap tagged = new ChunkBitmap();
+        for (DocumentMetadata documentMetadata : metadata.values()) {
+            ChunkBitmap chunks = documents.get(documentMetadata.getSource());
+            if (chunks != null && documentMetadata.getTags().contains(tag)) {
+                tagged = ChunkBitmap.or(tagged, chunks);
+            }
+        }
+        return tagged;
+    }
+
+    // se invoca con el lock de lectura tomado
+    private ChunkBitmap uploadedSince(Instant since) {
+        ChunkBitmap uploaded = new ChunkBitmap();
+        for (DocumentMetadata documentMetadata : metadata.values()) {
+            ChunkBitmap chunks = documents.get(documentMetadata.getSource());
+            if (chunks != null && !documentMetadata.getUploadedAt().isBefore(since)) {
+                uploaded = ChunkBitmap.or(uploaded, chunks);
+            }
+        }
+        return uploaded;
+    }
+
+    private static ChunkBitmap intersect(ChunkBitmap current, ChunkBitmap other) {
+        return current == null ? other : ChunkBitmap.and(current, other);
+    }
+
+    // se invoca con el lock de escritura tomado
+    private void invalidateTags() {
+        if (!tagBitmaps.isEmpty()) {
+            tagBitmaps.clear();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.rag.rag_simple.index;
+
+import java.util.Arrays;
+
+/*
+Almacén contiguo de vectores: todos los embeddings viven en un único float[]
+(fila i = vector del fragmento i). Evita un List<Double> por fragmento
+(768 objetos Double, ~16 KB) y permite recorrer los vectores sin boxing y con
+acceso secuencial a memoria.
+
+Los vectores se normalizan (norma L2 = 1) al insertarlos, de modo que la
+similitud coseno se reduce a un producto punto y no hay que recalcular normas
+en cada comparación.
+*/
+public class FloatVectorStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int dimensions;
+    private float[] vectors = new float[0];
+    private int capacity;
+    private int size;
+
+    public FloatVectorStore() {
+    }
+
+    // reserva de una vez el espacio de capacity vectores: el arreglo nunca se reemplaza al crecer
+    public FloatVectorStore(int dimensions, int capacity) {
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.vectors = new float[dimensions * capacity];
+    }
+
+    public int add(float[] vector) {
+        if (size == 0 && dimensions == 0) {
+            dimensions = vector.length;
+        }
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Dimensión de embedding inválida: se esperaba "
+                    + dimensions + " y se recibió " + vector.length);
+        }
+
+        ensureCapacity(size + 1);
+        System.arraycopy(VectorMath.normalize(vector), 0, vectors, size * dimensions, dimensions);
+        return size++;
+    }
+
+    // producto punto contra una consulta ya normalizada (= similitud coseno)
+    public float dot(int id, float[] normalizedQuery) {
+        return VectorMath.dot(vectors, id * dimensions, normalizedQuery, dimensions);
+    }
+
+    public float[] get(int id) {
+        int offset = id * dimensions;
+        return Arrays.copyOfRange(vectors, offset, offset + dimensions);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // almacén reservado para capacity vectores con una copia de los actuales (ya normalizados)
+    public FloatVectorStore copy(int capacity) {
+        FloatVectorStore copy = new FloatVectorStore(dimensions, capacity);
+        System.arraycopy(vectors, 0, copy.vectors, 0, size * dimensions);
+        copy.size = size;
+        return copy;
+    }
+
+    public long memoryBytes() {
+        return (long) vectors.length * Float.BYTES;
+    }
+
+    public void clear() {
+        vectors = new float[0];
+        capacity = 0;
+        size = 0;
+        dimensions = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+        while (newCapacity < required) {
+            newCapacity *= 2;
+        }
+        vectors = Arrays.copyOf(vectors, newCapacity * dimensions);
+        capacity = newCapacity;
+    }
+}
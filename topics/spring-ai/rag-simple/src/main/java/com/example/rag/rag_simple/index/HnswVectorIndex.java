@@ -0,0 +1,319 @@
+package com.example.rag.rag_simple.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Índice HNSW (Hierarchical Navigable Small World) sobre los vectores normalizados de un FloatVectorStore.
+Cada nodo se inserta en un nivel aleatorio y se conecta con sus M vecinos más cercanos en
+cada capa; la búsqueda desciende desde la capa superior de forma voraz y explora la capa 0
+con una lista de candidatos de tamaño efSearch, por lo que el costo es sub-lineal.
+
+- m: vecinos por nodo (2*m en la capa 0)
+- efConstruction: candidatos explorados al insertar (más alto = mejor grafo, inserción más lenta)
+- efSearch: candidatos explorados al buscar (más alto = mejor recall, búsqueda más lenta)
+
+Con un filtro de metadatos la capa 0 se recorre igual, pero solo los nodos candidatos entran en los
+resultados; los demás sirven de paso para navegar el grafo. Si el filtro deja menos de
+BRUTE_FORCE_SELECTIVITY de los nodos, el grafo casi no tiene candidatos cerca de la consulta y es más
+barato puntuarlos todos directamente.
+*/
+public class HnswVectorIndex implements VectorIndex {
+
+    private static final double BRUTE_FORCE_SELECTIVITY = 0.1;
+    private static final Comparator<SearchResult> BY_SCORE = Comparator.comparingDouble(SearchResult::getScore);
+
+    private final FloatVectorStore store;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+
+    // neighbors.get(id)[nivel] = vecinos del nodo en ese nivel
+    private final List<int[][]> neighbors = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswVectorIndex(FloatVectorStore store, int m, int efConstruction, int efSearch) {
+        // con m = 1 el multiplicador de niveles sería 1 / log(1) = infinito
+        if (m < 2) {
+            throw new IllegalArgumentException("rag.index.hnsw.m debe ser al menos 2 y es " + m);
+        }
+        if (efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("rag.index.hnsw.ef-construction y rag.index.hnsw.ef-search deben"
+                    + " ser al menos 1 y son " + efConstruction + " y " + efSearch);
+        }
+        this.store = store;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    @Override
+    public void add(int id) {
+        if (id != neighbors.size()) {
+            throw new IllegalStateException("Los vectores deben indexarse en orden: se esperaba el id "
+                    + neighbors.size() + " y se recibió " + id);
+        }
+
+        int level = randomLevel();
+        int[][] links = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[l] = new int[0];
+        }
+        neighbors.add(links);
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+
+        float[] vector = store.get(id);
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<SearchResult> candidates = searchLayer(vector, current, efConstruction, l, null);
+            List<SearchResult> selected = selectNeighbors(closest(candidates, efConstruction), m);
+
+            int[] ids = new int[selected.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = selected.get(i).getId();
+            }
+            links[l] = ids;
+
+            for (int neighbor : ids) {
+                connect(neighbor, id, l);
+            }
+            current = selected.get(0).getId();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+
+        float[] normalizedQuery = VectorMath.normalize(query);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(normalizedQuery, current, l);
+        }
+
+        PriorityQueue<SearchResult> candidates =
+                searchLayer(normalizedQuery, current, Math.max(efSearch, k), 0, null);
+        return closest(candidates, k);
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k, ChunkBitmap candidates) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+
+        int ef = Math.max(efSearch, k);
+        int cardinality = candidates.cardinality();
+        if (cardinality <= ef || cardinality < neighbors.size() * BRUTE_FORCE_SELECTIVITY) {
+            return searchExact(query, k, candidates);
+        }
+
+        float[] normalizedQuery = VectorMath.normalize(query);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(normalizedQuery, current, l);
+        }
+        return closest(searchLayer(normalizedQuery, current, ef, 0, candidates), k);
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        for (int id = 0; id < neighbors.size(); id++) {
+            topK.offer(id, store.dot(id, normalizedQuery));
+        }
+        return topK.toSortedList();
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k, ChunkBitmap candidates) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        candidates.forEach(id -> topK.offer(id, store.dot(id, normalizedQuery)));
+        return topK.toSortedList();
+    }
+
+    @Override
+    public float[] vector(int id) {
+        return store.get(id);
+    }
+
+    // el grafo no tiene recursos fuera del heap; puede haber búsquedas sin candado recorriéndolo,
+    // así que no se vacía: se lo lleva el GC cuando deja de estar referenciado
+    @Override
+    public void clear() {
+    }
+
+    private int randomLevel() {
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return (int) Math.floor(-Math.log(random) * levelMultiplier);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentScore = store.dot(current, query);
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : neighbors.get(current)[level]) {
+                float score = store.dot(neighbor, query);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // devuelve un min-heap con los ef mejores nodos encontrados en la capa; si accepted no es null,
+    // solo esos nodos llegan a los resultados aunque la exploración pase por todos
+    private PriorityQueue<SearchResult> searchLayer(float[] query, int start, int ef, int level,
+                                                    ChunkBitmap accepted) {
+        BitSet visited = new BitSet(neighbors.size());
+        PriorityQueue<SearchResult> candidates = new PriorityQueue<>(BY_SCORE.reversed());
+        PriorityQueue<SearchResult> results = new PriorityQueue<>(BY_SCORE);
+
+        SearchResult first = new SearchResult(start, store.dot(start, query));
+        visited.set(start);
+        candidates.add(first);
+        if (accepted == null || accepted.contains(start)) {
+            results.add(first);
+        }
+
+        while (!candidates.isEmpty()) {
+            SearchResult candidate = candidates.poll();
+            if (results.size() >= ef && candidate.getScore() < results.peek().getScore()) {
+                break;
+            }
+
+            int[][] links = neighbors.get(candidate.getId());
+            if (level >= links.length) {
+                continue;
+            }
+
+            for (int neighbor : links[level]) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+
+                float score = store.dot(neighbor, query);
+                if (results.size() < ef || score > results.peek().getScore()) {
+                    SearchResult result = new SearchResult(neighbor, score);
+                    candidates.add(result);
+                    if (accepted == null || accepted.contains(neighbor)) {
+                        results.add(result);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private void connect(int node, int newNeighbor, int level) {
+        int[][] links = neighbors.get(node);
+        int[] current = links[level];
+        int maxConnections = level == 0 ? maxM0 : m;
+
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = newNeighbor;
+
+        if (updated.length > maxConnections) {
+            updated = pruneConnections(node, updated, maxConnections);
+        }
+        links[level] = updated;
+    }
+
+    private int[] pruneConnections(int node, int[] connections, int maxConnections) {
+        float[] vector = store.get(node);
+
+        List<SearchResult> candidates = new ArrayList<>(connections.length);
+        for (int connection : connections) {
+            candidates.add(new SearchResult(connection, store.dot(connection, vector)));
+        }
+        candidates.sort(BY_SCORE.reversed());
+
+        List<SearchResult> selected = selectNeighbors(candidates, maxConnections);
+        int[] pruned = new int[selected.size()];
+        for (int i = 0; i < pruned.length; i++) {
+            pruned[i] = selected.get(i).getId();
+        }
+        return pruned;
+    }
+
+    /*
+    Heurística de selección de HNSW: un candidato (ordenados de más a menos similar) solo se
+    acepta si está más cerca del nodo que de cualquier vecino ya elegido. Así las conexiones
+    apuntan en direcciones distintas y el grafo se mantiene navegable en datos agrupados.
+    Si quedan huecos se completan con los candidatos descartados más cercanos.
+    */
+    private List<SearchResult> selectNeighbors(List<SearchResult> candidates, int max) {
+        List<SearchResult> selected = new ArrayList<>(max);
+        List<SearchResult> discarded = new ArrayList<>();
+
+        for (SearchResult candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] candidateVector = store.get(candidate.getId());
+
+            boolean diverse = true;
+            for (SearchResult chosen : selected) {
+                if (store.dot(chosen.getId(), candidateVector) > candidate.getScore()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+
+        for (int i = 0; i < discarded.size() && selected.size() < max; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private static List<SearchResult> closest(PriorityQueue<SearchResult> heap, int k) {
+        List<SearchResult> results = new ArrayList<>(heap);
+        results.sort(BY_SCORE.reversed());
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+}
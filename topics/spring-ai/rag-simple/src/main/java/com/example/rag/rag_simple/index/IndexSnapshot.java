@@ -0,0 +1,77 @@
+package com.example.rag.rag_simple.index;
+
+import com.example.rag.rag_simple.model.DocumentChunk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// vista inmutable de los segmentos del índice en un instante; las búsquedas trabajan siempre sobre una
+public class IndexSnapshot {
+
+    private final List<Segment> segments;
+
+    public IndexSnapshot(List<Segment> segments) {
+        this.segments = List.copyOf(segments);
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    // devuelve null si el id no existe o está borrado
+    public DocumentChunk chunk(int id) {
+        Segment segment = segment(id);
+        return segment != null ? segment.chunk(id) : null;
+    }
+
+    // segmento cuyo rango de ids contiene id
+    Segment segment(int id) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Segment segment = segments.get(middle);
+            if (id < segment.baseId()) {
+                high = middle - 1;
+            } else if (middle + 1 < segments.size() && id >= segments.get(middle + 1).baseId()) {
+                low = middle + 1;
+            } else {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    // fragmentos vivos (sin contar lápidas)
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.liveCount();
+        }
+        return size;
+    }
+
+    public int deletedCount() {
+        int deleted = 0;
+        for (Segment segment : segments) {
+            deleted += segment.deletedCount();
+        }
+        return deleted;
+    }
+
+    public List<DocumentChunk> chunks() {
+        List<DocumentChunk> chunks = new ArrayList<>();
+        for (Segment segment : segments) {
+            chunks.addAll(segment.chunks());
+        }
+        return chunks;
+    }
+
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.memoryBytes();
+        }
+        return bytes;
+    }
+}
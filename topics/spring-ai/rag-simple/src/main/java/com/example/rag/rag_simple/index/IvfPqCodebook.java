@@ -0,0 +1,303 @@
+package com.example.rag.rag_simple.index;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/*
+Diccionarios compartidos por todos los segmentos IVF-PQ: lists centroides gruesos (k-means esférico,
+sus vectores están normalizados como los embeddings) y, para cada uno de los subquantizers subespacios
+del residuo (vector - centroide), 256 centroides entrenados con k-means. Un vector se codifica con la
+lista de su centroide más cercano y un byte por subespacio.
+
+Se entrena primero con una muestra de los vectores del primer segmento que se sella; el resto de los
+segmentos se codifican con los mismos diccionarios, así su memoria no se repite por segmento. Una vez
+entrenado no cambia: cuando el corpus duplica los vectores con que se entrenó, VectorIndexFactory.retrain
+entrena otro con una muestra de todo el corpus y SegmentedVectorIndex vuelve a codificar los segmentos
+que usaban el anterior.
+
+Como los vectores están normalizados, q · x ≈ q · c + Σ_s q_s · r̂_s: la tabla de la consulta (q_s
+contra los 256 centroides de cada subespacio) no depende de la lista, y puntuar un código son
+subquantizers sumas de una tabla de 256 * subquantizers floats que cabe en la caché L1/L2.
+*/
+public class IvfPqCodebook {
+
+    static final int CENTROIDS_PER_SUBSPACE = 256;
+    private static final int ITERATIONS = 15;
+    private static final long SEED = 42L;
+
+    private final int requestedLists;
+    private final int trainingSample;
+    private final int dimensions;
+    private final int subquantizers;
+    private final int subDimensions;
+    // última consulta de cada hilo: SegmentedVectorIndex busca segmento por segmento con el mismo arreglo
+    private final ThreadLocal<QueryTables> lastQuery = new ThreadLocal<>();
+
+    private int lists;
+    private int subCentroids;
+    private float[] centroids;
+    private float[] centroidNorms;
+    private float[] codebooks;
+    private int trainingPopulation;
+    private volatile boolean trained;
+
+    // subquantizers se ajusta al mayor divisor de dimensions que no lo supere
+    public IvfPqCodebook(int dimensions, int lists, int subquantizers, int trainingSample) {
+        int divisor = Math.max(1, Math.min(subquantizers, dimensions));
+        while (dimensions % divisor != 0) {
+            divisor--;
+        }
+        this.dimensions = dimensions;
+        this.requestedLists = Math.min(lists, Character.MAX_VALUE + 1);
+        this.subquantizers = divisor;
+        this.subDimensions = dimensions / divisor;
+        this.trainingSample = trainingSample;
+    }
+
+    synchronized void trainIfNeeded(FloatVectorStore store, int size) {
+        train(size, store::get);
+    }
+
+    // entrena con una muestra de hasta trainingSample de los population vectores; vectorAt devuelve null
+    // para un fragmento borrado mientras tanto, que simplemente no entra en la muestra
+    synchronized void train(int population, IntFunction<float[]> vectorAt) {
+        if (trained || population == 0) {
+            return;
+        }
+        Random random = new Random(SEED);
+        int[] sample = sample(population, Math.min(population, trainingSample), random);
+        float[] data = new float[sample.length * dimensions];
+        int n = 0;
+        for (int position : sample) {
+            float[] vector = vectorAt.apply(position);
+            if (vector != null) {
+                System.arraycopy(vector, 0, data, n * dimensions, dimensions);
+                n++;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+
+        lists = Math.min(requestedLists, n);
+        centroids = kMeans(data, n, dimensions, lists, true, random);
+        centroidNorms = norms(centroids, lists, dimensions);
+
+        // residuos de la muestra respecto de su centroide, agrupados por subespacio
+        float[] residuals = new float[data.length];
+        for (int i = 0; i < n; i++) {
+            float[] row = Arrays.copyOfRange(data, i * dimensions, (i + 1) * dimensions);
+            int list = nearest(centroids, centroidNorms, lists, dimensions, row);
+            for (int j = 0; j < dimensions; j++) {
+                residuals[i * dimensions + j] = data[i * dimensions + j] - centroids[list * dimensions + j];
+            }
+        }
+
+        subCentroids = Math.min(CENTROIDS_PER_SUBSPACE, n);
+        codebooks = new float[subquantizers * CENTROIDS_PER_SUBSPACE * subDimensions];
+        float[] subspace = new float[n * subDimensions];
+        for (int s = 0; s < subquantizers; s++) {
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(residuals, i * dimensions + s * subDimensions, subspace, i * subDimensions,
+                        subDimensions);
+            }
+            float[] trainedSubspace = kMeans(subspace, n, subDimensions, subCentroids, false, random);
+            System.arraycopy(trainedSubspace, 0, codebooks, s * CENTROIDS_PER_SUBSPACE * subDimensions,
+                    trainedSubspace.length);
+        }
+        trainingPopulation = population;
+        trained = true;
+    }
+
+    boolean isTrained() {
+        return trained;
+    }
+
+    // vectores del corpus cuando se entrenó (no solo los de la muestra)
+    synchronized int trainingPopulation() {
+        return trainingPopulation;
+    }
+
+    int lists() {
+        return lists;
+    }
+
+    int subquantizers() {
+        return subquantizers;
+    }
+
+    // lista del vector normalizado y su código en codes[offset..offset + subquantizers);
+    // devuelve el error cuadrático de la reconstrucción
+    double encode(float[] vector, byte[] codes, int offset, char[] assignments, int id) {
+        int list = nearest(centroids, centroidNorms, lists, dimensions, vector);
+        assignments[id] = (char) list;
+        float[] residual = new float[dimensions];
+        for (int j = 0; j < dimensions; j++) {
+            residual[j] = vector[j] - centroids[list * dimensions + j];
+        }
+
+        double squaredError = 0;
+        for (int s = 0; s < subquantizers; s++) {
+            int base = s * subDimensions;
+            int best = 0;
+            float bestDistance = Float.POSITIVE_INFINITY;
+            for (int c = 0; c < subCentroids; c++) {
+                int centroid = (s * CENTROIDS_PER_SUBSPACE + c) * subDimensions;
+                float distance = 0f;
+                for (int j = 0; j < subDimensions; j++) {
+                    float diff = residual[base + j] - codebooks[centroid + j];
+                    distance += diff * diff;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = c;
+                }
+            }
+            codes[offset + s] = (byte) best;
+            squaredError += bestDistance;
+        }
+        return squaredError;
+    }
+
+    // tablas de distancia asimétrica de la consulta (sin normalizar); se reutilizan mientras el hilo
+    // siga buscando con el mismo arreglo, que nunca se modifica después de calcular el embedding
+    QueryTables tables(float[] query) {
+        QueryTables cached = lastQuery.get();
+        if (cached != null && cached.query == query) {
+            return cached;
+        }
+
+        float[] normalized = VectorMath.normalize(query);
+        float[] coarse = new float[lists];
+        for (int list = 0; list < lists; list++) {
+            coarse[list] = VectorMath.dot(centroids, list * dimensions, normalized, dimensions);
+        }
+        float[] residual = new float[subquantizers * CENTROIDS_PER_SUBSPACE];
+        for (int s = 0; s < subquantizers; s++) {
+            for (int c = 0; c < subCentroids; c++) {
+                int centroid = (s * CENTROIDS_PER_SUBSPACE + c) * subDimensions;
+                float dot = 0f;
+                for (int j = 0; j < subDimensions; j++) {
+                    dot += normalized[s * subDimensions + j] * codebooks[centroid + j];
+                }
+                residual[s * CENTROIDS_PER_SUBSPACE + c] = dot;
+            }
+        }
+
+        QueryTables tables = new QueryTables(query, normalized, coarse, residual);
+        lastQuery.set(tables);
+        return tables;
+    }
+
+    long memoryBytes() {
+        if (!trained) {
+            return 0;
+        }
+        return (long) (centroids.length + centroidNorms.length + codebooks.length) * Float.BYTES;
+    }
+
+    private static int[] sample(int size, int count, Random random) {
+        int[] ids = IntStream.range(0, size).toArray();
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(size - i);
+            int swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        int[] sample = new int[count];
+        System.arraycopy(ids, 0, sample, 0, count);
+        return sample;
+    }
+
+    /*
+    k-means de Lloyd sobre n vectores de dim componentes, inicializado con k puntos distintos de la
+    muestra. En modo esférico los centroides se normalizan en cada iteración (los embeddings están en
+    la esfera unidad y se comparan por producto punto). Un centroide que queda vacío se reinicia con
+    un punto al azar.
+    */
+    private static float[] kMeans(float[] data, int n, int dim, int k, boolean spherical, Random random) {
+        float[] centroids = new float[k * dim];
+        int[] initial = sample(n, k, random);
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(data, initial[c] * dim, centroids, c * dim, dim);
+        }
+
+        int[] assignment = new int[n];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            float[] current = centroids;
+            float[] currentNorms = norms(centroids, k, dim);
+            IntStream.range(0, n).parallel().forEach(i -> assignment[i] = nearest(current, currentNorms, k, dim,
+                    Arrays.copyOfRange(data, i * dim, (i + 1) * dim)));
+
+            float[] sums = new float[k * dim];
+            int[] counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                int c = assignment[i];
+                counts[c]++;
+                for (int j = 0; j < dim; j++) {
+                    sums[c * dim + j] += data[i * dim + j];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    System.arraycopy(data, random.nextInt(n) * dim, sums, c * dim, dim);
+                    counts[c] = 1;
+                }
+                float norm = 0f;
+                for (int j = 0; j < dim; j++) {
+                    sums[c * dim + j] /= counts[c];
+                    norm += sums[c * dim + j] * sums[c * dim + j];
+                }
+                if (spherical && norm > 0f) {
+                    float inverseNorm = (float) (1.0 / Math.sqrt(norm));
+                    for (int j = 0; j < dim; j++) {
+                        sums[c * dim + j] *= inverseNorm;
+                    }
+                }
+            }
+            centroids = sums;
+        }
+        return centroids;
+    }
+
+    // centroide más cercano en distancia euclídea: argmin ||c||² - 2 x · c
+    private static int nearest(float[] centroids, float[] norms, int k, int dim, float[] vector) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = norms[c] - 2f * VectorMath.dot(centroids, c * dim, vector, dim);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static float[] norms(float[] centroids, int k, int dim) {
+        float[] norms = new float[k];
+        for (int c = 0; c < k; c++) {
+            for (int j = 0; j < dim; j++) {
+                norms[c] += centroids[c * dim + j] * centroids[c * dim + j];
+            }
+        }
+        return norms;
+    }
+
+    // producto punto de la consulta con cada centroide grueso y con cada centroide de cada subespacio
+    static class QueryTables {
+        final float[] query;
+        final float[] normalized;
+        final float[] coarse;
+        final float[] residual;
+
+        private QueryTables(float[] query, float[] normalized, float[] coarse, float[] residual) {
+            this.query = query;
+            this.normalized = normalized;
+            this.coarse = coarse;
+            this.residual = residual;
+        }
+    }
+}
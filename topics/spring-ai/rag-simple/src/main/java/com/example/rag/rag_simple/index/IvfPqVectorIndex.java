@@ -0,0 +1,214 @@
+package com.example.rag.rag_simple.index;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+Índice de archivo invertido con cuantización de producto (IVF-PQ), para corpus que no caben en memoria
+ni como grafo HNSW ni como vectores completos. Al sellar, cada vector se asigna a la lista de su
+centroide grueso y su residuo se codifica con un byte por subespacio (IvfPqCodebook); de la parte
+vectorial solo quedan en el heap los códigos, la lista de cada id y los ids de cada lista: con 64
+subespacios, unos 70 bytes por fragmento. El texto de cada fragmento, sus postings BM25 y su entrada en
+el catálogo siguen en el heap y suelen ocupar bastante más (ver SegmentedVectorIndex.memoryBytes). Los
+vectores completos se vuelcan a un archivo mapeado fuera del heap para re-puntuar los mejores
+candidatos y para las búsquedas exactas.
+
+Una búsqueda calcula las tablas de la consulta (una vez por consulta, no por segmento), recorre solo
+las nprobe listas cuyos centroides están más cerca y puntúa cada código con subquantizers lecturas de
+tabla. Si rerankCandidates > 0, los mejores se re-puntúan con el vector completo. nprobe y
+rerankCandidates ajustan el compromiso entre recall y latencia (ver /diagnostico).
+*/
+public class IvfPqVectorIndex implements VectorIndex {
+
+    private final Path spillFile;
+    private final IvfPqCodebook codebook;
+    private final int nprobe;
+    private final int rerankCandidates;
+    private final int dimensions;
+    private FloatVectorStore store;
+    private MappedVectorStore mapped;
+
+    private byte[] codes = new byte[0];
+    private char[] assignments = new char[0];
+    private int[][] listIds = new int[0][];
+    private int size;
+    private double squaredError;
+
+    public IvfPqVectorIndex(FloatVectorStore store, Path spillFile, IvfPqCodebook codebook, int nprobe,
+                            int rerankCandidates) {
+        this.store = store;
+        this.spillFile = spillFile;
+        this.codebook = codebook;
+        this.nprobe = nprobe;
+        this.rerankCandidates = rerankCandidates;
+        this.dimensions = store.dimensions();
+    }
+
+    // los códigos se calculan al sellar, cuando el segmento ya tiene todos sus vectores
+    @Override
+    public void add(int id) {
+        if (id != size) {
+            throw new IllegalStateException("Los vectores deben agregarse en orden: se esperaba el id "
+                    + size + " y se recibió " + id);
+        }
+        size++;
+    }
+
+    @Override
+    public void seal() {
+        codebook.trainIfNeeded(store, size);
+
+        int subquantizers = codebook.subquantizers();
+        codes = new byte[size * subquantizers];
+        assignments = new char[size];
+        for (int id = 0; id < size; id++) {
+            squaredError += codebook.encode(store.get(id), codes, id * subquantizers, assignments, id);
+        }
+
+        int[] listSizes = new int[codebook.lists()];
+        for (int id = 0; id < size; id++) {
+            listSizes[assignments[id]]++;
+        }
+        listIds = new int[listSizes.length][];
+        for (int list = 0; list < listSizes.length; list++) {
+            listIds[list] = new int[listSizes[list]];
+        }
+        int[] filled = new int[listSizes.length];
+        for (int id = 0; id < size; id++) {
+            int list = assignments[id];
+            listIds[list][filled[list]++] = id;
+        }
+
+        mapped = new MappedVectorStore(spillFile, store, size);
+        store = null;
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        IvfPqCodebook.QueryTables tables = codebook.tables(query);
+        TopK coarse = new TopK(Math.max(k, rerankCandidates));
+        for (int list : probes(tables)) {
+            for (int id : listIds[list]) {
+                coarse.offer(id, approximateDot(id, tables.coarse[list], tables.residual));
+            }
+        }
+        return rerank(coarse, k, tables.normalized);
+    }
+
+    /*
+    Con pocos candidatos se puntúan en precisión completa. Si son menos que los fragmentos que
+    recorrerían las nprobe listas, se puntúan sus códigos directamente (sin perder candidatos que caen
+    en listas no exploradas); si no, se exploran las listas y se descarta lo que no cumple el filtro.
+    */
+    @Override
+    public List<SearchResult> search(float[] query, int k, ChunkBitmap candidates) {
+        int cardinality = candidates.cardinality();
+        if (cardinality <= Math.max(k, rerankCandidates)) {
+            return searchExact(query, k, candidates);
+        }
+
+        IvfPqCodebook.QueryTables tables = codebook.tables(query);
+        TopK coarse = new TopK(Math.max(k, rerankCandidates));
+        int[] probes = probes(tables);
+        long probed = 0;
+        for (int list : probes) {
+            probed += listIds[list].length;
+        }
+        if (cardinality <= probed) {
+            candidates.forEach(id -> coarse.offer(id,
+                    approximateDot(id, tables.coarse[assignments[id]], tables.residual)));
+        } else {
+            for (int list : probes) {
+                for (int id : listIds[list]) {
+                    if (candidates.contains(id)) {
+                        coarse.offer(id, approximateDot(id, tables.coarse[list], tables.residual));
+                    }
+                }
+            }
+        }
+        return rerank(coarse, k, tables.normalized);
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        for (int id = 0; id < size; id++) {
+            topK.offer(id, mapped.dot(id, normalizedQuery));
+        }
+        return topK.toSortedList();
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k, ChunkBitmap candidates) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        candidates.forEach(id -> topK.offer(id, mapped.dot(id, normalizedQuery)));
+        return topK.toSortedList();
+    }
+
+    @Override
+    public float[] vector(int id) {
+        return mapped != null ? mapped.get(id) : store.get(id);
+    }
+
+    @Override
+    public boolean needsHeapVectors() {
+        return false;
+    }
+
+    // solo la parte vectorial; no incluye los diccionarios, que se comparten entre segmentos
+    // (ver VectorIndexFactory.sharedMemoryBytes)
+    @Override
+    public long memoryBytes() {
+        return (long) codes.length + (long) assignments.length * Character.BYTES + (long) size * Integer.BYTES;
+    }
+
+    @Override
+    public void clear() {
+        if (mapped != null) {
+            mapped.delete();
+        }
+    }
+
+    // diccionarios con que se codificó el segmento (ver VectorIndexFactory.isStale)
+    IvfPqCodebook codebook() {
+        return codebook;
+    }
+
+    // raíz del error cuadrático medio por componente entre el vector original y centroide + residuo decodificado
+    public double quantizationError() {
+        return size == 0 ? 0.0 : Math.sqrt(squaredError / ((double) size * dimensions));
+    }
+
+    // las nprobe listas cuyo centroide tiene mayor producto punto con la consulta
+    private int[] probes(IvfPqCodebook.QueryTables tables) {
+        TopK closest = new TopK(Math.min(nprobe, tables.coarse.length));
+        for (int list = 0; list < tables.coarse.length; list++) {
+            closest.offer(list, tables.coarse[list]);
+        }
+        return closest.toSortedList().stream().mapToInt(SearchResult::getId).toArray();
+    }
+
+    private float approximateDot(int id, float coarseDot, float[] residualTable) {
+        int subquantizers = codebook.subquantizers();
+        int offset = id * subquantizers;
+        float dot = coarseDot;
+        for (int s = 0; s < subquantizers; s++) {
+            dot += residualTable[s * IvfPqCodebook.CENTROIDS_PER_SUBSPACE + (codes[offset + s] & 0xFF)];
+        }
+        return dot;
+    }
+
+    private List<SearchResult> rerank(TopK coarse, int k, float[] normalizedQuery) {
+        if (rerankCandidates == 0) {
+            List<SearchResult> results = coarse.toSortedList();
+            return results.size() > k ? results.subList(0, k) : results;
+        }
+        TopK reranked = new TopK(k);
+        for (SearchResult candidate : coarse.toSortedList()) {
+            reranked.offer(candidate.getId(), mapped.dot(candidate.getId(), normalizedQuery));
+        }
+        return reranked.toSortedList();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.rag.rag_simple.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// copia de vectores en precisión completa volcada a un archivo y abierta con FileChannel.map (fuera del heap)
+public class MappedVectorStore {
+
+    private final Path file;
+    private final int dimensions;
+    private final int size;
+    private final FloatBuffer vectors;
+
+    public MappedVectorStore(Path file, FloatVectorStore source, int size) {
+        this.file = file;
+        this.dimensions = source.dimensions();
+        this.size = size;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer row = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int id = 0; id < size; id++) {
+                row.clear();
+                row.asFloatBuffer().put(source.get(id));
+                while (row.hasRemaining()) {
+                    channel.write(row);
+                }
+            }
+            this.vectors = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) size * dimensions * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo volcar el segmento a " + file, e);
+        }
+    }
+
+    public float dot(int id, float[] normalizedQuery) {
+        int offset = id * dimensions;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += vectors.get(offset + i) * normalizedQuery[i];
+        }
+        return sum;
+    }
+
+    public float[] get(int id) {
+        float[] vector = new float[dimensions];
+        vectors.get(id * dimensions, vector);
+        return vector;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // el mapeo sigue siendo válido para las búsquedas en curso aunque el archivo se borre
+    public void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.rag.rag_simple.index;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Cuantización escalar int8: cada componente de un vector se guarda en un byte usando un mínimo y una
+escala propios del vector (x ≈ min + scale * (code + 128)). La búsqueda recorre primero los códigos
+(4 veces menos memoria que los float) para quedarse con rerankCandidates candidatos y luego los
+vuelve a puntuar con los vectores en precisión completa, que al sellar se vuelcan a un archivo
+mapeado en memoria fuera del heap.
+
+El producto punto aproximado con la consulta q se descompone como
+q · x ≈ min * Σq + scale * (Σ q_i * code_i + 128 * Σq), así solo se recorre una vez el arreglo de códigos.
+*/
+public class QuantizedVectorIndex implements VectorIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Path spillFile;
+    private final int rerankCandidates;
+    private final int dimensions;
+    private FloatVectorStore store;
+    private MappedVectorStore mapped;
+
+    private byte[] codes = new byte[0];
+    private float[] mins = new float[0];
+    private float[] scales = new float[0];
+    private int size;
+    private double squaredError;
+
+    public QuantizedVectorIndex(FloatVectorStore store, Path spillFile, int rerankCandidates) {
+        this.store = store;
+        this.spillFile = spillFile;
+        this.rerankCandidates = rerankCandidates;
+        this.dimensions = store.dimensions();
+    }
+
+    @Override
+    public void add(int id) {
+        if (id != size) {
+            throw new IllegalStateException("Los vectores deben cuantizarse en orden: se esperaba el id "
+                    + size + " y se recibió " + id);
+        }
+        ensureCapacity(size + 1);
+
+        float[] vector = store.get(id);
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float value : vector) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        float scale = max > min ? (max - min) / 255f : 1f;
+
+        int offset = id * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            int code = Math.round((vector[i] - min) / scale);
+            codes[offset + i] = (byte) (code - 128);
+
+            float reconstructed = min + scale * code;
+            squaredError += (reconstructed - vector[i]) * (reconstructed - vector[i]);
+        }
+        mins[id] = min;
+        scales[id] = scale;
+        size++;
+    }
+
+    @Override
+    public void seal() {
+        mapped = new MappedVectorStore(spillFile, store, size);
+        store = null;
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        float querySum = 0f;
+        for (float value : normalizedQuery) {
+            querySum += value;
+        }
+
+        TopK coarse = new TopK(Math.max(k, rerankCandidates));
+        for (int id = 0; id < size; id++) {
+            coarse.offer(id, approximateDot(id, normalizedQuery, querySum));
+        }
+
+        TopK reranked = new TopK(k);
+        for (SearchResult candidate : coarse.toSortedList()) {
+            reranked.offer(candidate.getId(), exactDot(candidate.getId(), normalizedQuery));
+        }
+        return reranked.toSortedList();
+    }
+
+    // con pocos candidatos no vale la pena la pasada aproximada: se puntúan directamente en precisión completa
+    @Override
+    public List<SearchResult> search(float[] query, int k, ChunkBitmap candidates) {
+        if (candidates.cardinality() <= Math.max(k, rerankCandidates)) {
+            return searchExact(query, k, candidates);
+        }
+
+        float[] normalizedQuery = VectorMath.normalize(query);
+        float querySum = 0f;
+        for (float value : normalizedQuery) {
+            querySum += value;
+        }
+        float sum = querySum;
+
+        TopK coarse = new TopK(Math.max(k, rerankCandidates));
+        candidates.forEach(id -> coarse.offer(id, approximateDot(id, normalizedQuery, sum)));
+
+        TopK reranked = new TopK(k);
+        for (SearchResult candidate : coarse.toSortedList()) {
+            reranked.offer(candidate.getId(), exactDot(candidate.getId(), normalizedQuery));
+        }
+        return reranked.toSortedList();
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k, ChunkBitmap candidates) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        candidates.forEach(id -> topK.offer(id, exactDot(id, normalizedQuery)));
+        return topK.toSortedList();
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        for (int id = 0; id < size; id++) {
+            topK.offer(id, exactDot(id, normalizedQuery));
+        }
+        return topK.toSortedList();
+    }
+
+    @Override
+    public float[] vector(int id) {
+        return mapped != null ? mapped.get(id) : store.get(id);
+    }
+
+    @Override
+    public boolean needsHeapVectors() {
+        return false;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) codes.length + (long) mins.length * Float.BYTES + (long) scales.length * Float.BYTES;
+    }
+
+    @Override
+    public void clear() {
+        if (mapped != null) {
+            mapped.delete();
+        }
+    }
+
+    // raíz del error cuadrático medio por componente entre el vector original y el reconstruido
+    public double quantizationError() {
+        return size == 0 ? 0.0 : Math.sqrt(squaredError / ((double) size * dimensions));
+    }
+
+    private float approximateDot(int id, float[] normalizedQuery, float querySum) {
+        int offset = id * dimensions;
+        float codeDot = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            codeDot += normalizedQuery[i] * codes[offset + i];
+        }
+        return mins[id] * querySum + scales[id] * (codeDot + 128f * querySum);
+    }
+
+    private float exactDot(int id, float[] normalizedQuery) {
+        return mapped != null ? mapped.dot(id, normalizedQuery) : store.dot(id, normalizedQuery);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= mins.length) {
+            return;
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, mins.length * 2);
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        codes = Arrays.copyOf(codes, capacity * dimensions);
+        mins = Arrays.copyOf(mins, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.rag.rag_simple.index;
+
+import com.example.rag.rag_simple.model.DocumentChunk;
+import com.example.rag.rag_simple.model.ScoredChunk;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// fusiona rankings con reciprocal-rank fusion: score = Σ 1 / (RANK_CONSTANT + posición)
+public final class ReciprocalRankFusion {
+
+    private static final int RANK_CONSTANT = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    @SafeVarargs
+    public static List<ScoredChunk> fuse(int k, List<ScoredChunk>... rankings) {
+        Map<Integer, DocumentChunk> chunks = new LinkedHashMap<>();
+        Map<Integer, Float> scores = new LinkedHashMap<>();
+
+        for (List<ScoredChunk> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                DocumentChunk chunk = ranking.get(rank).getChunk();
+                chunks.putIfAbsent(chunk.getId(), chunk);
+                scores.merge(chunk.getId(), 1f / (RANK_CONSTANT + rank + 1), Float::sum);
+            }
+        }
+
+        List<ScoredChunk> fused = new ArrayList<>(scores.size());
+        scores.forEach((id, score) -> fused.add(new ScoredChunk(chunks.get(id), score)));
+        fused.sort(Comparator.comparingDouble(ScoredChunk::getScore).reversed());
+        return fused.size() > k ? new ArrayList<>(fused.subList(0, k)) : fused;
+    }
+}
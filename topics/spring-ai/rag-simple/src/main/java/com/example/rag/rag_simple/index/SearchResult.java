@@ -0,0 +1,19 @@
+package com.example.rag.rag_simple.index;
+
+public class SearchResult {
+    private final int id;
+    private final float score;
+
+    public SearchResult(int id, float score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public float getScore() {
+        return score;
+    }
+}
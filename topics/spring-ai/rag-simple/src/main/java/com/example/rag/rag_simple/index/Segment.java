@@ -0,0 +1,356 @@
+package com.example.rag.rag_simple.index;
+
+import com.example.rag.rag_simple.model.DocumentChunk;
+import com.example.rag.rag_simple.model.ScoredChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Bloque de hasta capacity fragmentos con sus vectores. El segmento activo solo admite anexar: un
+único escritor llena el almacén (reservado de antemano, nunca se reubica) y publica el nuevo tamaño
+en un campo volatile; los lectores solo ven los fragmentos publicados y los recorren con el escaneo
+exacto. Si se llena antes de alcanzar su capacidad final, grow lo copia en uno más grande (ver
+SegmentedVectorIndex). Al llenarse se sella: se vuelve inmutable y se le construye el índice configurado (HNSW o
+cuantizado). Si ese índice no necesita los vectores en el heap, el segmento sellado los suelta.
+Los fragmentos borrados quedan como lápidas (DocumentChunk.isDeleted): las búsquedas piden tantos
+candidatos extra como lápidas haya y las descartan, hasta que compact() reescribe el segmento solo con
+los fragmentos vivos. Un segmento compactado conserva los ids originales, que dejan de ser consecutivos.
+*/
+public class Segment {
+
+    // heap de cada fragmento además de su vector y los caracteres del texto: el DocumentChunk, su
+    // CopyOnWriteArrayList de orígenes (con su candado y su arreglo) y los encabezados del String. El
+    // origen lo comparten todos los fragmentos del documento y no se cuenta
+    private static final int CHUNK_OVERHEAD_BYTES = 144;
+
+    private final int baseId;
+    private final int dimensions;
+    private final FloatVectorStore vectors;
+    private final DocumentChunk[] chunks;
+    private final SimdScanVectorIndex scanIndex;
+    private final VectorIndex sealedIndex;
+    private final boolean compacted;
+    private final AtomicInteger deletedCount;
+    private volatile int size;
+    private volatile long chunkBytes;
+
+    public Segment(int baseId, int dimensions, int capacity) {
+        this.baseId = baseId;
+        this.dimensions = dimensions;
+        this.vectors = new FloatVectorStore(dimensions, capacity);
+        this.chunks = new DocumentChunk[capacity];
+        this.scanIndex = new SimdScanVectorIndex(vectors);
+        this.sealedIndex = null;
+        this.compacted = false;
+        this.deletedCount = new AtomicInteger();
+    }
+
+    // copia del segmento activo con más capacidad; el original deja de recibir fragmentos, pero los
+    // lectores que lo tomaron de la instantánea anterior pueden seguir usándolo
+    private Segment(Segment active, int capacity) {
+        this.baseId = active.baseId;
+        this.dimensions = active.dimensions;
+        this.vectors = active.vectors.copy(capacity);
+        this.chunks = Arrays.copyOf(active.chunks, capacity);
+        this.scanIndex = new SimdScanVectorIndex(vectors);
+        this.sealedIndex = null;
+        this.compacted = false;
+        this.deletedCount = active.deletedCount;
+        this.size = active.size;
+        this.chunkBytes = active.chunkBytes;
+    }
+
+    private Segment(Segment active, VectorIndex sealedIndex) {
+        boolean keepVectors = sealedIndex.needsHeapVectors();
+        this.baseId = active.baseId;
+        this.dimensions = active.dimensions;
+        this.vectors = keepVectors ? active.vectors : null;
+        this.chunks = active.chunks;
+        this.scanIndex = keepVectors ? active.scanIndex : null;
+        this.sealedIndex = sealedIndex;
+        this.compacted = active.compacted;
+        // compartido con el segmento original: las lápidas puestas mientras se sellaba también cuentan
+        this.deletedCount = active.deletedCount;
+        this.size = active.size;
+        this.chunkBytes = active.chunkBytes;
+    }
+
+    // segmento ya sellado con los fragmentos vivos de otro (ver compact)
+    private Segment(int baseId, FloatVectorStore vectors, DocumentChunk[] chunks, VectorIndex sealedIndex) {
+        boolean keepVectors = sealedIndex.needsHeapVectors();
+        this.baseId = baseId;
+        this.dimensions = vectors.dimensions();
+        this.vectors = keepVectors ? vectors : null;
+        this.chunks = chunks;
+        this.scanIndex = keepVectors ? new SimdScanVectorIndex(vectors) : null;
+        this.sealedIndex = sealedIndex;
+        this.compacted = true;
+        this.deletedCount = new AtomicInteger();
+        this.size = chunks.length;
+        long bytes = 0;
+        for (DocumentChunk chunk : chunks) {
+            bytes += heapBytes(chunk.getText());
+        }
+        this.chunkBytes = bytes;
+    }
+
+    // solo lo invoca el escritor del índice
+    DocumentChunk append(long contentKey, String text, String source, float[] vector) {
+        int localId = vectors.add(vector);
+        DocumentChunk chunk = new DocumentChunk(baseId + localId, contentKey, text, source);
+        chunks[localId] = chunk;
+        chunkBytes += heapBytes(text);
+        size = localId + 1;
+        return chunk;
+    }
+
+    // String compacto: un byte por carácter si todo el texto es Latin-1, dos si no
+    private static long heapBytes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return CHUNK_OVERHEAD_BYTES + 2L * text.length();
+            }
+        }
+        return CHUNK_OVERHEAD_BYTES + text.length();
+    }
+
+    // solo lo invoca el escritor del índice
+    Segment grow(int capacity) {
+        return new Segment(this, capacity);
+    }
+
+    // construye el índice aproximado sobre los vectores ya inmutables y devuelve la versión sellada
+    Segment seal(VectorIndexFactory indexFactory) {
+        VectorIndex index = buildIndex(indexFactory, vectors, size);
+        return new Segment(this, index);
+    }
+
+    // reescribe el segmento sin sus lápidas; devuelve null si no queda ningún fragmento vivo.
+    // Corre fuera del writeLock: las lápidas que aparezcan mientras tanto se vuelven a contar al publicarlo
+    Segment compact(VectorIndexFactory indexFactory) {
+        List<Integer> live = new ArrayList<>();
+        for (int localId = 0; localId < size; localId++) {
+            if (!chunks[localId].isDeleted()) {
+                live.add(localId);
+            }
+        }
+        if (live.isEmpty()) {
+            return null;
+        }
+
+        FloatVectorStore liveVectors = new FloatVectorStore(dimensions, live.size());
+        DocumentChunk[] liveChunks = new DocumentChunk[live.size()];
+        for (int i = 0; i < live.size(); i++) {
+            int localId = live.get(i);
+            liveVectors.add(vector(localId));
+            liveChunks[i] = chunks[localId];
+        }
+        return new Segment(baseId, liveVectors, liveChunks, buildIndex(indexFactory, liveVectors, live.size()));
+    }
+
+    private static VectorIndex buildIndex(VectorIndexFactory indexFactory, FloatVectorStore vectors, int size) {
+        VectorIndex index = indexFactory.create(vectors);
+        for (int id = 0; id < size; id++) {
+            index.add(id);
+        }
+        index.seal();
+        return index;
+    }
+
+    private float[] vector(int localId) {
+        return vectors != null ? vectors.get(localId) : sealedIndex.vector(localId);
+    }
+
+    // solo lo invoca el escritor del índice, con el fragmento ya marcado como borrado
+    void tombstone() {
+        deletedCount.incrementAndGet();
+    }
+
+    // vuelve a contar las lápidas después de publicar un segmento compactado
+    void recountTombstones() {
+        int deleted = 0;
+        for (int localId = 0; localId < size; localId++) {
+            if (chunks[localId].isDeleted()) {
+                deleted++;
+            }
+        }
+        deletedCount.set(deleted);
+    }
+
+    public List<ScoredChunk> search(float[] query, int k, boolean exact) {
+        return search(query, k, exact, null);
+    }
+
+    // allowed usa ids globales (null = sin filtro); se traduce a ids locales y los índices solo puntúan esos
+    public List<ScoredChunk> search(float[] query, int k, boolean exact, ChunkBitmap allowed) {
+        int visible = size;
+        if (visible == 0) {
+            return List.of();
+        }
+
+        ChunkBitmap local = null;
+        if (allowed != null) {
+            local = localCandidates(allowed, visible);
+            if (local.isEmpty()) {
+                // ningún fragmento del segmento cumple el filtro: no se calcula ni un producto punto
+                return List.of();
+            }
+        }
+
+        // cada lápida puede ocupar un lugar del top-k, así que se piden tantos candidatos extra como lápidas
+        int deleted = deletedCount.get();
+        int candidates = Math.min(k + deleted, Math.max(k, visible));
+
+        List<SearchResult> results;
+        if (sealedIndex == null) {
+            results = local == null
+                    ? scanIndex.search(query, candidates, visible)
+                    : scanIndex.search(query, candidates, local);
+        } else if (!exact) {
+            results = local == null
+                    ? sealedIndex.search(query, candidates)
+                    : sealedIndex.search(query, candidates, local);
+        } else if (scanIndex != null) {
+            results = local == null
+                    ? scanIndex.search(query, candidates, visible)
+                    : scanIndex.search(query, candidates, local);
+        } else {
+            results = local == null
+                    ? sealedIndex.searchExact(query, candidates)
+                    : sealedIndex.searchExact(query, candidates, local);
+        }
+
+        List<ScoredChunk> scored = new ArrayList<>(Math.min(k, results.size()));
+        for (SearchResult result : results) {
+            DocumentChunk chunk = chunks[result.getId()];
+            if (!chunk.isDeleted()) {
+                scored.add(new ScoredChunk(chunk, result.getScore()));
+                if (scored.size() == k) {
+                    break;
+                }
+            }
+        }
+        return scored;
+    }
+
+    // ids locales publicados cuyo id global está en allowed; solo se recorre la parte de allowed
+    // que cae en el rango del segmento
+    private ChunkBitmap localCandidates(ChunkBitmap allowed, int visible) {
+        ChunkBitmap local = new ChunkBitmap();
+        if (!compacted) {
+            allowed.forEachInRange(baseId, baseId + visible, id -> local.add(id - baseId));
+        } else {
+            allowed.forEachInRange(baseId, chunks[visible - 1].getId() + 1, id -> {
+                int localId = localIdOf(id);
+                if (localId >= 0) {
+                    local.add(localId);
+                }
+            });
+        }
+        return local;
+    }
+
+    public int baseId() {
+        return baseId;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    // devuelve null si el id no está publicado en este segmento o si está borrado
+    public DocumentChunk chunk(int id) {
+        int localId = compacted ? localIdOf(id) : id - baseId;
+        if (localId < 0 || localId >= size) {
+            return null;
+        }
+        DocumentChunk chunk = chunks[localId];
+        return chunk.isDeleted() ? null : chunk;
+    }
+
+    // vector normalizado de un fragmento vivo (null si el id no está en el segmento o está borrado)
+    public float[] vectorOf(int id) {
+        int localId = compacted ? localIdOf(id) : id - baseId;
+        if (localId < 0 || localId >= size || chunks[localId].isDeleted()) {
+            return null;
+        }
+        return vector(localId);
+    }
+
+    // en un segmento compactado los ids siguen ordenados pero con huecos
+    private int localIdOf(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = chunks[middle].getId();
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // fragmentos vivos del segmento
+    public List<DocumentChunk> chunks() {
+        int visible = size;
+        List<DocumentChunk> list = new ArrayList<>(visible);
+        for (int i = 0; i < visible; i++) {
+            if (!chunks[i].isDeleted()) {
+                list.add(chunks[i]);
+            }
+        }
+        return list;
+    }
+
+    // fragmentos publicados, incluidas las lápidas
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return size - deletedCount.get();
+    }
+
+    public int deletedCount() {
+        return deletedCount.get();
+    }
+
+    public boolean isFull() {
+        return compacted || size == chunks.length;
+    }
+
+    public int capacity() {
+        return chunks.length;
+    }
+
+    public boolean isSealed() {
+        return sealedIndex != null;
+    }
+
+    public VectorIndex sealedIndex() {
+        return sealedIndex;
+    }
+
+    // libera los recursos externos del segmento (archivos volcados) cuando deja de formar parte del índice;
+    // los lectores que tomaron la instantánea anterior pueden seguir buscando en él
+    void release() {
+        if (sealedIndex != null) {
+            sealedIndex.clear();
+        }
+    }
+
+    // vectores, índice sellado y fragmentos (objetos y texto); el arreglo de fragmentos se cuenta completo
+    public long memoryBytes() {
+        long bytes = vectors != null ? vectors.memoryBytes() : 0;
+        bytes += (long) chunks.length * Integer.BYTES + chunkBytes;
+        return bytes + (sealedIndex != null ? sealedIndex.memoryBytes() : 0);
+    }
+}
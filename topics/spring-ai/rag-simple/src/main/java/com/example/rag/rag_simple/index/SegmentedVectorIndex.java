@@ -0,0 +1,406 @@
+package com.example.rag.rag_simple.index;
+
+import com.example.rag.rag_simple.lexical.InvertedIndex;
+import com.example.rag.rag_simple.model.DocumentChunk;
+import com.example.rag.rag_simple.model.ScoredChunk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Índice vectorial concurrente formado por segmentos sellados (inmutables, con índice HNSW) y un
+único segmento activo de solo-anexar. El conjunto de segmentos se publica como un IndexSnapshot
+inmutable en un campo volatile: las búsquedas leen la referencia una vez y trabajan sin bloqueos
+sobre una vista consistente, mientras las cargas y la limpieza publican snapshots nuevos.
+Las escrituras se serializan con writeLock; el sellado de un segmento lleno (construir su HNSW)
+corre en segundo plano y reemplaza el segmento en el snapshot al terminar.
+Junto a los vectores se mantiene un índice invertido BM25 con los mismos ids para la búsqueda léxica.
+
+Un DocumentCatalog registra los fragmentos y los metadatos de cada documento; sus bitmaps de
+candidatos restringen tanto la búsqueda vectorial como la léxica a una parte del corpus. Borrar o
+reemplazar un documento deja lápidas en sus fragmentos (salvo los que otro documento todavía
+comparte); el mismo hilo de mantenimiento que sella compacta los segmentos cuya fracción de lápidas
+supera compactionThreshold y reconstruye el índice léxico, sin volver a generar ningún embedding.
+Con IVF-PQ ese hilo también reentrena los diccionarios cuando el corpus se duplica y vuelve a codificar
+los segmentos que usaban los anteriores.
+*/
+public class SegmentedVectorIndex {
+
+    // lugares del primer segmento activo; se duplican al llenarse hasta llegar a segmentSize
+    private static final int INITIAL_SEGMENT_CAPACITY = 256;
+    // entrada de chunksByContent por fragmento vivo: el nodo del HashMap, la clave Long y su lugar en la tabla
+    private static final int CONTENT_ENTRY_BYTES = 56;
+
+    private final VectorIndexFactory indexFactory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rag-segment-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object writeLock = new Object();
+    private final DocumentCatalog catalog = new DocumentCatalog();
+    private volatile IndexSnapshot snapshot = new IndexSnapshot(List.of());
+    private volatile InvertedIndex lexicalIndex = new InvertedIndex();
+    private volatile int lexicalTombstones;
+    private Segment active;
+    private Map<Long, DocumentChunk> chunksByContent = new HashMap<>();
+    private int nextId;
+    private int generation;
+    private boolean compactionScheduled;
+
+    public SegmentedVectorIndex(VectorIndexFactory indexFactory, int segmentSize, double compactionThreshold) {
+        this.indexFactory = indexFactory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // agrega un fragmento; si ya existe uno con el mismo contenido solo se le suma el origen
+    public DocumentChunk add(long contentKey, String text, String source, float[] vector) {
+        synchronized (writeLock) {
+            DocumentChunk existing = chunksByContent.get(contentKey);
+            if (existing != null) {
+                existing.addSource(source);
+                catalog.add(source, existing.getId());
+                return existing;
+            }
+
+            if (active == null || active.isFull()) {
+                openActiveSegment(vector.length);
+            }
+
+            DocumentChunk chunk = active.append(contentKey, text, source, vector);
+            lexicalIndex.add(chunk.getId(), text);
+            chunksByContent.put(contentKey, chunk);
+            catalog.add(source, chunk.getId());
+            nextId++;
+
+            if (active.isFull() && active.capacity() == segmentSize) {
+                Segment full = active;
+                maintenance.execute(() -> seal(full));
+            }
+            return chunk;
+        }
+    }
+
+    // el segmento activo no reserva segmentSize lugares de entrada (con 768 dimensiones son 12 MB por
+    // colección): empieza con INITIAL_SEGMENT_CAPACITY y, mientras no llegue a segmentSize, al llenarse se
+    // copia en uno del doble de capacidad. Solo se invoca con writeLock tomado
+    private void openActiveSegment(int dimensions) {
+        List<Segment> segments = new ArrayList<>(snapshot.segments());
+        if (active != null && active.capacity() < segmentSize) {
+            Segment grown = active.grow(Math.min(segmentSize, active.capacity() * 2));
+            segments.set(segments.indexOf(active), grown);
+            active = grown;
+        } else {
+            active = new Segment(nextId, dimensions, Math.min(segmentSize, INITIAL_SEGMENT_CAPACITY));
+            segments.add(active);
+        }
+        snapshot = new IndexSnapshot(segments);
+    }
+
+    // quita el documento del índice y devuelve los ids de los fragmentos que lo referenciaban
+    public Set<Integer> deleteSource(String source) {
+        synchronized (writeLock) {
+            ChunkBitmap chunks = catalog.remove(source);
+            catalog.forget(source);
+            if (chunks == null) {
+                return Set.of();
+            }
+            Set<Integer> ids = new HashSet<>();
+            chunks.forEach(id -> {
+                ids.add(id);
+                detach(source, id);
+            });
+            scheduleCompaction();
+            return ids;
+        }
+    }
+
+    // ids de los fragmentos que hoy referencian el documento
+    public Set<Integer> chunkIds(String source) {
+        synchronized (writeLock) {
+            Set<Integer> ids = new HashSet<>();
+            ChunkBitmap chunks = catalog.chunks(source);
+            if (chunks != null) {
+                chunks.forEach(ids::add);
+            }
+            return ids;
+        }
+    }
+
+    // tras recargar un documento, el origen solo queda en los fragmentos de keepIds;
+    // devuelve los ids de los fragmentos de los que se quitó
+    public Set<Integer> retainSource(String source, Collection<Integer> keepIds) {
+        synchronized (writeLock) {
+            ChunkBitmap chunks = catalog.remove(source);
+            if (chunks == null) {
+                return Set.of();
+            }
+            Set<Integer> keep = new HashSet<>(keepIds);
+            Set<Integer> removed = new HashSet<>();
+            ChunkBitmap retained = new ChunkBitmap();
+            chunks.forEach(id -> {
+                if (keep.contains(id)) {
+                    retained.add(id);
+                } else {
+                    removed.add(id);
+                    detach(source, id);
+                }
+            });
+            catalog.put(source, retained);
+            if (!removed.isEmpty()) {
+                scheduleCompaction();
+            }
+            return removed;
+        }
+    }
+
+    // el fragmento pasa a ser una lápida cuando ningún documento lo referencia
+    private void detach(String source, int id) {
+        Segment segment = snapshot.segment(id);
+        DocumentChunk chunk = segment != null ? segment.chunk(id) : null;
+        if (chunk != null && chunk.removeSource(source)) {
+            chunk.markDeleted();
+            segment.tombstone();
+            chunksByContent.remove(chunk.getContentKey());
+            lexicalTombstones++;
+        }
+    }
+
+    // vector ya indexado para un contenido; permite recargar un documento sin volver a generar
+    // los embeddings de los fragmentos que no cambiaron
+    public float[] vector(long contentKey) {
+        DocumentChunk chunk;
+        synchronized (writeLock) {
+            chunk = chunksByContent.get(contentKey);
+        }
+        if (chunk == null) {
+            return null;
+        }
+        Segment segment = snapshot.segment(chunk.getId());
+        return segment != null ? segment.vectorOf(chunk.getId()) : null;
+    }
+
+    // vector normalizado de un fragmento indexado, o null si ya se borró
+    public float[] vectorOf(int id) {
+        Segment segment = snapshot.segment(id);
+        return segment != null ? segment.vectorOf(id) : null;
+    }
+
+    public List<ScoredChunk> search(float[] query, int k, boolean exact) {
+        return search(query, k, exact, null);
+    }
+
+    // allowed: ids que la búsqueda puede devolver (ver DocumentCatalog.candidates); null = sin filtro
+    public List<ScoredChunk> search(float[] query, int k, boolean exact, ChunkBitmap allowed) {
+        IndexSnapshot current = snapshot;
+
+        List<ScoredChunk> candidates = new ArrayList<>();
+        for (Segment segment : current.segments()) {
+            candidates.addAll(segment.search(query, k, exact, allowed));
+        }
+        candidates.sort(Comparator.comparingDouble(ScoredChunk::getScore).reversed());
+        return candidates.size() > k ? new ArrayList<>(candidates.subList(0, k)) : candidates;
+    }
+
+    public List<ScoredChunk> searchLexical(String query, int k) {
+        return searchLexical(query, k, null);
+    }
+
+    public List<ScoredChunk> searchLexical(String query, int k, ChunkBitmap allowed) {
+        IndexSnapshot current = snapshot;
+
+        // las lápidas siguen en el índice invertido hasta reconstruirlo: se piden candidatos de más
+        List<ScoredChunk> results = new ArrayList<>();
+        for (SearchResult result : lexicalIndex.search(query, k + lexicalTombstones, allowed)) {
+            DocumentChunk chunk = current.chunk(result.getId());
+            if (chunk != null) {
+                results.add(new ScoredChunk(chunk, result.getScore()));
+                if (results.size() == k) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    public IndexSnapshot snapshot() {
+        return snapshot;
+    }
+
+    public DocumentCatalog catalog() {
+        return catalog;
+    }
+
+    // estimación del heap: segmentos (vectores, índices y fragmentos), índice BM25, catálogo y chunksByContent
+    public long memoryBytes() {
+        IndexSnapshot current = snapshot;
+        return current.memoryBytes() + (long) current.size() * CONTENT_ENTRY_BYTES + lexicalIndex.memoryBytes()
+                + catalog.memoryBytes() + indexFactory.sharedMemoryBytes();
+    }
+
+    // error de reconstrucción medio de los segmentos cuantizados (int8 o IVF-PQ; 0 si no hay ninguno)
+    public double quantizationError() {
+        return snapshot.segments().stream()
+                .map(Segment::sealedIndex)
+                .filter(index -> index instanceof QuantizedVectorIndex || index instanceof IvfPqVectorIndex)
+                .mapToDouble(index -> index instanceof QuantizedVectorIndex quantized
+                        ? quantized.quantizationError()
+                        : ((IvfPqVectorIndex) index).quantizationError())
+                .average()
+                .orElse(0.0);
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            snapshot.segments().forEach(Segment::release);
+            snapshot = new IndexSnapshot(List.of());
+            lexicalIndex = new InvertedIndex();
+            lexicalTombstones = 0;
+            active = null;
+            chunksByContent = new HashMap<>();
+            catalog.clear();
+            nextId = 0;
+            generation++;
+            indexFactory.resetSharedState();
+        }
+    }
+
+    public void close() {
+        maintenance.shutdownNow();
+    }
+
+    private void seal(Segment full) {
+        retrainIfNeeded(full);
+        Segment sealed = full.seal(indexFactory);
+        synchronized (writeLock) {
+            List<Segment> segments = new ArrayList<>(snapshot.segments());
+            int position = segments.indexOf(full);
+            if (position < 0) {
+                // el índice se limpió mientras se construía el índice del segmento
+                sealed.release();
+                return;
+            }
+            segments.set(position, sealed);
+            snapshot = new IndexSnapshot(segments);
+        }
+        compact();
+    }
+
+    // IVF-PQ: si el corpus ya duplica los vectores con que se entrenaron los diccionarios, entrena otros con
+    // una muestra de todos los fragmentos vivos (los sellados se leen de sus volcados). El segmento que se
+    // está sellando ya usa los nuevos; compact() vuelve a codificar los demás
+    private void retrainIfNeeded(Segment full) {
+        IndexSnapshot current = snapshot;
+        if (!indexFactory.needsRetraining(current.size())) {
+            return;
+        }
+        int[] ids = new int[current.size()];
+        int population = 0;
+        for (Segment segment : current.segments()) {
+            for (DocumentChunk chunk : segment.chunks()) {
+                if (population == ids.length) {
+                    break;
+                }
+                ids[population++] = chunk.getId();
+            }
+        }
+        indexFactory.retrainIvfPq(full.dimensions(), population, position -> {
+            Segment segment = current.segment(ids[position]);
+            return segment != null ? segment.vectorOf(ids[position]) : null;
+        });
+    }
+
+    // solo se invoca con writeLock tomado
+    private void scheduleCompaction() {
+        if (!compactionScheduled) {
+            compactionScheduled = true;
+            maintenance.execute(this::compact);
+        }
+    }
+
+    private void compact() {
+        synchronized (writeLock) {
+            compactionScheduled = false;
+        }
+
+        // también se reescriben los segmentos IVF-PQ codificados con diccionarios ya reemplazados
+        for (Segment segment : snapshot.segments()) {
+            if (!segment.isSealed() || (segment.deletedCount() < segment.size() * compactionThreshold
+                    && !indexFactory.isStale(segment.sealedIndex()))) {
+                continue;
+            }
+            Segment compacted = segment.compact(indexFactory);
+            synchronized (writeLock) {
+                List<Segment> segments = new ArrayList<>(snapshot.segments());
+                int position = segments.indexOf(segment);
+                if (position < 0) {
+                    // el índice se limpió mientras se compactaba
+                    if (compacted != null) {
+                        compacted.release();
+                    }
+                    continue;
+                }
+                if (compacted == null) {
+                    segments.remove(position);
+                } else {
+                    compacted.recountTombstones();
+                    segments.set(position, compacted);
+                }
+                snapshot = new IndexSnapshot(segments);
+            }
+            segment.release();
+        }
+
+        int tombstones = lexicalTombstones;
+        if (tombstones > 0 && tombstones >= (snapshot.size() + tombstones) * compactionThreshold) {
+            rebuildLexicalIndex();
+        }
+    }
+
+    // reindexa el texto de los fragmentos vivos; los que se agreguen mientras tanto se suman al final
+    private void rebuildLexicalIndex() {
+        int rebuiltUpTo;
+        int tombstones;
+        int startGeneration;
+        IndexSnapshot current;
+        synchronized (writeLock) {
+            startGeneration = generation;
+            rebuiltUpTo = nextId;
+            tombstones = lexicalTombstones;
+            current = snapshot;
+        }
+
+        InvertedIndex rebuilt = new InvertedIndex();
+        for (DocumentChunk chunk : current.chunks()) {
+            if (chunk.getId() < rebuiltUpTo) {
+                rebuilt.add(chunk.getId(), chunk.getText());
+            }
+        }
+
+        synchronized (writeLock) {
+            if (generation != startGeneration) {
+                // el índice se limpió mientras se reconstruía
+                return;
+            }
+            for (DocumentChunk chunk : snapshot.chunks()) {
+                if (chunk.getId() >= rebuiltUpTo) {
+                    rebuilt.add(chunk.getId(), chunk.getText());
+                }
+            }
+            lexicalIndex = rebuilt;
+            lexicalTombstones -= tombstones;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.rag.rag_simple.index;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+Búsqueda exacta por fuerza bruta. Los vectores ya están normalizados en el almacén, así que el
+score es un producto punto (Vector API cuando está disponible). El rango de ids se reparte en un
+ForkJoinPool; cada hoja mantiene su propio TopK acotado y los resultados se fusionan al unir las
+tareas, sin ordenar el corpus completo.
+*/
+public class SimdScanVectorIndex implements VectorIndex {
+
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+
+    private final FloatVectorStore store;
+    private final ForkJoinPool pool;
+
+    public SimdScanVectorIndex(FloatVectorStore store) {
+        this(store, ForkJoinPool.commonPool());
+    }
+
+    public SimdScanVectorIndex(FloatVectorStore store, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+    }
+
+    @Override
+    public void add(int id) {
+        // no necesita estructura adicional: recorre el almacén completo en cada búsqueda
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        return search(query, k, store.size());
+    }
+
+    // recorre solo los primeros size vectores: permite buscar en un almacén que otro hilo sigue llenando
+    public List<SearchResult> search(float[] query, int k, int size) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+
+        if (size <= SEQUENTIAL_THRESHOLD) {
+            return scan(normalizedQuery, k, 0, size).toSortedList();
+        }
+        return pool.invoke(new ScanTask(normalizedQuery, k, 0, size)).toSortedList();
+    }
+
+    // solo puntúa los candidatos: el costo es proporcional al filtro, no al segmento
+    @Override
+    public List<SearchResult> search(float[] query, int k, ChunkBitmap candidates) {
+        float[] normalizedQuery = VectorMath.normalize(query);
+        TopK topK = new TopK(k);
+        candidates.forEach(id -> topK.offer(id, store.dot(id, normalizedQuery)));
+        return topK.toSortedList();
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k) {
+        return search(query, k);
+    }
+
+    @Override
+    public List<SearchResult> searchExact(float[] query, int k, ChunkBitmap candidates) {
+        return search(query, k, candidates);
+    }
+
+    @Override
+    public float[] vector(int id) {
+        return store.get(id);
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    private TopK scan(float[] normalizedQuery, int k, int from, int to) {
+        TopK topK = new TopK(k);
+        for (int id = from; id < to; id++) {
+            topK.offer(id, store.dot(id, normalizedQuery));
+        }
+        return topK;
+    }
+
+    private class ScanTask extends RecursiveTask<TopK> {
+
+        private final float[] normalizedQuery;
+        private final int k;
+        private final int from;
+        private final int to;
+
+        ScanTask(float[] normalizedQuery, int k, int from, int to) {
+            this.normalizedQuery = normalizedQuery;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return scan(normalizedQuery, k, from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(normalizedQuery, k, from, middle);
+            ScanTask right = new ScanTask(normalizedQuery, k, middle, to);
+            left.fork();
+
+            TopK merged = right.compute();
+            merged.merge(left.join());
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.rag.rag_simple.index;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// solo se carga desde VectorMath cuando la JVM arranca con --add-modules jdk.incubator.vector
+final class SimdVectorMath {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private SimdVectorMath() {
+    }
+
+    static float dot(float[] data, int offset, float[] query, int dimensions) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upperBound = SPECIES.loopBound(dimensions);
+
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector a = FloatVector.fromArray(SPECIES, data, offset + i);
+            FloatVector b = FloatVector.fromArray(SPECIES, query, i);
+            acc = a.fma(b, acc);
+        }
+
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dimensions; i++) {
+            sum += data[offset + i] * query[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.rag.rag_simple.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// min-heap acotado de (id, score) sobre arreglos primitivos: la raíz es el peor de los k mejores
+public class TopK {
+
+    private final int k;
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopK(int k) {
+        this.k = k;
+        this.ids = new int[k];
+        this.scores = new float[k];
+    }
+
+    public void offer(int id, float score) {
+        if (k == 0) {
+            return;
+        }
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float minScore() {
+        return size < k ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    // resultados ordenados de mayor a menor score
+    public List<SearchResult> toSortedList() {
+        List<SearchResult> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new SearchResult(ids[i], scores[i]));
+        }
+        results.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+        return results;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[index] <= scores[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.rag.rag_simple.index;
+
+import java.util.List;
+
+// índice de búsqueda sobre los vectores de un FloatVectorStore, referenciados por id
+public interface VectorIndex {
+
+    void add(int id);
+
+    // devuelve los k fragmentos más similares, ordenados de mayor a menor score
+    List<SearchResult> search(float[] query, int k);
+
+    // como search, pero solo devuelve ids de candidates; filtrar dentro del índice evita que un filtro
+    // selectivo deje el top-k vacío y permite saltarse el resto de los vectores
+    List<SearchResult> search(float[] query, int k, ChunkBitmap candidates);
+
+    // libera los recursos fuera del heap (archivos volcados). Puede haber búsquedas sin candado en curso
+    // sobre el índice, así que no debe modificar las estructuras en memoria: esas las recoge el GC
+    void clear();
+
+    // se invoca al sellar el segmento, cuando ya no se agregarán más vectores
+    default void seal() {
+    }
+
+    // si es false, el segmento sellado libera los vectores del heap y las búsquedas exactas usan searchExact
+    default boolean needsHeapVectors() {
+        return true;
+    }
+
+    // búsquedas por fuerza bruta con los vectores en precisión completa; Segment las usa cuando el
+    // segmento sellado ya soltó los vectores del heap
+    List<SearchResult> searchExact(float[] query, int k);
+
+    List<SearchResult> searchExact(float[] query, int k, ChunkBitmap candidates);
+
+    // vector en precisión completa del id; lo usan la compactación de segmentos que ya soltaron el heap
+    float[] vector(int id);
+
+    default long memoryBytes() {
+        return 0;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.rag.rag_simple.index;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+// crea el índice configurado en rag.index.type sobre un almacén de vectores:
+// hnsw (grafo aproximado), exact (escaneo SIMD paralelo, recomendado para corpus pequeños y medianos)
+// quantized (códigos int8 en memoria + re-ranking con vectores completos mapeados desde disco)
+// o ivfpq (archivo invertido con códigos PQ de pocos bytes por vector, para corpus muy grandes).
+// Cada colección usa su propia copia (forCollection): comparte la configuración y el directorio de
+// volcado, pero no los diccionarios IVF-PQ ni los nombres de los archivos volcados
+@Component
+public class VectorIndexFactory {
+
+    // los diccionarios IVF-PQ se vuelven a entrenar cada vez que el corpus multiplica por este factor los
+    // vectores con que se entrenaron: el costo total de reentrenar crece como log(n)
+    private static final int IVFPQ_RETRAIN_GROWTH = 2;
+
+    private final String type;
+    private final int hnswM;
+    private final int hnswEfConstruction;
+    private final int hnswEfSearch;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final int quantizedRerank;
+    private final int ivfPqLists;
+    private final int ivfPqSubquantizers;
+    private final int ivfPqNprobe;
+    private final int ivfPqRerank;
+    private final int ivfPqTrainingSample;
+    private final Path spillDirectory;
+    private final String spillPrefix;
+    private final AtomicLong spillSequence = new AtomicLong();
+    // diccionarios IVF-PQ compartidos por todos los segmentos; se crean con el primer segmento
+    private IvfPqCodebook ivfPqCodebook;
+
+    public VectorIndexFactory(@Value("${rag.index.type:hnsw}") String type,
+                              @Value("${rag.index.hnsw.m:16}") int hnswM,
+                              @Value("${rag.index.hnsw.ef-construction:200}") int hnswEfConstruction,
+                              @Value("${rag.index.hnsw.ef-search:100}") int hnswEfSearch,
+                              @Value("${rag.index.segment-size:4096}") int segmentSize,
+                              @Value("${rag.index.compaction-threshold:0.3}") double compactionThreshold,
+                              @Value("${rag.index.quantized.rerank:50}") int quantizedRerank,
+                              @Value("${rag.index.ivfpq.lists:256}") int ivfPqLists,
+                              @Value("${rag.index.ivfpq.subquantizers:64}") int ivfPqSubquantizers,
+                              @Value("${rag.index.ivfpq.nprobe:16}") int ivfPqNprobe,
+                              @Value("${rag.index.ivfpq.rerank:20}") int ivfPqRerank,
+                              @Value("${rag.index.ivfpq.training-sample:16384}") int ivfPqTrainingSample,
+                              @Value("${rag.index.quantized.spill-path:rag-data/vectors}") String spillPath) {
+        this.type = type;
+        this.hnswM = hnswM;
+        this.hnswEfConstruction = hnswEfConstruction;
+        this.hnswEfSearch = hnswEfSearch;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.quantizedRerank = quantizedRerank;
+        this.ivfPqLists = ivfPqLists;
+        this.ivfPqSubquantizers = ivfPqSubquantizers;
+        this.ivfPqNprobe = ivfPqNprobe;
+        this.ivfPqRerank = ivfPqRerank;
+        this.ivfPqTrainingSample = ivfPqTrainingSample;
+        this.spillDirectory = Paths.get(spillPath);
+        this.spillPrefix = "segment-";
+    }
+
+    private VectorIndexFactory(VectorIndexFactory base, String spillPrefix) {
+        this.type = base.type;
+        this.hnswM = base.hnswM;
+        this.hnswEfConstruction = base.hnswEfConstruction;
+        this.hnswEfSearch = base.hnswEfSearch;
+        this.segmentSize = base.segmentSize;
+        this.compactionThreshold = base.compactionThreshold;
+        this.quantizedRerank = base.quantizedRerank;
+        this.ivfPqLists = base.ivfPqLists;
+        this.ivfPqSubquantizers = base.ivfPqSubquantizers;
+        this.ivfPqNprobe = base.ivfPqNprobe;
+        this.ivfPqRerank = base.ivfPqRerank;
+        this.ivfPqTrainingSample = base.ivfPqTrainingSample;
+        this.spillDirectory = base.spillDirectory;
+        this.spillPrefix = spillPrefix;
+    }
+
+    // fábrica de una colección: los volcados se llaman segment-<coleccion>-N.f32
+    public VectorIndexFactory forCollection(String collection) {
+        return new VectorIndexFactory(this, "segment-" + collection + "-");
+    }
+
+    // los volcados de una ejecución anterior no se reutilizan: el índice se reconstruye desde SegmentStore
+    @PostConstruct
+    public void prepararDirectorioDeVolcado() throws IOException {
+        if (!type.equals("quantized") && !type.equals("ivfpq")) {
+            return;
+        }
+        Files.createDirectories(spillDirectory);
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public SegmentedVectorIndex createSegmented() {
+        return new SegmentedVectorIndex(this, segmentSize, compactionThreshold);
+    }
+
+    public VectorIndex create(FloatVectorStore store) {
+        return switch (type) {
+            case "hnsw" -> new HnswVectorIndex(store, hnswM, hnswEfConstruction, hnswEfSearch);
+            case "exact" -> new SimdScanVectorIndex(store);
+            case "quantized" -> new QuantizedVectorIndex(store,
+                    spillDirectory.resolve(spillPrefix + spillSequence.incrementAndGet() + ".f32"), quantizedRerank);
+            case "ivfpq" -> new IvfPqVectorIndex(store,
+                    spillDirectory.resolve(spillPrefix + spillSequence.incrementAndGet() + ".f32"),
+                    ivfPqCodebook(store.dimensions()), ivfPqNprobe, ivfPqRerank);
+            default -> throw new IllegalArgumentException("Tipo de índice desconocido: " + type);
+        };
+    }
+
+    // memoria de las estructuras compartidas entre segmentos (los diccionarios IVF-PQ)
+    public synchronized long sharedMemoryBytes() {
+        return ivfPqCodebook == null ? 0 : ivfPqCodebook.memoryBytes();
+    }
+
+    // al vaciar el índice los diccionarios se vuelven a entrenar con los próximos documentos
+    synchronized void resetSharedState() {
+        ivfPqCodebook = null;
+    }
+
+    // true si hay diccionarios IVF-PQ entrenados con menos de la mitad de los population vectores actuales
+    synchronized boolean needsRetraining(int population) {
+        return ivfPqCodebook != null && ivfPqCodebook.isTrained()
+                && population >= (long) IVFPQ_RETRAIN_GROWTH * ivfPqCodebook.trainingPopulation();
+    }
+
+    // entrena diccionarios nuevos con una muestra de los population vectores; los índices creados desde
+    // ahora los usan y los que se codificaron con los anteriores quedan obsoletos (ver isStale)
+    void retrainIvfPq(int dimensions, int population, IntFunction<float[]> vectorAt) {
+        IvfPqCodebook previous;
+        synchronized (this) {
+            previous = ivfPqCodebook;
+        }
+        IvfPqCodebook retrained = new IvfPqCodebook(dimensions, ivfPqLists, ivfPqSubquantizers, ivfPqTrainingSample);
+        retrained.train(population, vectorAt);
+        synchronized (this) {
+            // si el índice se vació mientras tanto, la muestra ya no describe el corpus
+            if (retrained.isTrained() && ivfPqCodebook == previous) {
+                ivfPqCodebook = retrained;
+            }
+        }
+    }
+
+    // índice IVF-PQ codificado con diccionarios que ya fueron reemplazados
+    synchronized boolean isStale(VectorIndex index) {
+        return index instanceof IvfPqVectorIndex ivfPq && ivfPq.codebook() != ivfPqCodebook;
+    }
+
+    private synchronized IvfPqCodebook ivfPqCodebook(int dimensions) {
+        if (ivfPqCodebook == null) {
+            ivfPqCodebook = new IvfPqCodebook(dimensions, ivfPqLists, ivfPqSubquantizers, ivfPqTrainingSample);
+        }
+        return ivfPqCodebook;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.rag.rag_simple.index;
+
+// producto punto sobre vectores contiguos; usa la Vector API si el módulo jdk.incubator.vector está cargado
+public final class VectorMath {
+
+    private static final boolean SIMD_AVAILABLE = ModuleLayer.boot()
+            .findModule("jdk.incubator.vector")
+            .isPresent();
+
+    private VectorMath() {
+    }
+
+    public static boolean isSimdAvailable() {
+        return SIMD_AVAILABLE;
+    }
+
+    public static float dot(float[] data, int offset, float[] query, int dimensions) {
+        if (SIMD_AVAILABLE) {
+            return SimdVectorMath.dot(data, offset, query, dimensions);
+        }
+        return scalarDot(data, offset, query, dimensions);
+    }
+
+    public static float scalarDot(float[] data, int offset, float[] query, int dimensions) {
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += data[offset + i] * query[i];
+        }
+        return sum;
+    }
+
+    public static float[] normalize(float[] vector) {
+        float sum = 0f;
+        for (float value : vector) {
+            sum += value * value;
+        }
+
+        float[] normalized = new float[vector.length];
+        if (sum == 0f) {
+            return normalized;
+        }
+        float inverseNorm = (float) (1.0 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverseNorm;
+        }
+        return normalized;
+    }
+}
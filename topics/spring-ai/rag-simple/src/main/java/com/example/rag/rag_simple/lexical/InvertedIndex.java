@@ -0,0 +1,111 @@
+package com.example.rag.rag_simple.lexical;
+
+import com.example.rag.rag_simple.index.ChunkBitmap;
+import com.example.rag.rag_simple.index.SearchResult;
+import com.example.rag.rag_simple.index.TopK;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Índice invertido con puntuación BM25: diccionario término -> PostingList y la longitud en tokens de
+cada fragmento. Complementa la búsqueda vectorial con coincidencias exactas (códigos de producto,
+mensajes de error) que los embeddings no distinguen bien.
+*/
+public class InvertedIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final Map<String, PostingList> dictionary = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] lengths = new int[64];
+    private int documentCount;
+    private long totalLength;
+
+    // los ids deben llegar en orden creciente (los asigna el escritor del índice vectorial)
+    public void add(int id, String text) {
+        List<String> tokens = Tokenizer.tokenize(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                dictionary.computeIfAbsent(entry.getKey(), term -> new PostingList()).add(id, entry.getValue());
+            }
+            if (id >= lengths.length) {
+                lengths = Arrays.copyOf(lengths, Math.max(lengths.length * 2, id + 1));
+            }
+            lengths[id] = tokens.size();
+            documentCount++;
+            totalLength += tokens.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<SearchResult> search(String query, int k) {
+        return search(query, k, null);
+    }
+
+    // solo puntúa los ids de allowed (null = todos); el idf sigue calculándose sobre el corpus completo
+    public List<SearchResult> search(String query, int k, ChunkBitmap allowed) {
+        Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenize(query));
+        Map<Integer, Float> scores = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            if (documentCount == 0) {
+                return List.of();
+            }
+            float averageLength = (float) totalLength / documentCount;
+
+            for (String term : terms) {
+                PostingList postings = dictionary.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                int df = postings.documentCount();
+                float idf = (float) Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+
+                PostingList.Cursor cursor = postings.cursor();
+                while (cursor.next()) {
+                    if (allowed != null && !allowed.contains(cursor.id())) {
+                        continue;
+                    }
+                    float tf = cursor.frequency();
+                    float norm = K1 * (1 - B + B * lengths[cursor.id()] / averageLength);
+                    scores.merge(cursor.id(), idf * tf * (K1 + 1) / (tf + norm), Float::sum);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        TopK topK = new TopK(k);
+        scores.forEach(topK::offer);
+        return topK.toSortedList();
+    }
+
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) lengths.length * Integer.BYTES;
+            for (Map.Entry<String, PostingList> entry : dictionary.entrySet()) {
+                bytes += entry.getKey().length() * 2L + entry.getValue().sizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.rag.rag_simple.lexical;
+
+import java.util.Arrays;
+
+/*
+Lista de apariciones de un término comprimida con variable-byte: por cada fragmento se guarda la
+diferencia con el id anterior y la frecuencia del término, 7 bits por byte. Los ids crecen siempre,
+así que las diferencias son pequeñas y la mayoría ocupa un solo byte.
+*/
+public class PostingList {
+
+    private byte[] data = new byte[8];
+    private int length;
+    private int lastId = -1;
+    private int documentCount;
+
+    public void add(int id, int frequency) {
+        if (id <= lastId) {
+            throw new IllegalArgumentException("Los ids deben agregarse en orden creciente");
+        }
+        writeVByte(lastId < 0 ? id : id - lastId);
+        writeVByte(frequency);
+        lastId = id;
+        documentCount++;
+    }
+
+    public int documentCount() {
+        return documentCount;
+    }
+
+    public int sizeInBytes() {
+        return length;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void writeVByte(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    public class Cursor {
+        private int position;
+        private int id = -1;
+        private int frequency;
+
+        public boolean next() {
+            if (position >= length) {
+                return false;
+            }
+            int delta = readVByte();
+            id = id < 0 ? delta : id + delta;
+            frequency = readVByte();
+            return true;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public int frequency() {
+            return frequency;
+        }
+
+        private int readVByte() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
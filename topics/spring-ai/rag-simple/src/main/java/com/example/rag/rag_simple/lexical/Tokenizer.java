@@ -0,0 +1,50 @@
+package com.example.rag.rag_simple.lexical;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+Tokenizador para el índice léxico: minúsculas, sin acentos, y tokens formados por letras y dígitos.
+Los guiones, puntos y guiones bajos internos se conservan para que códigos como "ERR-404" o
+"v2.1.3" sigan siendo un único término; además se emiten sus partes para poder buscarlas sueltas.
+*/
+public final class Tokenizer {
+
+    private Tokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            boolean joiner = (c == '-' || c == '.' || c == '_') && current.length() > 0
+                    && i + 1 < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i + 1));
+
+            if (Character.isLetterOrDigit(c) || joiner) {
+                current.append(c);
+            } else if (current.length() > 0) {
+                addToken(current.toString(), tokens);
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addToken(String token, List<String> tokens) {
+        tokens.add(token);
+        if (token.indexOf('-') >= 0 || token.indexOf('.') >= 0 || token.indexOf('_') >= 0) {
+            for (String part : token.split("[-._]")) {
+                if (!part.isEmpty()) {
+                    tokens.add(part);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.rag.rag_simple.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+Métricas de las preguntas y de las cargas, publicadas en Actuator (/actuator/metrics y
+/actuator/prometheus):
+- rag.stage: un Timer por operación (pregunta, carga) y etapa; con el histograma activado en
+  application.properties, Prometheus puede calcular p50/p95/p99 de cada etapa por separado.
+- rag.ingest.*: fragmentos indexados, embeddings calculados por el modelo y bytes leídos.
+- rag.context.characters, rag.context.tokens: caracteres de contexto y tokens estimados del prompt
+  enviados al modelo por pregunta; rag.context.duplicates: frases repetidas que no se enviaron.
+- rag.llm.tokens: tokens de prompt y de respuesta, según el uso que informa el modelo.
+- rag.deadline.misses: plazos vencidos por etapa.
+- rag.index.*: tamaño del índice de cada colección residente en memoria (gauges con la etiqueta
+  collection, registrados por CollectionRegistry).
+- rag.collection.loads, rag.collection.evictions: veces que una colección se cargó desde disco y
+  que se desalojó de memoria para respetar el presupuesto.
+
+Cada etapa también emite un StageEvent de JFR, para ver en una grabación qué etapa ocupa cada hilo.
+*/
+@Component
+public class RagMetrics {
+
+    public static final String PREGUNTA = "pregunta";
+    public static final String CARGA = "carga";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> deadlineMisses = new ConcurrentHashMap<>();
+    private final Counter chunksIndexed;
+    private final Counter embeddingsComputed;
+    private final Counter bytesIngested;
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+    private final DistributionSummary contextCharacters;
+    private final DistributionSummary contextTokens;
+    private final Counter duplicateSentences;
+
+    public RagMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.chunksIndexed = Counter.builder("rag.ingest.chunks")
+                .description("Fragmentos indexados por las cargas confirmadas")
+                .register(registry);
+        this.embeddingsComputed = Counter.builder("rag.ingest.embeddings")
+                .description("Embeddings calculados por el modelo durante las cargas (sin contar la caché)")
+                .register(registry);
+        this.bytesIngested = Counter.builder("rag.ingest.bytes")
+                .description("Bytes leídos de los documentos cargados")
+                .baseUnit("bytes")
+                .register(registry);
+        this.promptTokens = Counter.builder("rag.llm.tokens")
+                .description("Tokens informados por el modelo de chat")
+                .tag("type", "prompt")
+                .register(registry);
+        this.completionTokens = Counter.builder("rag.llm.tokens")
+                .description("Tokens informados por el modelo de chat")
+                .tag("type", "completion")
+                .register(registry);
+        this.contextCharacters = DistributionSummary.builder("rag.context.characters")
+                .description("Caracteres de contexto enviados al modelo por pregunta")
+                .baseUnit("characters")
+                .register(registry);
+        this.contextTokens = DistributionSummary.builder("rag.context.tokens")
+                .description("Tokens estimados del prompt enviado al modelo por pregunta")
+                .baseUnit("tokens")
+                .register(registry);
+        this.duplicateSentences = Counter.builder("rag.context.duplicates")
+                .description("Frases casi repetidas descartadas al armar el contexto")
+                .register(registry);
+    }
+
+    // mide una etapa hasta close(); pensado para try-with-resources
+    public Stage start(String operation, String stage) {
+        Timer timer = timers.computeIfAbsent(operation + '.' + stage, key -> Timer.builder("rag.stage")
+                .description("Duración de cada etapa de las preguntas y de las cargas")
+                .tags("operation", operation, "stage", stage)
+                .register(registry));
+        return new Stage(timer, operation, stage);
+    }
+
+    public void documentIngested(int chunks, int computedEmbeddings, long bytes) {
+        chunksIndexed.increment(chunks);
+        embeddingsComputed.increment(computedEmbeddings);
+        bytesIngested.increment(bytes);
+    }
+
+    public void contextSent(int characters, int promptTokens, int droppedSentences) {
+        contextCharacters.record(characters);
+        contextTokens.record(promptTokens);
+        duplicateSentences.increment(droppedSentences);
+    }
+
+    // los modelos que no informan el uso devuelven null
+    public void tokensUsed(Integer prompt, Integer completion) {
+        if (prompt != null) {
+            promptTokens.increment(prompt);
+        }
+        if (completion != null) {
+            completionTokens.increment(completion);
+        }
+    }
+
+    public void deadlineMissed(String stage) {
+        deadlineMissCounter(stage).increment();
+    }
+
+    public long deadlineMisses(String stage) {
+        return (long) deadlineMissCounter(stage).count();
+    }
+
+    // tags: pares nombre, valor
+    public void gauge(String name, String description, Supplier<Number> value, String... tags) {
+        Gauge.builder(name, value)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    public void collectionLoaded(String collection) {
+        Counter.builder("rag.collection.loads")
+                .description("Colecciones cargadas desde disco a memoria")
+                .tag("collection", collection)
+                .register(registry)
+                .increment();
+    }
+
+    public void collectionEvicted(String collection) {
+        Counter.builder("rag.collection.evictions")
+                .description("Colecciones desalojadas de memoria por el presupuesto de memoria")
+                .tag("collection", collection)
+                .register(registry)
+                .increment();
+    }
+
+    // quita los medidores de una colección eliminada
+    public void collectionRemoved(String collection) {
+        for (Meter meter : registry.getMeters()) {
+            if (collection.equals(meter.getId().getTag("collection"))) {
+                registry.remove(meter);
+            }
+        }
+    }
+
+    private Counter deadlineMissCounter(String stage) {
+        return deadlineMisses.computeIfAbsent(stage, key -> Counter.builder("rag.deadline.misses")
+                .description("Plazos vencidos por etapa")
+                .tag("stage", stage)
+                .register(registry));
+    }
+
+    // close() es idempotente: en streaming la etapa puede cerrarse al completar, al cancelar o por error
+    public static class Stage implements AutoCloseable {
+        private final Timer timer;
+        private final StageEvent event = new StageEvent();
+        private final long startNanos = System.nanoTime();
+        private boolean closed;
+
+        private Stage(Timer timer, String operation, String stage) {
+            this.timer = timer;
+            event.operation = operation;
+            event.stage = stage;
+            event.begin();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.rag.rag_simple.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+Evento de Java Flight Recorder con la duración de una etapa. Sin una grabación activa, begin/commit no
+hacen nada; con una grabación (por ejemplo -XX:StartFlightRecording o jcmd <pid> JFR.start) las etapas
+aparecen en la línea de tiempo de cada hilo junto a las muestras de CPU, el GC y los bloqueos.
+*/
+@Name("com.example.rag.Stage")
+@Label("Etapa RAG")
+@Category("RAG")
+@Description("Duración de una etapa de una pregunta o de una carga de documento")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    @Label("Operación")
+    String operation;
+
+    @Label("Etapa")
+    String stage;
+}
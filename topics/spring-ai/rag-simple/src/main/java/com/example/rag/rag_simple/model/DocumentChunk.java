@@ -1,41 +1,57 @@
 package com.example.rag.rag_simple.model;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DocumentChunk {
-    private String text;
-    private List<Double> embedding;
-    private String source;
-
-    public DocumentChunk(String text, List<Double> embedding, String source) {
+    private final int id;
+    private final long contentKey;
+    private final String text;
+    private final CopyOnWriteArrayList<String> sources = new CopyOnWriteArrayList<>();
+    private volatile boolean deleted;
+
+    // el vector del fragmento vive en el segmento del índice que contiene el id
+    public DocumentChunk(int id, long contentKey, String text, String source) {
+        this.id = id;
+        this.contentKey = contentKey;
         this.text = text;
-        this.embedding = embedding;
-        this.source = source;
+        this.sources.add(source);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // hash del contenido normalizado (ver EmbeddingCache.key), identifica fragmentos idénticos
+    public long getContentKey() {
+        return contentKey;
     }
 
     public String getText() {
         return text;
     }
 
-    public List<Double> getEmbedding() {
-        return embedding;
+    // un fragmento idéntico en varios documentos se guarda una sola vez y se referencia desde cada origen
+    public List<String> getSources() {
+        return sources;
     }
 
-    public String getSource() {
-        return source;
+    public void addSource(String source) {
+        sources.addIfAbsent(source);
     }
 
-    public double cosineSimilarity(List<Double> otherEmbedding) {
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
+    // devuelve true si el fragmento se quedó sin ningún documento que lo referencie
+    public boolean removeSource(String source) {
+        sources.remove(source);
+        return sources.isEmpty();
+    }
 
-        for (int i = 0; i < embedding.size(); i++) {
-            dotProduct += embedding.get(i) * otherEmbedding.get(i);
-            normA += embedding.get(i) * embedding.get(i);
-            normB += otherEmbedding.get(i) * otherEmbedding.get(i);
-        }
+    // lápida: el fragmento sigue en su segmento hasta la compactación, pero las búsquedas lo ignoran
+    public boolean isDeleted() {
+        return deleted;
+    }
 
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    public void markDeleted() {
+        deleted = true;
     }
 }
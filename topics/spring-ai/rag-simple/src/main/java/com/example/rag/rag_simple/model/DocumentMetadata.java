@@ -0,0 +1,29 @@
+package com.example.rag.rag_simple.model;
+
+import java.time.Instant;
+import java.util.Set;
+
+// atributos de un documento que heredan todos sus fragmentos: etiquetas del usuario y momento de la carga
+public class DocumentMetadata {
+    private final String source;
+    private final Set<String> tags;
+    private final Instant uploadedAt;
+
+    public DocumentMetadata(String source, Set<String> tags, Instant uploadedAt) {
+        this.source = source;
+        this.tags = Set.copyOf(tags);
+        this.uploadedAt = uploadedAt;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    public Instant getUploadedAt() {
+        return uploadedAt;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.rag.rag_simple.model;
+
+import java.time.Instant;
+import java.util.Set;
+
+/*
+Restricción de una pregunta a parte del corpus. Dentro de un atributo los valores se combinan con OR
+(cualquiera de las fuentes; cualquiera de las etiquetas, o todas si allTags) y los atributos entre sí
+con AND. Un filtro vacío no restringe nada.
+*/
+public class MetadataFilter {
+
+    private static final MetadataFilter NONE = new MetadataFilter(Set.of(), Set.of(), false, null);
+
+    private final Set<String> sources;
+    private final Set<String> tags;
+    private final boolean allTags;
+    private final Instant uploadedSince;
+
+    public MetadataFilter(Set<String> sources, Set<String> tags, boolean allTags, Instant uploadedSince) {
+        this.sources = Set.copyOf(sources);
+        this.tags = Set.copyOf(tags);
+        this.allTags = allTags;
+        this.uploadedSince = uploadedSince;
+    }
+
+    public static MetadataFilter none() {
+        return NONE;
+    }
+
+    public Set<String> getSources() {
+        return sources;
+    }
+
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    public boolean isAllTags() {
+        return allTags;
+    }
+
+    // null si no se filtra por fecha de carga
+    public Instant getUploadedSince() {
+        return uploadedSince;
+    }
+
+    public boolean isEmpty() {
+        return sources.isEmpty() && tags.isEmpty() && uploadedSince == null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.rag.rag_simple.model;
+
+public class ScoredChunk {
+    private final DocumentChunk chunk;
+    private final float score;
+
+    public ScoredChunk(DocumentChunk chunk, float score) {
+        this.chunk = chunk;
+        this.score = score;
+    }
+
+    public DocumentChunk getChunk() {
+        return chunk;
+    }
+
+    public float getScore() {
+        return score;
+    }
+}
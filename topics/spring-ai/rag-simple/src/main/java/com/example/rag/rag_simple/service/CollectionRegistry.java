@@ -0,0 +1,265 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.cache.EmbeddingCache;
+import com.example.rag.rag_simple.cache.SemanticAnswerCache;
+import com.example.rag.rag_simple.index.VectorIndexFactory;
+import com.example.rag.rag_simple.metrics.RagMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*
+Colecciones de documentos con nombre (ver RagCollection). La colección por defecto (rag.collections.default)
+usa el directorio rag.store.path, como el índice único anterior a las colecciones, así sus datos se
+conservan; las demás viven en rag.store.path/colecciones/<nombre>. Solo las cargas crean colecciones,
+recién cuando empiezan a procesarse, y si la primera carga de una colección falla la colección se quita:
+una pregunta sobre una colección que no existe o una carga rechazada no dejan nada en disco.
+
+Memoria:
+- cuota por colección (max-memory-bytes): una carga que lleva el índice de su colección por encima de
+  la cuota se revierte, así el corpus enorme de un equipo no crece a costa del heap de los demás;
+- presupuesto total (memory-budget): al cargar una colección en memoria o terminar una carga, si las
+  colecciones residentes superan el presupuesto se desalojan a disco las usadas hace más tiempo (sin
+  contar las que tienen operaciones en curso). Una colección desalojada vuelve a memoria en su próximo
+  uso, reconstruyendo el índice desde su almacén sin llamar al modelo de embeddings.
+Las colecciones se cargan al primer uso, salvo la por defecto, que se carga al arrancar.
+
+La caché de embeddings sigue siendo compartida: su clave es el contenido del texto, así un párrafo
+repetido en dos colecciones se calcula una sola vez sin mezclar los índices.
+*/
+@Component
+public class CollectionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(CollectionRegistry.class);
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z0-9][a-z0-9_-]{0,63}");
+    private static final String COLLECTIONS_DIRECTORY = "colecciones";
+
+    private final VectorIndexFactory indexFactory;
+    private final EmbeddingCache embeddingCache;
+    private final RagMetrics metrics;
+    private final Path storePath;
+    private final String defaultCollection;
+    private final int maxCollections;
+    private final long memoryQuota;
+    private final long memoryBudget;
+    private final boolean answerCacheEnabled;
+    private final float answerCacheThreshold;
+    private final int answerCacheEntries;
+    private final Map<String, RagCollection> collections = new ConcurrentHashMap<>();
+
+    public CollectionRegistry(VectorIndexFactory indexFactory, EmbeddingCache embeddingCache, RagMetrics metrics,
+                              @Value("${rag.store.path:rag-data}") String storePath,
+                              @Value("${rag.collections.default:general}") String defaultCollection,
+                              @Value("${rag.collections.max-collections:64}") int maxCollections,
+                              @Value("${rag.collections.max-memory-bytes:268435456}") long memoryQuota,
+                              @Value("${rag.collections.memory-budget:1073741824}") long memoryBudget,
+                              @Value("${rag.answer-cache.enabled:true}") boolean answerCacheEnabled,
+                              @Value("${rag.answer-cache.similarity-threshold:0.95}") float answerCacheThreshold,
+                              @Value("${rag.answer-cache.max-entries:1000}") int answerCacheEntries) {
+        this.indexFactory = indexFactory;
+        this.embeddingCache = embeddingCache;
+        this.metrics = metrics;
+        this.storePath = Paths.get(storePath);
+        this.defaultCollection = defaultCollection;
+        this.maxCollections = maxCollections;
+        this.memoryQuota = memoryQuota;
+        this.memoryBudget = memoryBudget;
+        this.answerCacheEnabled = answerCacheEnabled;
+        this.answerCacheThreshold = answerCacheThreshold;
+        this.answerCacheEntries = answerCacheEntries;
+    }
+
+    // registra las colecciones que ya están en disco y carga la por defecto
+    @PostConstruct
+    public void abrir() throws IOException {
+        register(defaultCollection);
+        Path directory = storePath.resolve(COLLECTIONS_DIRECTORY);
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> paths = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    String name = path.getFileName().toString();
+                    if (Files.isDirectory(path) && VALID_NAME.matcher(name).matches()) {
+                        register(name);
+                    }
+                }
+            }
+        }
+        acquire(collections.get(defaultCollection)).close();
+    }
+
+    @PreDestroy
+    public void cerrar() throws IOException {
+        for (RagCollection collection : collections.values()) {
+            collection.close();
+        }
+    }
+
+    public String getDefaultCollection() {
+        return defaultCollection;
+    }
+
+    public List<String> names() {
+        return collections.keySet().stream().sorted().toList();
+    }
+
+    // null o vacío = colección por defecto; lanza IllegalArgumentException si el nombre no es válido
+    public String normalize(String name) {
+        if (name == null || name.isBlank()) {
+            return defaultCollection;
+        }
+        String normalized = name.strip().toLowerCase(Locale.ROOT);
+        if (!VALID_NAME.matcher(normalized).matches()) {
+            throw new IllegalArgumentException("Nombre de colección no válido: '" + name
+                    + "' (letras minúsculas, números, '-' y '_', hasta 64 caracteres)");
+        }
+        return normalized;
+    }
+
+    public boolean exists(String name) {
+        return collections.containsKey(normalize(name));
+    }
+
+    // comprobación previa a encolar una carga: lanza IllegalStateException si la colección no existe y ya
+    // no se pueden crear más (la colección se crea recién al procesar la carga)
+    public void checkCanCreate(String name) {
+        if (!collections.containsKey(normalize(name)) && collections.size() >= maxCollections) {
+            throw new IllegalStateException("Se alcanzó el máximo de " + maxCollections + " colecciones");
+        }
+    }
+
+    // null si la colección no existe; si estaba desalojada la vuelve a cargar en memoria
+    public RagCollection.Lease acquire(String name) {
+        RagCollection collection = collections.get(normalize(name));
+        return collection == null ? null : acquire(collection);
+    }
+
+    // crea la colección si no existe; lanza IllegalStateException al superar max-collections
+    public RagCollection.Lease acquireOrCreate(String name) {
+        String normalized = normalize(name);
+        while (true) {
+            RagCollection.Lease lease = acquire(register(normalized));
+            // si otra carga la eliminó mientras tanto, se vuelve a crear
+            if (lease != null) {
+                return lease;
+            }
+        }
+    }
+
+    /*
+    Quita una colección que quedó vacía porque su primera carga falló, con sus archivos y sus métricas.
+    No toca la colección por defecto ni una que alguien esté usando (otra carga en curso la llenará o
+    la quitará al fallar). Devuelve true si la eliminó.
+    */
+    public boolean removeIfEmpty(RagCollection collection) {
+        String name = collection.getName();
+        if (name.equals(defaultCollection)) {
+            return false;
+        }
+        synchronized (collections) {
+            if (collections.get(name) != collection || !collection.tryRemove()) {
+                return false;
+            }
+            collections.remove(name);
+        }
+        metrics.collectionRemoved(name);
+        log.info("Colección '{}' eliminada: su primera carga no se completó", name);
+        return true;
+    }
+
+    /*
+    Desaloja las colecciones usadas hace más tiempo hasta que las residentes entren en memory-budget.
+    No toca keep (la colección que se está usando) ni las que tienen un Lease abierto; si aun así no
+    alcanza, solo se avisa: la cuota por colección ya acota cuánto puede crecer cada una.
+    */
+    public synchronized void enforceBudget(RagCollection keep) {
+        if (memoryBudget <= 0) {
+            return;
+        }
+        long resident = 0;
+        for (RagCollection collection : collections.values()) {
+            resident += collection.memoryBytes();
+        }
+        if (resident <= memoryBudget) {
+            return;
+        }
+
+        List<RagCollection> candidates = collections.values().stream()
+                .filter(collection -> collection != keep && collection.isLoaded())
+                .sorted(Comparator.comparingLong(RagCollection::lastUsedNanos))
+                .toList();
+        for (RagCollection collection : candidates) {
+            if (resident <= memoryBudget) {
+                break;
+            }
+            long freed = collection.tryUnload();
+            if (freed > 0) {
+                resident -= freed;
+                log.info("Colección '{}' desalojada de memoria ({} MB liberados)", collection.getName(), freed >> 20);
+            }
+        }
+        if (resident > memoryBudget) {
+            log.warn("Las colecciones en uso ocupan {} MB, por encima del presupuesto de {} MB",
+                    resident >> 20, memoryBudget >> 20);
+        }
+    }
+
+    // null si la colección fue eliminada
+    private RagCollection.Lease acquire(RagCollection collection) {
+        RagCollection.Lease lease = collection.acquire();
+        if (lease != null && lease.loadedNow()) {
+            try {
+                enforceBudget(collection);
+            } catch (RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+        }
+        return lease;
+    }
+
+    private RagCollection register(String name) {
+        RagCollection existing = collections.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (collections) {
+            existing = collections.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            if (collections.size() >= maxCollections) {
+                throw new IllegalStateException("Se alcanzó el máximo de " + maxCollections + " colecciones");
+            }
+            boolean isDefault = name.equals(defaultCollection);
+            RagCollection collection = new RagCollection(name,
+                    isDefault ? storePath : storePath.resolve(COLLECTIONS_DIRECTORY).resolve(name),
+                    isDefault ? indexFactory : indexFactory.forCollection(name),
+                    new SemanticAnswerCache(answerCacheEnabled, answerCacheThreshold, answerCacheEntries),
+                    embeddingCache::key, metrics, memoryQuota);
+            collections.put(name, collection);
+
+            metrics.gauge("rag.index.chunks", "Fragmentos vivos en el índice", collection::chunkCount,
+                    "collection", name);
+            metrics.gauge("rag.index.documents", "Documentos cargados", collection::documentCount,
+                    "collection", name);
+            metrics.gauge("rag.index.memory", "Memoria estimada del índice en bytes", collection::memoryBytes,
+                    "collection", name);
+            return collection;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.index.VectorMath;
+import com.example.rag.rag_simple.lexical.Tokenizer;
+import com.example.rag.rag_simple.model.DocumentChunk;
+import com.example.rag.rag_simple.model.ScoredChunk;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+Arma el contexto del prompt a partir de los candidatos de la recuperación, dentro de un presupuesto de
+tokens (la longitud del prompt domina el tiempo de prefill de Ollama):
+1. Orden por relevancia marginal máxima (MMR): en cada paso se elige el candidato que maximiza
+   lambda * relevancia - (1 - lambda) * similitud con los ya elegidos, usando los vectores que el
+   índice ya tiene. La relevancia es la puntuación de la recuperación (coseno, BM25 o RRF) escalada a
+   [0, 1], así vale para todos los modos.
+2. Frases casi repetidas: cada pasaje se parte en frases y se descarta la que comparte al menos
+   duplicateThreshold de sus términos con una frase ya incluida (los fragmentos solapados o las
+   plantillas repetidas entre documentos).
+3. Empaquetado: los pasajes entran enteros mientras quepan en maxTokens; uno que no cabe se salta
+   (puede caber otro más corto), salvo el primero, que se recorta para no dejar el contexto vacío.
+
+Los tokens se estiman localmente con estimateTokens, sin llamar al modelo.
+*/
+@Component
+public class ContextPacker {
+
+    private static final String SEPARATOR = "\n\n---\n\n";
+    private static final int SEPARATOR_TOKENS = estimateTokens(SEPARATOR);
+
+    private final int maxTokens;
+    private final double lambda;
+    private final double duplicateThreshold;
+
+    public ContextPacker(@Value("${rag.context.max-tokens:600}") int maxTokens,
+                         @Value("${rag.context.mmr-lambda:0.7}") double lambda,
+                         @Value("${rag.context.duplicate-threshold:0.8}") double duplicateThreshold) {
+        this.maxTokens = maxTokens;
+        this.lambda = lambda;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    // vectors: vector normalizado de un fragmento, o null si ya no está en el índice
+    public PackedContext pack(List<ScoredChunk> candidates, Function<DocumentChunk, float[]> vectors) {
+        List<String> passages = new ArrayList<>();
+        List<ScoredChunk> selected = new ArrayList<>();
+        List<Set<String>> includedSentences = new ArrayList<>();
+        int tokens = 0;
+        int droppedSentences = 0;
+
+        for (ScoredChunk candidate : mmrOrder(candidates, vectors)) {
+            List<String> sentences = new ArrayList<>();
+            List<Set<String>> sentenceTerms = new ArrayList<>();
+            int duplicates = 0;
+            for (String sentence : sentences(candidate.getChunk().getText())) {
+                Set<String> terms = new HashSet<>(Tokenizer.tokenize(sentence));
+                if (isDuplicate(terms, includedSentences) || isDuplicate(terms, sentenceTerms)) {
+                    duplicates++;
+                    continue;
+                }
+                sentences.add(sentence);
+                sentenceTerms.add(terms);
+            }
+            String passage = String.join("", sentences).strip();
+            if (passage.isEmpty()) {
+                droppedSentences += duplicates;
+                continue;
+            }
+
+            int cost = estimateTokens(passage) + (passages.isEmpty() ? 0 : SEPARATOR_TOKENS);
+            if (tokens + cost > maxTokens) {
+                if (!passages.isEmpty()) {
+                    continue;
+                }
+                passage = prefixWithin(passage, maxTokens);
+                cost = estimateTokens(passage);
+            }
+            passages.add(passage);
+            selected.add(candidate);
+            includedSentences.addAll(sentenceTerms);
+            droppedSentences += duplicates;
+            tokens += cost;
+        }
+        return new PackedContext(String.join(SEPARATOR, passages), selected, tokens, droppedSentences);
+    }
+
+    /*
+    Estimación rápida de tokens de un tokenizador BPE (Llama 3) para texto en español: una palabra de
+    hasta cuatro caracteres es un token y las más largas uno más cada cuatro caracteres; cada signo
+    de puntuación cuenta uno y los espacios no cuentan. Tiende a sobreestimar un poco, lo que deja
+    margen en el presupuesto.
+    */
+    public static int estimateTokens(CharSequence text) {
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                wordLength++;
+                continue;
+            }
+            if (wordLength > 0) {
+                tokens += (wordLength + 3) / 4;
+                wordLength = 0;
+            }
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    private List<ScoredChunk> mmrOrder(List<ScoredChunk> candidates, Function<DocumentChunk, float[]> vectors) {
+        int n = candidates.size();
+        float[][] candidateVectors = new float[n][];
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            candidateVectors[i] = vectors.apply(candidates.get(i).getChunk());
+            min = Math.min(min, candidates.get(i).getScore());
+            max = Math.max(max, candidates.get(i).getScore());
+        }
+
+        double[] relevance = new double[n];
+        for (int i = 0; i < n; i++) {
+            relevance[i] = max > min ? (candidates.get(i).getScore() - min) / (max - min) : 1.0;
+        }
+
+        // redundancy[i]: mayor similitud de i con un candidato ya elegido
+        double[] redundancy = new double[n];
+        boolean[] chosen = new boolean[n];
+        List<ScoredChunk> ordered = new ArrayList<>(n);
+        for (int step = 0; step < n; step++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double score = lambda * relevance[i] - (1 - lambda) * redundancy[i];
+                if (!chosen[i] && score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            chosen[best] = true;
+            ordered.add(candidates.get(best));
+
+            float[] bestVector = candidateVectors[best];
+            if (bestVector == null) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if (!chosen[i] && candidateVectors[i] != null) {
+                    double similarity = VectorMath.dot(candidateVectors[i], 0, bestVector, bestVector.length);
+                    redundancy[i] = Math.max(redundancy[i], similarity);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    // la frase aporta poco si casi todos sus términos ya están en una frase incluida
+    private boolean isDuplicate(Set<String> terms, List<Set<String>> included) {
+        if (terms.isEmpty()) {
+            return false;
+        }
+        for (Set<String> other : included) {
+            int shared = 0;
+            for (String term : terms) {
+                if (other.contains(term)) {
+                    shared++;
+                }
+            }
+            if (shared >= duplicateThreshold * terms.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // frases con su espacio final, para que unirlas conserve los saltos de línea del fragmento
+    private static List<String> sentences(String text) {
+        BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.forLanguageTag("es"));
+        iterator.setText(text);
+        List<String> sentences = new ArrayList<>();
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            sentences.add(text.substring(start, end));
+        }
+        return sentences;
+    }
+
+    // el prefijo más largo de text que entra en maxTokens
+    private static String prefixWithin(String text, int maxTokens) {
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (estimateTokens(text.substring(0, middle)) <= maxTokens) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return text.substring(0, low).strip();
+    }
+
+    public static class PackedContext {
+        private final String text;
+        private final List<ScoredChunk> chunks;
+        private final int tokens;
+        private final int droppedSentences;
+
+        private PackedContext(String text, List<ScoredChunk> chunks, int tokens, int droppedSentences) {
+            this.text = text;
+            this.chunks = chunks;
+            this.tokens = tokens;
+            this.droppedSentences = droppedSentences;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        // fragmentos incluidos (entero o, el primero, recortado), en el orden del contexto
+        public List<ScoredChunk> getChunks() {
+            return chunks;
+        }
+
+        public int getTokens() {
+            return tokens;
+        }
+
+        public int getDroppedSentences() {
+            return droppedSentences;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.rag.rag_simple.service;
+
+import java.time.Duration;
+
+// plazo absoluto de una pregunta; cada etapa recibe el menor entre su presupuesto propio y lo que queda
+public class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public Duration budget(Duration stageBudget) {
+        Duration remaining = remaining();
+        return stageBudget.compareTo(remaining) < 0 ? stageBudget : remaining;
+    }
+}
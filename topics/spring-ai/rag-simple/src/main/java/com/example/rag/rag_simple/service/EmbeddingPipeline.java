@@ -0,0 +1,204 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.cache.EmbeddingCache;
+import com.example.rag.rag_simple.metrics.RagMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+
+/*
+Genera embeddings por lotes: agrupa los fragmentos en lotes de batchSize textos por llamada al
+EmbeddingModel y mantiene hasta maxInFlight lotes en vuelo sobre hilos virtuales. Los resultados
+se entregan al consumidor en el mismo orden en que se enviaron los fragmentos y siempre en el hilo
+que llama a submit/finish, así el índice no necesita sincronización adicional.
+Antes de enviar un lote se consultan los vectores ya conocidos de la sesión (por ejemplo, los que el
+índice tiene para una versión anterior del documento) y la EmbeddingCache: solo los textos que no están
+en ninguno de los dos (y sin repetir dentro del lote) llegan al modelo.
+*/
+@Component
+public class EmbeddingPipeline {
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingCache embeddingCache;
+    private final RagMetrics metrics;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public EmbeddingPipeline(EmbeddingModel embeddingModel, EmbeddingCache embeddingCache, RagMetrics metrics,
+                             @Value("${rag.embedding.batch-size:32}") int batchSize,
+                             @Value("${rag.embedding.max-in-flight:4}") int maxInFlight) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Session open(BiConsumer<String, float[]> consumer) {
+        return new Session(consumer, key -> null);
+    }
+
+    // knownEmbeddings recibe la clave de contenido (EmbeddingCache.key) y devuelve el vector si ya existe
+    public Session open(BiConsumer<String, float[]> consumer, LongFunction<float[]> knownEmbeddings) {
+        return new Session(consumer, knownEmbeddings);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public class Session implements AutoCloseable {
+
+        private final BiConsumer<String, float[]> consumer;
+        private final LongFunction<float[]> knownEmbeddings;
+        private final Deque<Batch> inFlight = new ArrayDeque<>();
+        private List<String> pending = new ArrayList<>(batchSize);
+        private int delivered;
+        private int computed;
+        private boolean finished;
+
+        private Session(BiConsumer<String, float[]> consumer, LongFunction<float[]> knownEmbeddings) {
+            this.consumer = consumer;
+            this.knownEmbeddings = knownEmbeddings;
+        }
+
+        public void submit(String chunk) {
+            pending.add(chunk);
+            if (pending.size() >= batchSize) {
+                dispatch();
+            }
+        }
+
+        // envía el último lote parcial, espera todos los lotes y devuelve los fragmentos entregados
+        public int finish() {
+            if (!pending.isEmpty()) {
+                dispatch();
+            }
+            while (!inFlight.isEmpty()) {
+                deliverNext();
+            }
+            finished = true;
+            return delivered;
+        }
+
+        // textos que llegaron al modelo (el resto salió de los vectores conocidos o de la caché)
+        public int computed() {
+            return computed;
+        }
+
+        @Override
+        public void close() {
+            if (!finished) {
+                inFlight.forEach(batch -> batch.future.cancel(true));
+                inFlight.clear();
+            }
+        }
+
+        private void dispatch() {
+            // contrapresión: si ya hay maxInFlight lotes en vuelo, espera al más antiguo
+            while (inFlight.size() >= maxInFlight) {
+                deliverNext();
+            }
+
+            List<String> texts = pending;
+            pending = new ArrayList<>(batchSize);
+
+            float[][] embeddings = new float[texts.size()][];
+            int[] missSlots = new int[texts.size()];
+            List<String> misses = new ArrayList<>();
+            List<Long> missKeys = new ArrayList<>();
+            Map<Long, Integer> slotsByKey = new HashMap<>();
+
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                long key = embeddingCache.key(text);
+                embeddings[i] = knownEmbeddings.apply(key);
+                if (embeddings[i] == null) {
+                    embeddings[i] = embeddingCache.get(key);
+                }
+                if (embeddings[i] != null) {
+                    missSlots[i] = -1;
+                    continue;
+                }
+                Integer slot = slotsByKey.get(key);
+                if (slot == null) {
+                    slot = misses.size();
+                    slotsByKey.put(key, slot);
+                    misses.add(text);
+                    missKeys.add(key);
+                }
+                missSlots[i] = slot;
+            }
+
+            computed += misses.size();
+            Future<List<float[]>> future = misses.isEmpty()
+                    ? CompletableFuture.completedFuture(List.of())
+                    : executor.submit(() -> embedAndCache(misses, missKeys));
+            inFlight.addLast(new Batch(texts, embeddings, missSlots, future));
+        }
+
+        private void deliverNext() {
+            Batch batch = inFlight.removeFirst();
+            List<float[]> computed = await(batch.future);
+            for (int i = 0; i < batch.texts.size(); i++) {
+                float[] embedding = batch.missSlots[i] < 0 ? batch.embeddings[i] : computed.get(batch.missSlots[i]);
+                consumer.accept(batch.texts.get(i), embedding);
+                delivered++;
+            }
+        }
+
+        private List<float[]> await(Future<List<float[]>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Generación de embeddings interrumpida", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error al generar embeddings: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    // la etapa "embedding" de una carga mide cada llamada al modelo; con varios lotes en vuelo se solapan
+    private List<float[]> embedAndCache(List<String> texts, List<Long> keys) {
+        List<float[]> embeddings;
+        try (RagMetrics.Stage stage = metrics.start(RagMetrics.CARGA, "embedding")) {
+            embeddings = embeddingModel.embed(texts);
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            embeddingCache.put(keys.get(i), embeddings.get(i));
+        }
+        return embeddings;
+    }
+
+    private static class Batch {
+        private final List<String> texts;
+        private final float[][] embeddings;
+        private final int[] missSlots;
+        private final Future<List<float[]>> future;
+
+        private Batch(List<String> texts, float[][] embeddings, int[] missSlots, Future<List<float[]>> future) {
+            this.texts = texts;
+            this.embeddings = embeddings;
+            this.missSlots = missSlots;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.rag.rag_simple.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Estado de una carga asíncrona. Mientras el archivo se está troceando el total de fragmentos aún no se
+conoce, así que se estima proyectando los fragmentos enviados sobre la fracción de bytes ya leída.
+La cancelación es cooperativa: RagService llama a checkCancelled() entre fragmentos y la transacción
+del SegmentStore se revierte. No se interrumpe el hilo porque una interrupción durante la escritura
+del WAL cerraría el FileChannel compartido.
+*/
+public class IngestionJob {
+
+    public enum Estado { EN_COLA, EN_PROCESO, COMPLETADO, CANCELADO, FALLIDO }
+
+    private final String id;
+    private final String collection;
+    private final String source;
+    private final Set<String> tags;
+    private final long totalBytes;
+    private final AtomicInteger submittedChunks = new AtomicInteger();
+    private final AtomicInteger embeddedChunks = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile Estado estado = Estado.EN_COLA;
+    private volatile boolean chunkingDone;
+    private volatile boolean cancelRequested;
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+    private volatile long finishedAtMillis;
+    private volatile String mensaje;
+
+    IngestionJob(String id, String collection, String source, Set<String> tags, long totalBytes) {
+        this.id = id;
+        this.collection = collection;
+        this.source = source;
+        this.tags = Set.copyOf(tags);
+        this.totalBytes = totalBytes;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    // etiquetas que el documento tendrá al confirmarse la carga
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public boolean isFinished() {
+        return estado == Estado.COMPLETADO || estado == Estado.CANCELADO || estado == Estado.FALLIDO;
+    }
+
+    long getFinishedAtMillis() {
+        return finishedAtMillis;
+    }
+
+    long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    // cuenta los bytes consumidos por el chunker para poder estimar el total de fragmentos
+    InputStream track(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    bytesRead.addAndGet(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    void chunkSubmitted() {
+        submittedChunks.incrementAndGet();
+    }
+
+    void chunkEmbedded() {
+        embeddedChunks.incrementAndGet();
+    }
+
+    void chunkingDone() {
+        chunkingDone = true;
+    }
+
+    void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("Carga cancelada: " + source);
+        }
+    }
+
+    // devuelve false si el trabajo ya había terminado
+    synchronized boolean requestCancel() {
+        if (isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        if (estado == Estado.EN_COLA) {
+            // al salir de la cola, start() verá el estado final y no procesará nada
+            finish(Estado.CANCELADO, "Carga cancelada antes de empezar");
+        }
+        return true;
+    }
+
+    synchronized boolean start() {
+        if (estado != Estado.EN_COLA) {
+            return false;
+        }
+        startedNanos = System.nanoTime();
+        estado = Estado.EN_PROCESO;
+        return true;
+    }
+
+    synchronized void finish(Estado estadoFinal, String mensaje) {
+        this.mensaje = mensaje;
+        this.finishedNanos = System.nanoTime();
+        this.finishedAtMillis = System.currentTimeMillis();
+        this.estado = estadoFinal;
+    }
+
+    public Map<String, Object> progress() {
+        int embedded = embeddedChunks.get();
+        int submitted = submittedChunks.get();
+        long read = bytesRead.get();
+
+        long total;
+        if (chunkingDone || estado == Estado.COMPLETADO) {
+            total = submitted;
+        } else if (read > 0 && totalBytes > 0) {
+            total = Math.max(submitted, Math.round((double) submitted * totalBytes / read));
+        } else {
+            total = -1;
+        }
+
+        long started = startedNanos;
+        long end = isFinished() && finishedNanos != 0 ? finishedNanos : System.nanoTime();
+        double seconds = started == 0 ? 0 : (end - started) / 1e9;
+        double throughput = seconds > 0 ? embedded / seconds : 0;
+        long eta = estado == Estado.EN_PROCESO && throughput > 0 && total >= embedded
+                ? Math.round((total - embedded) / throughput)
+                : -1;
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("id", id);
+        progress.put("coleccion", collection);
+        progress.put("fuente", source);
+        progress.put("estado", estado);
+        progress.put("fragmentosProcesados", embedded);
+        progress.put("fragmentosTotales", total);
+        progress.put("totalEstimado", !chunkingDone && estado != Estado.COMPLETADO);
+        progress.put("fragmentosPorSegundo", Math.round(throughput * 10) / 10.0);
+        progress.put("etaSegundos", eta);
+        if (mensaje != null) {
+            progress.put("mensaje", mensaje);
+        }
+        return progress;
+    }
+}
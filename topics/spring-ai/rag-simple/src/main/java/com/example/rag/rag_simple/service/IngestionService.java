@@ -0,0 +1,135 @@
+package com.example.rag.rag_simple.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Ejecuta las cargas de documentos fuera del hilo del servlet. El archivo subido se copia a un temporal
+(el multipart se borra al terminar la petición) y se procesa en un pool acotado: como máximo
+maxConcurrentJobs cargas a la vez y queueCapacity esperando, así las cargas grandes no acaparan
+Ollama ni la CPU que necesitan las preguntas. Los trabajos terminados se conservan un tiempo para
+que se pueda consultar su resultado.
+*/
+@Service
+public class IngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionService.class);
+    private static final long RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final RagService ragService;
+    private final CollectionRegistry collections;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    public IngestionService(RagService ragService, CollectionRegistry collections,
+                            @Value("${rag.ingestion.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                            @Value("${rag.ingestion.queue-capacity:16}") int queueCapacity) {
+        this.ragService = ragService;
+        this.collections = collections;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "rag-ingestion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // lanza RejectedExecutionException si ya hay demasiadas cargas en cola, IllegalArgumentException si el
+    // nombre de la colección no es válido e IllegalStateException si ya no se pueden crear más colecciones
+    public IngestionJob iniciarCarga(String coleccion, MultipartFile file, Set<String> etiquetas) throws IOException {
+        purgarTerminados();
+        // el nombre y el límite de colecciones se validan antes de encolar, así se rechazan en la misma
+        // petición; la colección se crea recién cuando la carga empieza (ver RagService.cargarDocumento)
+        String nombre = collections.normalize(coleccion);
+        collections.checkCanCreate(nombre);
+
+        Path tempFile = Files.createTempFile("rag-upload-", ".txt");
+        try {
+            file.transferTo(tempFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        String source = file.getOriginalFilename();
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), nombre, source, etiquetas,
+                file.getSize());
+        try {
+            executor.execute(() -> procesar(job, tempFile));
+        } catch (RejectedExecutionException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        jobs.put(job.getId(), job);
+        log.info("Carga {} en cola: {} (colección '{}')", job.getId(), source, nombre);
+        return job;
+    }
+
+    public IngestionJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    public boolean cancelar(String id) {
+        IngestionJob job = jobs.get(id);
+        return job != null && job.requestCancel();
+    }
+
+    private void procesar(IngestionJob job, Path tempFile) {
+        try {
+            if (!job.start()) {
+                return;
+            }
+            try (InputStream in = Files.newInputStream(tempFile)) {
+                String resultado = ragService.cargarDocumento(job.getCollection(), job.getSource(), in, job);
+                job.finish(IngestionJob.Estado.COMPLETADO, resultado);
+            } catch (CancellationException e) {
+                log.info("Carga {} cancelada: {}", job.getId(), job.getSource());
+                job.finish(IngestionJob.Estado.CANCELADO, "Carga cancelada");
+            } catch (IOException | RuntimeException e) {
+                log.error("Error en la carga {}: {}", job.getId(), e.getMessage(), e);
+                job.finish(IngestionJob.Estado.FALLIDO, "Error al procesar el archivo: " + e.getMessage());
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                log.warn("No se pudo borrar el temporal {}", tempFile, e);
+            }
+        }
+    }
+
+    private void purgarTerminados() {
+        long limite = System.currentTimeMillis() - RETENTION_MILLIS;
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAtMillis() < limite);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // las cargas en curso revierten su transacción antes de que RagService cierre el almacén
+        jobs.values().forEach(IngestionJob::requestCancel);
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Quedaron cargas sin terminar al cerrar la aplicación");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.rag.rag_simple.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Divide texto en fragmentos de hasta chunkSize caracteres agrupando párrafos (separados por una o más
+líneas en blanco), leyendo el InputStream con un CharsetDecoder y buffers de tamaño fijo. Cada
+fragmento se entrega al consumidor apenas se cierra, así la memoria usada depende del tamaño del
+fragmento y no del archivo. Un párrafo sin líneas en blanco más largo que chunkSize se corta en el
+último espacio disponible.
+*/
+public class ParagraphChunker {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int chunkSize;
+
+    public ParagraphChunker(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int split(InputStream in, Charset charset, Consumer<String> consumer) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        State state = new State(consumer);
+
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            int read = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                bytes.position(bytes.position() + read);
+            }
+
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                drain(chars, state);
+            } while (result.isOverflow());
+            bytes.compact();
+        }
+
+        while (decoder.flush(chars).isOverflow()) {
+            drain(chars, state);
+        }
+        drain(chars, state);
+
+        state.finish();
+        return state.emitted;
+    }
+
+    public List<String> split(String text) {
+        List<String> chunks = new ArrayList<>();
+        State state = new State(chunks::add);
+        for (int i = 0; i < text.length(); i++) {
+            state.accept(text.charAt(i));
+        }
+        state.finish();
+        return chunks;
+    }
+
+    private static void drain(CharBuffer chars, State state) {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            state.accept(chars.get());
+        }
+        chars.clear();
+    }
+
+    private class State {
+        private final Consumer<String> consumer;
+        private final StringBuilder paragraph = new StringBuilder();
+        private final StringBuilder currentChunk = new StringBuilder();
+        private int newlines;
+        private int emitted;
+
+        private State(Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        private void accept(char c) {
+            if (c == '\r') {
+                return;
+            }
+            if (c == '\n') {
+                newlines++;
+                return;
+            }
+
+            if (newlines >= 2) {
+                closeParagraph();
+            } else if (newlines == 1) {
+                paragraph.append('\n');
+            }
+            newlines = 0;
+            paragraph.append(c);
+
+            if (paragraph.length() >= chunkSize) {
+                splitLongParagraph();
+            }
+        }
+
+        private void splitLongParagraph() {
+            int cut = paragraph.length();
+            for (int i = paragraph.length() - 1; i > 0; i--) {
+                if (Character.isWhitespace(paragraph.charAt(i))) {
+                    cut = i;
+                    break;
+                }
+            }
+
+            String head = paragraph.substring(0, cut);
+            String tail = paragraph.substring(cut).stripLeading();
+            paragraph.setLength(0);
+            paragraph.append(head);
+            closeParagraph();
+            paragraph.append(tail);
+        }
+
+        private void closeParagraph() {
+            if (currentChunk.length() + paragraph.length() > chunkSize && currentChunk.length() > 0) {
+                emit();
+            }
+            currentChunk.append(paragraph).append("\n\n");
+            paragraph.setLength(0);
+        }
+
+        private void finish() {
+            if (paragraph.length() > 0) {
+                closeParagraph();
+            }
+            if (currentChunk.length() > 0) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            String chunk = currentChunk.toString().trim();
+            currentChunk.setLength(0);
+            if (!chunk.isEmpty()) {
+                consumer.accept(chunk);
+                emitted++;
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.cache.EmbeddingCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Agrupa los embeddings de las preguntas que llegan casi a la vez. Cada pregunta que no está en la
+EmbeddingCache entra en una cola; un hilo despachador toma la primera y espera como mucho windowMillis
+(o hasta juntar maxBatchSize) a que lleguen otras, y las envía en una sola llamada al EmbeddingModel.
+Con ráfagas de decenas de preguntas por segundo, Ollama recibe pocos lotes en vez de muchas llamadas
+de un texto. La llamada corre en un hilo virtual, así el despachador ya va juntando el lote siguiente.
+Las preguntas idénticas dentro de un lote comparten el mismo resultado.
+
+Quien agota su plazo deja de esperar: si la pregunta aún estaba en cola no se envía, y si era la última
+que esperaba un lote en vuelo se interrumpe el hilo de la llamada, lo que cancela la petición HTTP.
+*/
+@Component
+public class QuestionEmbeddingBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionEmbeddingBatcher.class);
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingCache embeddingCache;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService calls = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    public QuestionEmbeddingBatcher(EmbeddingModel embeddingModel, EmbeddingCache embeddingCache,
+                                    @Value("${rag.embedding.question-batch.window-millis:2}") long windowMillis,
+                                    @Value("${rag.embedding.question-batch.max-size:32}") int maxBatchSize) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.dispatcher = new Thread(this::dispatchLoop, "rag-question-batcher");
+        this.dispatcher.setDaemon(true);
+        if (windowMillis > 0 && maxBatchSize > 1) {
+            this.dispatcher.start();
+        }
+    }
+
+    // bloquea hasta tener el embedding; con la ventana desactivada (0) llama directamente al modelo
+    public float[] embed(String text) {
+        try {
+            return embed(text, Duration.ofNanos(Long.MAX_VALUE));
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // como embed(text), pero deja de esperar (y cancela la llamada si nadie más la espera) al vencer timeout
+    public float[] embed(String text, Duration timeout) throws TimeoutException {
+        long key = embeddingCache.key(text);
+        float[] cached = embeddingCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        float[] embedding;
+        if (!dispatcher.isAlive()) {
+            Future<float[]> call = calls.submit(() -> embeddingModel.embed(text));
+            try {
+                embedding = await(call, timeout);
+            } catch (TimeoutException e) {
+                call.cancel(true);
+                throw e;
+            }
+        } else {
+            Request request = new Request(key, text);
+            queue.add(request);
+            try {
+                embedding = await(request.result, timeout);
+            } catch (TimeoutException e) {
+                request.abandon();
+                throw e;
+            }
+        }
+        embeddingCache.put(key, embedding);
+        return embedding;
+    }
+
+    // preguntas por llamada al modelo desde el arranque (1.0 = sin agrupamiento)
+    public double averageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0.0 : (double) requestCount.get() / batches;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+        calls.shutdownNow();
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.forEach(request -> request.result.completeExceptionally(
+                new IllegalStateException("La aplicación se está cerrando")));
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (true) {
+                List<Request> batch = new ArrayList<>();
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                // las preguntas cuyo plazo venció mientras esperaban en cola no se envían
+                batch.removeIf(request -> request.result.isDone());
+                if (!batch.isEmpty()) {
+                    // la llamada se envía antes de publicar el lote: quien lo vea ya encuentra call asignado
+                    Batch inFlight = new Batch(batch);
+                    inFlight.call = calls.submit(() -> embedBatch(inFlight));
+                    for (Request request : batch) {
+                        request.batch = inFlight;
+                        // quien abandonó entre removeIf y aquí no vio el lote y no se descontó
+                        if (request.result.isCancelled()) {
+                            request.release();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // cualquier error se propaga a todas las peticiones del lote, para que ninguna quede esperando
+    private void embedBatch(Batch inFlight) {
+        List<Request> batch = inFlight.requests;
+        try {
+            // una sola entrada por contenido: las preguntas repetidas del lote esperan el mismo vector
+            Map<Long, List<Request>> byKey = new LinkedHashMap<>();
+            for (Request request : batch) {
+                byKey.computeIfAbsent(request.key, key -> new ArrayList<>()).add(request);
+            }
+            List<String> texts = new ArrayList<>(byKey.size());
+            byKey.values().forEach(sameText -> texts.add(sameText.get(0).text));
+
+            requestCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            log.debug("Lote de {} preguntas ({} distintas) enviado al modelo", batch.size(), texts.size());
+
+            List<float[]> embeddings = embeddingModel.embed(texts);
+            int i = 0;
+            for (List<Request> sameText : byKey.values()) {
+                float[] embedding = embeddings.get(i++);
+                sameText.forEach(request -> request.result.complete(embedding));
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    private static float[] await(Future<float[]> result, Duration timeout) throws TimeoutException {
+        try {
+            return result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding de la pregunta interrumpido", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Error al generar el embedding: " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private static class Request {
+        private final long key;
+        private final String text;
+        private final CompletableFuture<float[]> result = new CompletableFuture<>();
+        private volatile Batch batch;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Request(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+
+        // el llamador dejó de esperar; el último en abandonar un lote en vuelo lo cancela
+        private void abandon() {
+            if (result.cancel(false)) {
+                release();
+            }
+        }
+
+        // descuenta la petición de su lote una sola vez: la llaman abandon y el despachador, según quién
+        // vea primero al otro
+        private void release() {
+            Batch inFlight = batch;
+            if (inFlight != null && released.compareAndSet(false, true)
+                    && inFlight.waiting.decrementAndGet() == 0) {
+                inFlight.call.cancel(true);
+            }
+        }
+    }
+
+    private static class Batch {
+        private final List<Request> requests;
+        private final AtomicInteger waiting;
+        private volatile Future<?> call;
+
+        private Batch(List<Request> requests) {
+            this.requests = requests;
+            this.waiting = new AtomicInteger(requests.size());
+        }
+    }
+}
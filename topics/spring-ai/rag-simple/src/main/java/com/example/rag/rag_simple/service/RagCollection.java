@@ -0,0 +1,385 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.cache.SemanticAnswerCache;
+import com.example.rag.rag_simple.index.SegmentedVectorIndex;
+import com.example.rag.rag_simple.index.VectorIndexFactory;
+import com.example.rag.rag_simple.metrics.RagMetrics;
+import com.example.rag.rag_simple.model.DocumentMetadata;
+import com.example.rag.rag_simple.store.DocumentMetadataStore;
+import com.example.rag.rag_simple.store.SegmentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+Una colección de documentos aislada de las demás: su propio índice segmentado (con su índice BM25 y su
+catálogo), su almacén en disco, sus metadatos y su caché semántica. Una pregunta sobre una colección
+nunca recorre los fragmentos de otra.
+
+El almacén en disco es la fuente de verdad, así que la colección puede salir de memoria sin perder
+nada: unload descarta el índice y load lo reconstruye desde el SegmentStore sin volver a generar
+embeddings (la próxima pregunta paga la reconstrucción). CollectionRegistry decide cuándo.
+
+Quien usa el índice lo hace dentro de un Lease (candado de lectura): mientras haya uno abierto la
+colección no se desaloja. La carga, el desalojo y la eliminación toman el candado de escritura.
+Además, las cargas y eliminaciones de un mismo documento se ejecutan de a una (lockSource): dos cargas
+simultáneas del mismo archivo partirían de los mismos fragmentos anteriores y la primera en confirmar
+descartaría del índice los que la otra ya indexó.
+*/
+public class RagCollection {
+
+    private static final Logger log = LoggerFactory.getLogger(RagCollection.class);
+
+    private final String name;
+    private final Path directory;
+    private final VectorIndexFactory indexFactory;
+    private final SegmentStore segmentStore;
+    private final DocumentMetadataStore metadataStore;
+    private final SemanticAnswerCache answerCache;
+    private final ToLongFunction<String> contentKey;
+    private final RagMetrics metrics;
+    private final long memoryQuota;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile SegmentedVectorIndex index;
+    private volatile long lastUsedNanos = System.nanoTime();
+    // cambia en cada carga en memoria y desalojo (los ids de los fragmentos no se conservan de una carga
+    // a otra) y con cada documento cargado (las respuestas anteriores pueden haber quedado incompletas)
+    private final AtomicInteger epoch = new AtomicInteger();
+    // solo cambia con el candado de escritura tomado
+    private boolean removed;
+    // una entrada por documento con una carga o eliminación en curso o esperando
+    private final Map<String, SourceLock> sourceLocks = new ConcurrentHashMap<>();
+
+    RagCollection(String name, Path directory, VectorIndexFactory indexFactory, SemanticAnswerCache answerCache,
+                  ToLongFunction<String> contentKey, RagMetrics metrics, long memoryQuota) {
+        this.name = name;
+        this.directory = directory;
+        this.indexFactory = indexFactory;
+        this.segmentStore = new SegmentStore(directory);
+        this.metadataStore = new DocumentMetadataStore(directory);
+        this.answerCache = answerCache;
+        this.contentKey = contentKey;
+        this.metrics = metrics;
+        this.memoryQuota = memoryQuota;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // solo es válido dentro de un Lease
+    public SegmentedVectorIndex index() {
+        return index;
+    }
+
+    public SegmentStore store() {
+        return segmentStore;
+    }
+
+    public SemanticAnswerCache answerCache() {
+        return answerCache;
+    }
+
+    public int epoch() {
+        return epoch.get();
+    }
+
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    // 0 mientras la colección no está en memoria
+    public long memoryBytes() {
+        SegmentedVectorIndex current = index;
+        return current == null ? 0 : current.memoryBytes();
+    }
+
+    public int chunkCount() {
+        SegmentedVectorIndex current = index;
+        return current == null ? 0 : current.snapshot().size();
+    }
+
+    public int documentCount() {
+        SegmentedVectorIndex current = index;
+        return current == null ? 0 : current.catalog().documentCount();
+    }
+
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    // la cuota limita la memoria de una sola colección; la carga que la supera se revierte
+    public void checkMemoryQuota() {
+        if (memoryQuota > 0 && index.memoryBytes() > memoryQuota) {
+            throw new IllegalStateException(String.format(
+                    "La colección '%s' superó su cuota de memoria de %d MB", name, memoryQuota >> 20));
+        }
+    }
+
+    // la respuesta se guarda solo si la colección no se recargó mientras se generaba: con otra carga
+    // los ids de sus fragmentos ya no son los mismos
+    public void cacheAnswer(int answerEpoch, float[] questionEmbedding, String answer, Set<Integer> chunkIds) {
+        if (!lock.readLock().tryLock()) {
+            return;
+        }
+        try {
+            if (answerEpoch == epoch.get() && index != null) {
+                answerCache.put(questionEmbedding, answer, chunkIds);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // tras cargar un documento cualquier respuesta guardada puede haber quedado incompleta: se descartan
+    // todas y las que se están generando con el contexto anterior ya no se guardan
+    public void invalidateAnswers() {
+        epoch.incrementAndGet();
+        answerCache.clear();
+    }
+
+    // un fallo aquí no deshace la carga: el documento solo pierde sus etiquetas al reiniciar
+    public void saveMetadata() {
+        try {
+            metadataStore.save(index.catalog().metadata());
+        } catch (IOException e) {
+            log.warn("No se pudieron guardar los metadatos de la colección '{}': {}", name, e.getMessage(), e);
+        }
+    }
+
+    // ejecuta la tarea solo si la colección sigue en memoria y nadie la está desalojando
+    public void runIfLoaded(Runnable task) {
+        if (!lock.readLock().tryLock()) {
+            return;
+        }
+        try {
+            if (index != null) {
+                task.run();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // espera a que ninguna otra carga o eliminación trabaje sobre source; se libera al cerrar el SourceLock,
+    // en el mismo hilo
+    public SourceLock lockSource(String source) {
+        SourceLock sourceLock = sourceLocks.compute(source, (key, current) -> {
+            SourceLock held = current == null ? new SourceLock(key) : current;
+            held.users++;
+            return held;
+        });
+        sourceLock.lock.lock();
+        return sourceLock;
+    }
+
+    // carga la colección en memoria si hacía falta; el Lease debe cerrarse en el mismo hilo.
+    // Devuelve null si la colección fue eliminada
+    Lease acquire() {
+        lock.readLock().lock();
+        boolean loadedNow = false;
+        if (index == null) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                if (removed) {
+                    return null;
+                }
+                if (index == null) {
+                    load();
+                    loadedNow = true;
+                }
+                lock.readLock().lock();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lastUsedNanos = System.nanoTime();
+        return new Lease(loadedNow);
+    }
+
+    // reconstruye el índice en memoria desde el segmento en disco, sin volver a generar embeddings
+    private void load() throws IOException {
+        SegmentedVectorIndex loaded = indexFactory.createSegmented();
+        long restored;
+        try {
+            restored = segmentStore.open((source, text, vector) ->
+                    loaded.add(contentKey.applyAsLong(text), text, source, vector));
+            metadataStore.load().forEach(loaded.catalog()::describe);
+        } catch (IOException | RuntimeException e) {
+            loaded.clear();
+            loaded.close();
+            throw e;
+        }
+
+        // documentos sin metadatos guardados (cargados antes de existir las etiquetas o justo antes de una caída)
+        Set<String> descritos = loaded.catalog().metadata().stream()
+                .map(DocumentMetadata::getSource)
+                .collect(Collectors.toSet());
+        Instant ahora = Instant.now();
+        boolean faltantes = false;
+        for (String source : loaded.catalog().documents().keySet()) {
+            if (!descritos.contains(source)) {
+                loaded.catalog().describe(new DocumentMetadata(source, Set.of(), ahora));
+                faltantes = true;
+            }
+        }
+
+        answerCache.clear();
+        index = loaded;
+        epoch.incrementAndGet();
+        if (faltantes) {
+            saveMetadata();
+        }
+        metrics.collectionLoaded(name);
+        log.info("Colección '{}' en memoria: {} fragmentos restaurados desde disco", name, restored);
+    }
+
+    // desaloja el índice si nadie lo está usando; devuelve los bytes liberados (0 si no se pudo)
+    long tryUnload() {
+        if (!lock.writeLock().tryLock()) {
+            return 0;
+        }
+        try {
+            SegmentedVectorIndex current = index;
+            if (current == null) {
+                return 0;
+            }
+            long bytes = current.memoryBytes();
+            index = null;
+            epoch.incrementAndGet();
+            answerCache.clear();
+            current.clear();
+            current.close();
+            try {
+                segmentStore.close();
+            } catch (IOException e) {
+                log.warn("No se pudo cerrar el almacén de la colección '{}': {}", name, e.getMessage(), e);
+            }
+            metrics.collectionEvicted(name);
+            return bytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // elimina de memoria y de disco una colección vacía que nadie está usando; devuelve false si no pudo
+    boolean tryRemove() {
+        if (!lock.writeLock().tryLock()) {
+            return false;
+        }
+        try {
+            SegmentedVectorIndex current = index;
+            if (removed || current == null || current.snapshot().size() > 0 || segmentStore.size() > 0) {
+                return false;
+            }
+            removed = true;
+            index = null;
+            epoch.incrementAndGet();
+            answerCache.clear();
+            current.clear();
+            current.close();
+            try {
+                segmentStore.close();
+                deleteDirectory();
+            } catch (IOException e) {
+                log.warn("No se pudo borrar el directorio de la colección '{}': {}", name, e.getMessage(), e);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteDirectory() throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            SegmentedVectorIndex current = index;
+            if (current != null) {
+                current.close();
+            }
+            segmentStore.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // candado de un documento; la entrada del mapa se quita cuando nadie más lo usa
+    public class SourceLock implements AutoCloseable {
+        private final String source;
+        private final ReentrantLock lock = new ReentrantLock();
+        // solo cambia dentro de compute sobre sourceLocks
+        private int users;
+        private boolean closed;
+
+        private SourceLock(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                lock.unlock();
+                sourceLocks.computeIfPresent(source, (key, current) -> --current.users == 0 ? null : current);
+            }
+        }
+    }
+
+    // candado de lectura sobre la colección ya cargada en memoria
+    public class Lease implements AutoCloseable {
+        private final boolean loadedNow;
+        private boolean closed;
+
+        private Lease(boolean loadedNow) {
+            this.loadedNow = loadedNow;
+        }
+
+        public RagCollection collection() {
+            return RagCollection.this;
+        }
+
+        boolean loadedNow() {
+            return loadedNow;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
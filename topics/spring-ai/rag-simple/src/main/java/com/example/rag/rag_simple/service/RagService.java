@@ -1,163 +1,694 @@
 package com.example.rag.rag_simple.service;
 
+import com.example.rag.rag_simple.cache.EmbeddingCache;
+import com.example.rag.rag_simple.dto.StreamingAnswer;
+import com.example.rag.rag_simple.index.ChunkBitmap;
+import com.example.rag.rag_simple.index.ReciprocalRankFusion;
+import com.example.rag.rag_simple.index.SegmentedVectorIndex;
+import com.example.rag.rag_simple.metrics.RagMetrics;
 import com.example.rag.rag_simple.model.DocumentChunk;
+import com.example.rag.rag_simple.model.DocumentMetadata;
+import com.example.rag.rag_simple.model.MetadataFilter;
+import com.example.rag.rag_simple.model.ScoredChunk;
+import com.example.rag.rag_simple.store.SegmentStore;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/*
+Preguntas y cargas sobre una colección de documentos (ver CollectionRegistry): cada operación trabaja
+dentro de un Lease de su colección, con el índice, el almacén y la caché semántica de esa colección.
+*/
 @Service
 public class RagService {
 
     private static final Logger log = LoggerFactory.getLogger(RagService.class);
     private static final int CHUNK_SIZE = 500;
-
-    private final EmbeddingModel embeddingModel;
+    private static final String SIN_DOCUMENTOS = "No hay documentos cargados. Por favor, sube un documento primero.";
+    private static final String SIN_RESULTADOS = "No se encontró información relevante en los documentos cargados.";
+    private static final String SIN_COINCIDENCIAS_FILTRO = "Ningún documento cargado cumple los filtros indicados.";
+    private static final String SIN_TIEMPO_PARA_GENERAR =
+            "No se pudo generar una respuesta a tiempo. Estos son los fragmentos más relevantes encontrados:";
+    private static final String RESPUESTA_INTERRUMPIDA = "\n\n[Respuesta interrumpida: se agotó el tiempo de espera]";
+    private static final String ETAPA_EMBEDDING = "embedding";
+    private static final String ETAPA_RECUPERACION = "recuperacion";
+    private static final String ETAPA_CONTEXTO = "contexto";
+    private static final String ETAPA_PROMPT = "prompt";
+    private static final String ETAPA_GENERACION = "generacion";
+    private static final String ETAPA_PERSISTENCIA = "persistencia";
+    private static final String ETAPA_INDEXADO = "indexado";
+    private static final String ETAPA_CONFIRMACION = "confirmacion";
+    private static final String ETAPA_TOTAL = "total";
+    private static final String PROMPT_TEMPLATE = """
+            Eres un asistente experto que responde preguntas basándose ÚNICAMENTE en el contexto proporcionado.
+
+            Contexto de los documentos:
+            {contexto}
+
+            Pregunta del usuario: {pregunta}
+
+            Instrucciones:
+            - Responde la pregunta usando SOLO la información del contexto
+            - Si la información no está en el contexto, di "No encuentro esa información en los documentos"
+            - Sé claro y conciso
+            - No inventes información
+            """;
+    private static final int PROMPT_TEMPLATE_TOKENS = ContextPacker.estimateTokens(PROMPT_TEMPLATE);
+    // cada cuántos fragmentos indexados se compara la memoria de la colección con su cuota
+    private static final int QUOTA_CHECK_INTERVAL = 256;
+
+    private final EmbeddingCache embeddingCache;
+    private final CollectionRegistry collections;
+    private final EmbeddingPipeline embeddingPipeline;
+    private final QuestionEmbeddingBatcher questionEmbeddings;
+    private final RagMetrics metrics;
+    private final ContextPacker contextPacker;
     private final ChatClient chatClient;
-    private final List<DocumentChunk> documentChunks = new ArrayList<>();
-
-    public RagService(EmbeddingModel embeddingModel, ChatClient.Builder chatClientBuilder) {
-        this.embeddingModel = embeddingModel;
+    private final ParagraphChunker chunker = new ParagraphChunker(CHUNK_SIZE);
+    private final String retrievalMode;
+    private final int retrievalCandidates;
+    private final int contextCandidates;
+    private final double storeCompactionThreshold;
+    private final Duration plazoTotal;
+    private final Duration plazoEmbedding;
+    private final Duration plazoRecuperacion;
+    private final Duration generacionMinima;
+    private final ExecutorService storeMaintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rag-store-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RagService(EmbeddingCache embeddingCache, CollectionRegistry collections,
+                      EmbeddingPipeline embeddingPipeline, QuestionEmbeddingBatcher questionEmbeddings,
+                      RagMetrics metrics, ContextPacker contextPacker, ChatClient.Builder chatClientBuilder,
+                      @Value("${rag.retrieval.mode:hybrid}") String retrievalMode,
+                      @Value("${rag.retrieval.candidates:20}") int retrievalCandidates,
+                      @Value("${rag.context.candidates:10}") int contextCandidates,
+                      @Value("${rag.store.compaction-threshold:0.3}") double storeCompactionThreshold,
+                      @Value("${rag.deadline.total-millis:60000}") long plazoTotalMillis,
+                      @Value("${rag.deadline.embedding-millis:5000}") long plazoEmbeddingMillis,
+                      @Value("${rag.deadline.retrieval-millis:500}") long plazoRecuperacionMillis,
+                      @Value("${rag.deadline.min-generation-millis:2000}") long generacionMinimaMillis) {
+        this.embeddingCache = embeddingCache;
+        this.collections = collections;
+        this.embeddingPipeline = embeddingPipeline;
+        this.questionEmbeddings = questionEmbeddings;
+        this.metrics = metrics;
+        this.contextPacker = contextPacker;
         this.chatClient = chatClientBuilder.build();
+        this.retrievalMode = retrievalMode;
+        this.retrievalCandidates = retrievalCandidates;
+        this.contextCandidates = contextCandidates;
+        this.storeCompactionThreshold = storeCompactionThreshold;
+        this.plazoTotal = Duration.ofMillis(plazoTotalMillis);
+        this.plazoEmbedding = Duration.ofMillis(plazoEmbeddingMillis);
+        this.plazoRecuperacion = Duration.ofMillis(plazoRecuperacionMillis);
+        this.generacionMinima = Duration.ofMillis(generacionMinimaMillis);
     }
 
-    public String cargarDocumento(MultipartFile file) throws IOException {
-        Path tempFile = Files.createTempFile("upload-", ".txt");
-        Files.copy(file.getInputStream(), tempFile, StandardCopyOption.REPLACE_EXISTING);
-
-        log.info("Procesando documento: {}", file.getOriginalFilename());
-
-        String content = Files.readString(tempFile, StandardCharsets.UTF_8);
-        List<String> chunks = dividirEnFragmentos(content);
+    // los índices y los almacenes de las colecciones los cierra CollectionRegistry
+    @PreDestroy
+    public void cerrar() {
+        storeMaintenance.shutdownNow();
+    }
 
-        log.info("Documento dividido en {} fragmentos", chunks.size());
+    // se ejecuta en un hilo de IngestionService; job recibe el progreso y puede pedir la cancelación.
+    // Si el documento ya estaba cargado, la nueva versión lo reemplaza al confirmar la carga: los
+    // fragmentos sin cambios conservan su id y su vector, solo los nuevos o editados van al modelo y
+    // los que desaparecieron se quitan del índice. Una carga de un documento que ya se está cargando o
+    // eliminando espera a que termine la otra. La carga que supera la cuota de memoria de la colección se
+    // revierte con IllegalStateException
+    public String cargarDocumento(String coleccion, String source, InputStream in, IngestionJob job)
+            throws IOException {
+        // una colección que no existía se crea con esta carga y se quita si la carga no se completa
+        boolean nueva = !collections.exists(coleccion);
+        RagCollection destino = null;
+        try (RagMetrics.Stage total = metrics.start(RagMetrics.CARGA, ETAPA_TOTAL);
+             RagCollection.Lease lease = collections.acquireOrCreate(coleccion);
+             RagCollection.SourceLock documento = lease.collection().lockSource(source)) {
+            destino = lease.collection();
+            String resultado = cargar(destino, source, in, job);
+            // la colección creció: puede que otras tengan que dejar la memoria
+            collections.enforceBudget(destino);
+            return resultado;
+        } catch (IOException | RuntimeException e) {
+            if (nueva && destino != null) {
+                collections.removeIfEmpty(destino);
+            }
+            throw e;
+        }
+    }
 
-        int processedChunks = 0;
-        for (String chunk : chunks) {
-            EmbeddingResponse embeddingResponse = embeddingModel.embedForResponse(List.of(chunk));
-            float[] embeddingArray = embeddingResponse.getResults().get(0).getOutput();
-            List<Double> embedding = convertToDoubleList(embeddingArray);
+    private String cargar(RagCollection coleccion, String source, InputStream in, IngestionJob job)
+            throws IOException {
+        log.info("Procesando documento: {} (colección '{}')", source, coleccion.getName());
+        SegmentedVectorIndex index = coleccion.index();
+        coleccion.checkMemoryQuota();
+
+        Set<Integer> previousIds = index.chunkIds(source);
+        boolean replacing = !previousIds.isEmpty();
+
+        // una nueva versión del documento vuelve obsoletas las respuestas construidas con la anterior
+        coleccion.answerCache().invalidateChunks(previousIds);
+
+        // los fragmentos pasan del InputStream al pipeline de embeddings sin materializar el archivo
+        int chunkCount;
+        int processedChunks;
+        int computedEmbeddings;
+        Set<Integer> loadedIds = new HashSet<>();
+        int[] indexados = new int[1];
+        SegmentStore.Transaction transaction = coleccion.store().begin();
+        if (replacing) {
+            transaction.replaceSource(source);
+        }
+        try (EmbeddingPipeline.Session session = embeddingPipeline.open((chunk, embedding) -> {
+                 job.checkCancelled();
+                 try (RagMetrics.Stage stage = metrics.start(RagMetrics.CARGA, ETAPA_PERSISTENCIA)) {
+                     persistirFragmento(transaction, source, chunk, embedding);
+                 }
+                 try (RagMetrics.Stage stage = metrics.start(RagMetrics.CARGA, ETAPA_INDEXADO)) {
+                     loadedIds.add(indexarFragmento(index, source, chunk, embedding).getId());
+                 }
+                 if (++indexados[0] % QUOTA_CHECK_INTERVAL == 0) {
+                     coleccion.checkMemoryQuota();
+                 }
+                 job.chunkEmbedded();
+             }, index::vector)) {
+            chunkCount = chunker.split(job.track(in), StandardCharsets.UTF_8, chunk -> {
+                job.checkCancelled();
+                session.submit(chunk);
+                job.chunkSubmitted();
+            });
+            job.chunkingDone();
+            processedChunks = session.finish();
+            computedEmbeddings = session.computed();
+            try (RagMetrics.Stage stage = metrics.start(RagMetrics.CARGA, ETAPA_CONFIRMACION)) {
+                transaction.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            transaction.rollback();
+            // el documento vuelve a apuntar solo a los fragmentos que tenía antes de la carga
+            index.retainSource(source, previousIds);
+            // los fragmentos nuevos ya eran visibles para las preguntas: se descartan las respuestas
+            // construidas con ellos y las que se están generando ya no se guardan
+            coleccion.invalidateAnswers();
+            throw e;
+        }
+        metrics.documentIngested(processedChunks, computedEmbeddings, job.getBytesRead());
 
-            documentChunks.add(new DocumentChunk(chunk, embedding, file.getOriginalFilename()));
-            processedChunks++;
+        if (replacing) {
+            Set<Integer> removed = index.retainSource(source, loadedIds);
+            log.info("Documento '{}' reemplazado: {} fragmentos anteriores descartados", source, removed.size());
+            compactarAlmacen(coleccion);
         }
 
-        Files.delete(tempFile);
+        // las etiquetas de una versión nueva reemplazan a las anteriores recién al confirmar la carga
+        index.catalog().describe(new DocumentMetadata(source, job.getTags(), Instant.now()));
+        coleccion.saveMetadata();
+        coleccion.invalidateAnswers();
 
-        log.info("{} fragmentos procesados e indexados", processedChunks);
+        log.info("Documento dividido en {} fragmentos", chunkCount);
+        log.info("{} fragmentos procesados e indexados ({} embeddings nuevos)", processedChunks, computedEmbeddings);
 
-        return String.format("Documento '%s' cargado exitosamente. %d fragmentos indexados.",
-                file.getOriginalFilename(), processedChunks);
+        return String.format("Documento '%s' cargado exitosamente. %d fragmentos indexados (%d embeddings nuevos).",
+                source, processedChunks, computedEmbeddings);
     }
 
-    private List<String> dividirEnFragmentos(String text) {
-        List<String> chunks = new ArrayList<>();
-        String[] paragraphs = text.split("\n\n+");
+    // quita un documento sin tocar el resto de la colección; devuelve false si no estaba cargado
+    public boolean eliminarDocumento(String coleccion, String source) throws IOException {
+        try (RagCollection.Lease lease = collections.acquire(coleccion)) {
+            if (lease == null) {
+                return false;
+            }
+            RagCollection actual = lease.collection();
+            // espera a que termine una carga en curso del mismo documento
+            try (RagCollection.SourceLock documento = actual.lockSource(source)) {
+                if (!actual.index().catalog().contains(source)) {
+                    return false;
+                }
+                actual.store().deleteSource(source);
+                Set<Integer> ids = actual.index().deleteSource(source);
+                // también las respuestas que se están generando con sus fragmentos dejan de guardarse
+                actual.invalidateAnswers();
+                actual.saveMetadata();
+                log.info("Documento '{}' eliminado de la colección '{}' ({} fragmentos)", source,
+                        actual.getName(), ids.size());
+            }
+            compactarAlmacen(actual);
+            return true;
+        }
+    }
 
-        StringBuilder currentChunk = new StringBuilder();
-        for (String paragraph : paragraphs) {
-            if (currentChunk.length() + paragraph.length() > CHUNK_SIZE) {
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
+    // reescribe el almacén en disco sin los registros borrados cuando superan el umbral; una colección
+    // desalojada mientras tanto se compacta en su próxima eliminación
+    private void compactarAlmacen(RagCollection coleccion) {
+        storeMaintenance.execute(() -> coleccion.runIfLoaded(() -> {
+            try {
+                if (coleccion.store().compactIfNeeded(storeCompactionThreshold)) {
+                    log.info("Almacén en disco de la colección '{}' compactado", coleccion.getName());
                 }
+            } catch (IOException e) {
+                log.warn("No se pudo compactar el almacén en disco: {}", e.getMessage(), e);
             }
-            currentChunk.append(paragraph).append("\n\n");
+        }));
+    }
+
+    private DocumentChunk indexarFragmento(SegmentedVectorIndex index, String source, String text,
+                                           float[] embedding) {
+        return index.add(embeddingCache.key(text), text, source, embedding);
+    }
+
+    private void persistirFragmento(SegmentStore.Transaction transaction, String source, String text,
+                                    float[] embedding) {
+        try {
+            transaction.append(source, text, embedding);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    public String preguntarSobreDocumentos(String coleccion, String pregunta) {
+        return preguntarSobreDocumentos(coleccion, pregunta, MetadataFilter.none());
+    }
 
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString().trim());
+    // filtro restringe la búsqueda a parte de los documentos de la colección (fuentes, etiquetas, fecha
+    // de carga). Las preguntas filtradas no usan la caché semántica: la misma pregunta sobre otro
+    // subconjunto de documentos puede tener otra respuesta
+    public String preguntarSobreDocumentos(String coleccion, String pregunta, MetadataFilter filtro) {
+        try (RagMetrics.Stage total = metrics.start(RagMetrics.PREGUNTA, ETAPA_TOTAL)) {
+            return responder(coleccion, pregunta, filtro);
         }
+    }
 
-        return chunks;
+    private String responder(String coleccion, String pregunta, MetadataFilter filtro) {
+        Deadline deadline = Deadline.after(plazoTotal);
+        Recuperacion recuperacion = recuperar(coleccion, pregunta, filtro, deadline);
+        if (recuperacion.respuesta != null) {
+            return recuperacion.respuesta;
+        }
+        ContextPacker.PackedContext contexto = recuperacion.contexto;
+
+        Duration plazoGeneracion = deadline.remaining();
+        if (plazoGeneracion.compareTo(generacionMinima) < 0) {
+            registrarVencimiento(ETAPA_GENERACION);
+            log.warn("Sin tiempo para generar ({} ms restantes): se devuelven los fragmentos",
+                    plazoGeneracion.toMillis());
+            return soloFragmentos(contexto);
+        }
+
+        // stream() en lugar de call(): al vencer el plazo, timeout cancela la suscripción y con ella la
+        // petición a Ollama, en vez de dejar el hilo bloqueado esperando la respuesta completa
+        Prompt prompt = construirPrompt(pregunta, contexto);
+        String respuesta;
+        try (RagMetrics.Stage stage = metrics.start(RagMetrics.PREGUNTA, ETAPA_GENERACION)) {
+            respuesta = generar(prompt)
+                    .collect(Collectors.joining())
+                    .timeout(plazoGeneracion, Mono.empty())
+                    .block();
+        }
+        if (respuesta == null) {
+            registrarVencimiento(ETAPA_GENERACION);
+            log.warn("La generación superó el plazo de {} ms: se devuelven los fragmentos",
+                    plazoGeneracion.toMillis());
+            return soloFragmentos(contexto);
+        }
+
+        if (recuperacion.isCacheable()) {
+            recuperacion.coleccion.cacheAnswer(recuperacion.epoch, recuperacion.questionEmbedding, respuesta,
+                    idsDeFragmentos(contexto.getChunks()));
+        }
+        return respuesta;
+    }
+
+    // misma recuperación que preguntarSobreDocumentos, pero la respuesta llega token a token;
+    // la generación solo empieza al suscribirse y se cancela si el suscriptor se da de baja o vence el plazo.
+    // El tiempo total de la pregunta incluye la generación, así que se cierra al terminar los tokens
+    public StreamingAnswer preguntarEnStreaming(String coleccion, String pregunta, MetadataFilter filtro) {
+        RagMetrics.Stage total = metrics.start(RagMetrics.PREGUNTA, ETAPA_TOTAL);
+        StreamingAnswer respuesta;
+        try {
+            respuesta = responderEnStreaming(coleccion, pregunta, filtro);
+        } catch (RuntimeException e) {
+            total.close();
+            throw e;
+        }
+        return new StreamingAnswer(respuesta.getFuentes(), respuesta.getTokens().doFinally(signal -> total.close()));
+    }
+
+    private StreamingAnswer responderEnStreaming(String coleccion, String pregunta, MetadataFilter filtro) {
+        Deadline deadline = Deadline.after(plazoTotal);
+        Recuperacion recuperacion = recuperar(coleccion, pregunta, filtro, deadline);
+        if (recuperacion.respuesta != null) {
+            return new StreamingAnswer(List.of(), Flux.just(recuperacion.respuesta));
+        }
+        ContextPacker.PackedContext contexto = recuperacion.contexto;
+        List<ScoredChunk> fuentes = contexto.getChunks();
+
+        if (deadline.remaining().compareTo(generacionMinima) < 0) {
+            registrarVencimiento(ETAPA_GENERACION);
+            return new StreamingAnswer(fuentes, Flux.just(soloFragmentos(contexto)));
+        }
+
+        Prompt prompt = construirPrompt(pregunta, contexto);
+        Flux<String> tokens = Flux.defer(() -> {
+            RagMetrics.Stage generacion = metrics.start(RagMetrics.PREGUNTA, ETAPA_GENERACION);
+            StringBuilder respuesta = new StringBuilder();
+            AtomicBoolean vencido = new AtomicBoolean();
+            Mono<Long> plazo = Mono.delay(deadline.remaining()).doOnNext(tick -> vencido.set(true));
+            return generar(prompt)
+                    .doOnNext(respuesta::append)
+                    .doOnCancel(() -> log.info("Generación cancelada tras {} caracteres", respuesta.length()))
+                    .takeUntilOther(plazo)
+                    // solo una respuesta completa puede reutilizarse desde la caché
+                    .doOnComplete(() -> {
+                        if (vencido.get()) {
+                            registrarVencimiento(ETAPA_GENERACION);
+                        } else if (recuperacion.isCacheable()) {
+                            recuperacion.coleccion.cacheAnswer(recuperacion.epoch, recuperacion.questionEmbedding,
+                                    respuesta.toString(), idsDeFragmentos(fuentes));
+                        }
+                    })
+                    .doFinally(signal -> generacion.close())
+                    .concatWith(Flux.defer(() -> vencido.get() ? Flux.just(RESPUESTA_INTERRUMPIDA) : Flux.empty()));
+        });
+        return new StreamingAnswer(fuentes, tokens);
+    }
+
+    /*
+    Etapas previas a la generación, dentro del plazo de la pregunta. Si el embedding no llega dentro de
+    su presupuesto, la búsqueda sigue solo con BM25 (no necesita el modelo); la recuperación en memoria
+    no se interrumpe, pero si excede su presupuesto se registra el vencimiento.
+    La colección se usa solo durante estas etapas: la generación no la retiene en memoria.
+    */
+    private Recuperacion recuperar(String nombre, String pregunta, MetadataFilter filtro, Deadline deadline) {
+        try (RagCollection.Lease lease = collections.acquire(nombre)) {
+            if (lease == null || lease.collection().index().snapshot().size() == 0) {
+                return Recuperacion.directa(SIN_DOCUMENTOS);
+            }
+            return recuperar(lease.collection(), pregunta, filtro, deadline);
+        }
     }
 
-    public String preguntarSobreDocumentos(String pregunta) {
-        if (documentChunks.isEmpty()) {
-            return "No hay documentos cargados. Por favor, sube un documento primero.";
+    private Recuperacion recuperar(RagCollection coleccion, String pregunta, MetadataFilter filtro,
+                                   Deadline deadline) {
+        SegmentedVectorIndex index = coleccion.index();
+
+        ChunkBitmap candidatos = index.catalog().candidates(filtro);
+        if (candidatos != null && candidatos.isEmpty()) {
+            return Recuperacion.directa(SIN_COINCIDENCIAS_FILTRO);
         }
 
         log.info("Buscando contexto relevante para: {}", pregunta);
 
-        EmbeddingResponse questionEmbeddingResponse = embeddingModel.embedForResponse(List.of(pregunta));
-        float[] questionEmbeddingArray = questionEmbeddingResponse.getResults().get(0).getOutput();
-        List<Double> questionEmbedding = convertToDoubleList(questionEmbeddingArray);
+        float[] questionEmbedding;
+        try (RagMetrics.Stage stage = metrics.start(RagMetrics.PREGUNTA, ETAPA_EMBEDDING)) {
+            questionEmbedding = embeberPregunta(pregunta, deadline);
+        }
 
-        List<DocumentChunk> similarChunks = documentChunks.stream()
-                .sorted(Comparator.comparingDouble((DocumentChunk chunk) ->
-                        chunk.cosineSimilarity(questionEmbedding)).reversed())
-                .limit(3)
-                .collect(Collectors.toList());
+        if (questionEmbedding != null && candidatos == null) {
+            String respuestaEnCache = coleccion.answerCache().lookup(questionEmbedding);
+            if (respuestaEnCache != null) {
+                log.info("Respuesta obtenida de la caché semántica");
+                return Recuperacion.directa(respuestaEnCache);
+            }
+        }
 
-        if (similarChunks.isEmpty()) {
-            return "No se encontró información relevante en los documentos cargados.";
+        long inicio = System.nanoTime();
+        List<ScoredChunk> fuentes;
+        try (RagMetrics.Stage stage = metrics.start(RagMetrics.PREGUNTA, ETAPA_RECUPERACION)) {
+            fuentes = buscarFragmentos(index, pregunta, questionEmbedding, contextCandidates, candidatos);
+        }
+        if (fuentes.isEmpty()) {
+            return Recuperacion.directa(SIN_RESULTADOS);
         }
 
-        String contexto = similarChunks.stream()
-                .map(DocumentChunk::getText)
-                .collect(Collectors.joining("\n\n---\n\n"));
+        // de los candidatos, los pasajes que entran en el presupuesto de tokens, sin repetir contenido
+        ContextPacker.PackedContext contexto;
+        try (RagMetrics.Stage stage = metrics.start(RagMetrics.PREGUNTA, ETAPA_CONTEXTO)) {
+            contexto = contextPacker.pack(fuentes, chunk -> index.vectorOf(chunk.getId()));
+        }
+        if (System.nanoTime() - inicio > plazoRecuperacion.toNanos()) {
+            registrarVencimiento(ETAPA_RECUPERACION);
+        }
+        return new Recuperacion(null, coleccion, questionEmbedding, candidatos, contexto);
+    }
+
+    // devuelve null si el embedding no llega dentro del presupuesto de la etapa
+    private float[] embeberPregunta(String pregunta, Deadline deadline) {
+        try {
+            return questionEmbeddings.embed(pregunta, deadline.budget(plazoEmbedding));
+        } catch (TimeoutException e) {
+            registrarVencimiento(ETAPA_EMBEDDING);
+            log.warn("El embedding de la pregunta superó su plazo: se usa solo la búsqueda léxica");
+            return null;
+        }
+    }
+
+    // respuesta degradada cuando no hay tiempo para generar: el contexto que se iba a enviar al modelo
+    private String soloFragmentos(ContextPacker.PackedContext contexto) {
+        return SIN_TIEMPO_PARA_GENERAR + "\n\n" + contexto.getText();
+    }
+
+    private void registrarVencimiento(String etapa) {
+        metrics.deadlineMissed(etapa);
+    }
+
+    // vencimientos de plazo por etapa desde el arranque
+    public Map<String, Long> getVencimientos() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (String etapa : List.of(ETAPA_EMBEDDING, ETAPA_RECUPERACION, ETAPA_GENERACION)) {
+            snapshot.put(etapa, metrics.deadlineMisses(etapa));
+        }
+        return snapshot;
+    }
+
+    private Prompt construirPrompt(String pregunta, ContextPacker.PackedContext contexto) {
+        try (RagMetrics.Stage stage = metrics.start(RagMetrics.PREGUNTA, ETAPA_PROMPT)) {
+            // estimación local de los tokens del prompt completo; Ollama informa los reales al terminar
+            int tokens = PROMPT_TEMPLATE_TOKENS + ContextPacker.estimateTokens(pregunta) + contexto.getTokens();
+            log.info("Contexto: {} caracteres y ~{} tokens de {} fragmentos ({} frases repetidas descartadas)",
+                    contexto.getText().length(), contexto.getTokens(), contexto.getChunks().size(),
+                    contexto.getDroppedSentences());
+            metrics.contextSent(contexto.getText().length(), tokens, contexto.getDroppedSentences());
+
+            PromptTemplate template = new PromptTemplate(PROMPT_TEMPLATE);
+            return template.create(Map.of(
+                    "contexto", contexto.getText(),
+                    "pregunta", pregunta
+            ));
+        }
+    }
+
+    /*
+    Texto de la respuesta, parte a parte. Se pide chatResponse() en lugar de content() para leer el uso
+    de tokens que informa el modelo; Ollama lo envía en la última respuesta parcial, así que solo se
+    suma a las métricas si la generación termina (una cancelada o vencida no lo recibe).
+    */
+    private Flux<String> generar(Prompt prompt) {
+        return Flux.defer(() -> {
+            AtomicReference<Usage> uso = new AtomicReference<>();
+            return chatClient.prompt(prompt)
+                    .stream()
+                    .chatResponse()
+                    .doOnNext(response -> {
+                        Usage usage = usoInformado(response);
+                        if (usage != null) {
+                            uso.set(usage);
+                        }
+                    })
+                    .map(RagService::texto)
+                    .filter(texto -> !texto.isEmpty())
+                    .doOnComplete(() -> {
+                        Usage usage = uso.get();
+                        if (usage != null) {
+                            metrics.tokensUsed(usage.getPromptTokens(), usage.getCompletionTokens());
+                        }
+                    });
+        });
+    }
+
+    // null si la respuesta parcial no trae el uso o lo trae vacío, como las intermedias
+    private static Usage usoInformado(ChatResponse response) {
+        if (response.getMetadata() == null || response.getMetadata().getUsage() == null) {
+            return null;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        Integer total = usage.getTotalTokens();
+        return total == null || total == 0 ? null : usage;
+    }
+
+    private static String texto(ChatResponse response) {
+        if (response.getResult() == null || response.getResult().getOutput() == null) {
+            return "";
+        }
+        String texto = response.getResult().getOutput().getText();
+        return texto == null ? "" : texto;
+    }
 
-        log.info("Contexto recuperado: {} caracteres de {} fragmentos",
-                contexto.length(), similarChunks.size());
+    private Set<Integer> idsDeFragmentos(List<ScoredChunk> fuentes) {
+        return fuentes.stream()
+                .map(result -> result.getChunk().getId())
+                .collect(Collectors.toSet());
+    }
+
+    // en modo hybrid fusiona el ranking vectorial con el léxico (BM25) mediante reciprocal-rank fusion
+    // candidatos: ids permitidos por el filtro de metadatos (null = todo el corpus);
+    // sin embedding (venció su plazo) solo queda la búsqueda léxica
+    private List<ScoredChunk> buscarFragmentos(SegmentedVectorIndex index, String pregunta,
+                                               float[] questionEmbedding, int k, ChunkBitmap candidatos) {
+        if (questionEmbedding == null) {
+            return index.searchLexical(pregunta, k, candidatos);
+        }
+        if (!retrievalMode.equals("hybrid")) {
+            return index.search(questionEmbedding, k, false, candidatos);
+        }
+        List<ScoredChunk> vectoriales = index.search(questionEmbedding, retrievalCandidates, false, candidatos);
+        List<ScoredChunk> lexicos = index.searchLexical(pregunta, retrievalCandidates, candidatos);
+        return ReciprocalRankFusion.fuse(k, vectoriales, lexicos);
+    }
+
+    // compara el índice configurado con la búsqueda exacta: fracción de los k vecinos reales recuperados
+    private double calcularRecall(SegmentedVectorIndex index, String pregunta, int k) {
+        float[] questionEmbedding = questionEmbeddings.embed(pregunta);
 
-        String promptTemplate = """
-                Eres un asistente experto que responde preguntas basándose ÚNICAMENTE en el contexto proporcionado.
+        Set<Integer> exactos = index.search(questionEmbedding, k, true).stream()
+                .map(result -> result.getChunk().getId())
+                .collect(Collectors.toSet());
+        if (exactos.isEmpty()) {
+            return 1.0;
+        }
+
+        long encontrados = index.search(questionEmbedding, k, false).stream()
+                .filter(result -> exactos.contains(result.getChunk().getId()))
+                .count();
+        return (double) encontrados / exactos.size();
+    }
 
-                Contexto de los documentos:
-                {contexto}
+    // datos para ajustar el índice: recall@k frente a la búsqueda exacta, error de cuantización, memoria,
+    // cuántas preguntas agrupa en promedio cada llamada de embedding y los plazos vencidos por etapa.
+    // Devuelve null si la colección no existe
+    public Map<String, Object> diagnosticarIndice(String coleccion, String pregunta, int k) {
+        try (RagCollection.Lease lease = collections.acquire(coleccion)) {
+            if (lease == null) {
+                return null;
+            }
+            SegmentedVectorIndex index = lease.collection().index();
+            double recall = calcularRecall(index, pregunta, k);
+            double errorCuantizacion = index.quantizationError();
+            log.info("Diagnóstico del índice de '{}': recall@{}={} errorCuantizacion={}",
+                    lease.collection().getName(), k, recall, errorCuantizacion);
+
+            return Map.of(
+                    "coleccion", lease.collection().getName(),
+                    "recall", recall,
+                    "k", k,
+                    "errorCuantizacion", errorCuantizacion,
+                    "fragmentos", index.snapshot().size(),
+                    "memoriaBytes", index.memoryBytes(),
+                    "preguntasPorLote", questionEmbeddings.averageBatchSize(),
+                    "vencimientos", getVencimientos()
+            );
+        }
+    }
 
-                Pregunta del usuario: {pregunta}
+    // nombre normalizado de la colección (null = la por defecto); IllegalArgumentException si no es válido
+    public String nombreDeColeccion(String coleccion) {
+        return collections.normalize(coleccion);
+    }
 
-                Instrucciones:
-                - Responde la pregunta usando SOLO la información del contexto
-                - Si la información no está en el contexto, di "No encuentro esa información en los documentos"
-                - Sé claro y conciso
-                - No inventes información
-                """;
+    public List<String> getColecciones() {
+        return collections.names();
+    }
 
-        PromptTemplate template = new PromptTemplate(promptTemplate);
-        var prompt = template.create(Map.of(
-                "contexto", contexto,
-                "pregunta", pregunta
-        ));
+    public int getDocumentCount(String coleccion) {
+        try (RagCollection.Lease lease = collections.acquire(coleccion)) {
+            return lease == null ? 0 : lease.collection().index().catalog().documentCount();
+        }
+    }
 
-        return chatClient.prompt(prompt)
-                .call()
-                .content();
+    // origen -> fragmentos de cada documento cargado en la colección
+    public Map<String, Integer> getDocumentos(String coleccion) {
+        try (RagCollection.Lease lease = collections.acquire(coleccion)) {
+            return lease == null ? Map.of() : lease.collection().index().catalog().documents();
+        }
     }
 
-    public int getDocumentCount() {
-        return documentChunks.stream()
-                .map(DocumentChunk::getSource)
-                .distinct()
-                .collect(Collectors.toList())
-                .size();
+    // origen -> etiquetas de cada documento cargado en la colección
+    public Map<String, List<String>> getEtiquetas(String coleccion) {
+        try (RagCollection.Lease lease = collections.acquire(coleccion)) {
+            return lease == null ? Map.of() : lease.collection().index().catalog().tags();
+        }
     }
 
-    public void limpiarDocumentos() {
-        documentChunks.clear();
+    // vacía la colección; las demás no se tocan
+    public void limpiarDocumentos(String coleccion) throws IOException {
+        try (RagCollection.Lease lease = collections.acquire(coleccion)) {
+            if (lease == null) {
+                return;
+            }
+            RagCollection actual = lease.collection();
+            actual.store().clear();
+            actual.index().clear();
+            actual.invalidateAnswers();
+            actual.saveMetadata();
+        }
     }
 
-    private List<Double> convertToDoubleList(float[] array) {
-        List<Double> list = new ArrayList<>();
-        for (float value : array) {
-            list.add((double) value);
+    // resultado de recuperar(): una respuesta directa (sin documentos, caché, sin resultados) o el
+    // contexto para generar
+    private static class Recuperacion {
+        private final String respuesta;
+        private final RagCollection coleccion;
+        private final int epoch;
+        private final float[] questionEmbedding;
+        private final ChunkBitmap candidatos;
+        private final ContextPacker.PackedContext contexto;
+
+        private Recuperacion(String respuesta, RagCollection coleccion, float[] questionEmbedding,
+                             ChunkBitmap candidatos, ContextPacker.PackedContext contexto) {
+            this.respuesta = respuesta;
+            this.coleccion = coleccion;
+            this.epoch = coleccion != null ? coleccion.epoch() : 0;
+            this.questionEmbedding = questionEmbedding;
+            this.candidatos = candidatos;
+            this.contexto = contexto;
+        }
+
+        private static Recuperacion directa(String respuesta) {
+            return new Recuperacion(respuesta, null, null, null, null);
+        }
+
+        // solo las respuestas sobre todo el corpus y con embedding de la pregunta van a la caché semántica
+        private boolean isCacheable() {
+            return questionEmbedding != null && candidatos == null;
         }
-        return list;
     }
 }
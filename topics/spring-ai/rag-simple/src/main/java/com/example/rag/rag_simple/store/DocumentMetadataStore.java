@@ -0,0 +1,79 @@
+package com.example.rag.rag_simple.store;
+
+import com.example.rag.rag_simple.model.DocumentMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/*
+Etiquetas y fecha de carga de cada documento, en documents.properties junto al SegmentStore. Son pocos
+datos por documento, así que cada cambio reescribe el archivo completo (temporal + renombrado atómico).
+Se guarda después de confirmar la carga: si el proceso se cae justo entre ambos pasos, el documento
+queda sin etiquetas y con la fecha del próximo arranque, pero sus fragmentos no se pierden.
+*/
+public class DocumentMetadataStore {
+
+    private final Path directory;
+    private final Path file;
+
+    public DocumentMetadataStore(Path directory) {
+        this.directory = directory;
+        this.file = directory.resolve("documents.properties");
+    }
+
+    public List<DocumentMetadata> load() throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+
+        int count = Integer.parseInt(properties.getProperty("documents", "0"));
+        List<DocumentMetadata> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String prefix = "document." + i + ".";
+            String tags = properties.getProperty(prefix + "tags", "");
+            Set<String> tagSet = new LinkedHashSet<>();
+            if (!tags.isEmpty()) {
+                tagSet.addAll(Arrays.asList(tags.split(",")));
+            }
+            documents.add(new DocumentMetadata(properties.getProperty(prefix + "source"), tagSet,
+                    Instant.parse(properties.getProperty(prefix + "uploadedAt"))));
+        }
+        return documents;
+    }
+
+    public synchronized void save(Collection<DocumentMetadata> documents) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("documents", Integer.toString(documents.size()));
+        int i = 0;
+        for (DocumentMetadata document : documents) {
+            String prefix = "document." + i + ".";
+            properties.setProperty(prefix + "source", document.getSource());
+            properties.setProperty(prefix + "tags", String.join(",", document.getTags()));
+            properties.setProperty(prefix + "uploadedAt", document.getUploadedAt().toString());
+            i++;
+        }
+
+        Files.createDirectories(directory);
+        Path tmp = directory.resolve("documents.properties.tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "rag-simple documents");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
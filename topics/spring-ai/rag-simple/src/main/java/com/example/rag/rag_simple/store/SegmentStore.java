@@ -0,0 +1,737 @@
+package com.example.rag.rag_simple.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/*
+Almacén persistente de fragmentos en disco, en formato de segmento:
+
+- vectors.f32  vectores de ancho fijo (dimensions floats little-endian por fragmento)
+- chunks.idx   una entrada de 16 bytes por fragmento: offset (long), bytes del origen (int), bytes del texto (int)
+- chunks.dat   blob con origen + texto en UTF-8
+- manifest.properties  cantidad de fragmentos confirmados, dimensiones, tamaño del blob, generación
+               y lápidas por documento
+- wal.log      write-ahead log con los fragmentos aún no aplicados al segmento
+
+Cada carga abre su propia Transaction: sus registros se escriben en el WAL etiquetados con el id
+de la transacción y solo al confirmar (commit) se vuelven a leer del WAL, se aplican a los archivos del
+segmento y se reescribe el manifest de forma atómica; la carga no retiene sus fragmentos en memoria.
+Varias cargas pueden intercalar registros en el WAL sin mezclarse. El
+manifest es la fuente de verdad: si el proceso se cae a mitad de una carga, los registros sin COMMIT
+se descartan y los bytes que sobren al final de los archivos del segmento se truncan al abrir.
+
+Borrar un documento no reescribe el segmento: se registra una lápida "origen -> posición" en el manifest
+y los registros de ese origen anteriores a la posición se saltan al cargar. Una Transaction puede
+reemplazar un documento (replaceSource): su COMMIT lleva el origen y la lápida se aplica junto con los
+registros nuevos. compactIfNeeded reescribe los archivos sin los registros muertos en una generación
+nueva (vectors-N.f32, ...) y la publica cambiando el manifest, así una caída deja siempre una
+generación completa.
+*/
+public class SegmentStore {
+
+    private static final int WAL_MAGIC = 0x52414757;
+    private static final int WAL_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final byte RECORD_CHUNK = 1;
+    private static final byte RECORD_COMMIT = 2;
+    private static final byte RECORD_CLEAR = 3;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final long MAP_WINDOW_BYTES = 64L << 20;
+
+    private final Path directory;
+    private final Path manifestFile;
+    private final Path walFile;
+    private Path vectorsFile;
+    private Path indexFile;
+    private Path blobFile;
+
+    private long count;
+    private int dimensions;
+    private long blobBytes;
+    private int generation;
+    private final Map<String, Long> tombstones = new HashMap<>();
+    private final Map<String, Long> liveRecords = new HashMap<>();
+    private long deadRecords;
+    private FileChannel wal;
+    private long nextTransactionId;
+    private int openTransactions;
+
+    public SegmentStore(Path directory) {
+        this.directory = directory;
+        this.manifestFile = directory.resolve("manifest.properties");
+        this.walFile = directory.resolve("wal.log");
+        useGeneration(0);
+    }
+
+    // la generación 0 conserva los nombres originales de los archivos
+    private void useGeneration(int generation) {
+        this.generation = generation;
+        this.vectorsFile = segmentFile("vectors", "f32", generation);
+        this.indexFile = segmentFile("chunks", "idx", generation);
+        this.blobFile = segmentFile("chunks", "dat", generation);
+    }
+
+    private Path segmentFile(String name, String extension, int generation) {
+        return directory.resolve(generation == 0 ? name + "." + extension : name + "-" + generation + "." + extension);
+    }
+
+    private void deleteGeneration(int generation) throws IOException {
+        Files.deleteIfExists(segmentFile("vectors", "f32", generation));
+        Files.deleteIfExists(segmentFile("chunks", "idx", generation));
+        Files.deleteIfExists(segmentFile("chunks", "dat", generation));
+    }
+
+    @FunctionalInterface
+    public interface ChunkLoader {
+        void accept(String source, String text, float[] vector);
+    }
+
+    // abre el almacén, reaplica el WAL confirmado y entrega cada fragmento persistido en orden
+    public synchronized long open(ChunkLoader loader) throws IOException {
+        Files.createDirectories(directory);
+        readManifest();
+        // restos de una compactación interrumpida (antes o después de publicar el manifest)
+        deleteGeneration(generation + 1);
+        if (generation > 0) {
+            deleteGeneration(generation - 1);
+        }
+        replayWal();
+        truncateSegments();
+        resetWal();
+
+        if (count > 0) {
+            loadSegments(loader);
+        }
+        return count;
+    }
+
+    public synchronized Transaction begin() {
+        openTransactions++;
+        return new Transaction(nextTransactionId++);
+    }
+
+    public synchronized void clear() throws IOException {
+        count = 0;
+        dimensions = 0;
+        blobBytes = 0;
+        deleteGeneration(generation);
+        useGeneration(0);
+        tombstones.clear();
+        liveRecords.clear();
+        deadRecords = 0;
+        writeManifest();
+        if (openTransactions == 0) {
+            resetWal();
+        } else {
+            // las cargas abiertas leerán sus registros del WAL al confirmar, así que no se vacía: se marca
+            // el vaciado y al reabrir solo cuentan los COMMIT posteriores
+            writeWalRecord(RECORD_CLEAR, ByteBuffer.allocate(Long.BYTES).putLong(-1L).array());
+            wal.force(false);
+        }
+    }
+
+    // borra un documento: sus registros confirmados hasta ahora quedan muertos
+    public synchronized void deleteSource(String source) throws IOException {
+        tombstone(source, count, 0);
+        writeManifest();
+    }
+
+    // reescribe el segmento sin registros muertos si superan la fracción threshold; no corre con cargas abiertas
+    public synchronized boolean compactIfNeeded(double threshold) throws IOException {
+        if (openTransactions > 0 || deadRecords == 0 || deadRecords < count * threshold) {
+            return false;
+        }
+
+        int target = generation + 1;
+        deleteGeneration(target);
+        Path targetVectors = segmentFile("vectors", "f32", target);
+        Path targetIndex = segmentFile("chunks", "idx", target);
+        Path targetBlob = segmentFile("chunks", "dat", target);
+
+        long[] written = new long[2];
+        try (FileChannel vectors = openForAppend(targetVectors, 0);
+             FileChannel index = openForAppend(targetIndex, 0);
+             FileChannel blob = openForAppend(targetBlob, 0)) {
+            SegmentWriter writer = new SegmentWriter(vectors, index, blob, 0);
+            forEachRecord((position, source, text, vector) -> {
+                if (isLive(position, source)) {
+                    writer.write(source, text, vector);
+                    written[0]++;
+                }
+            });
+            writer.force();
+            written[1] = writer.offset;
+        }
+
+        int previous = generation;
+        long removed = count - written[0];
+        count = written[0];
+        blobBytes = written[1];
+        tombstones.clear();
+        deadRecords = 0;
+        useGeneration(target);
+        writeManifest();
+        deleteGeneration(previous);
+        resetWal();
+        return removed > 0;
+    }
+
+    public synchronized long deadRecords() {
+        return deadRecords;
+    }
+
+    public synchronized void close() throws IOException {
+        if (wal != null) {
+            wal.close();
+            wal = null;
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    private void readManifest() throws IOException {
+        if (!Files.exists(manifestFile)) {
+            return;
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestFile)) {
+            manifest.load(in);
+        }
+        count = Long.parseLong(manifest.getProperty("count", "0"));
+        dimensions = Integer.parseInt(manifest.getProperty("dimensions", "0"));
+        blobBytes = Long.parseLong(manifest.getProperty("blobBytes", "0"));
+        useGeneration(Integer.parseInt(manifest.getProperty("generation", "0")));
+
+        tombstones.clear();
+        int tombstoneCount = Integer.parseInt(manifest.getProperty("tombstones", "0"));
+        for (int i = 0; i < tombstoneCount; i++) {
+            tombstones.put(manifest.getProperty("tombstone." + i + ".source"),
+                    Long.parseLong(manifest.getProperty("tombstone." + i + ".before")));
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("version", "1");
+        manifest.setProperty("count", Long.toString(count));
+        manifest.setProperty("dimensions", Integer.toString(dimensions));
+        manifest.setProperty("blobBytes", Long.toString(blobBytes));
+        manifest.setProperty("generation", Integer.toString(generation));
+        manifest.setProperty("tombstones", Integer.toString(tombstones.size()));
+        int i = 0;
+        for (Map.Entry<String, Long> tombstone : tombstones.entrySet()) {
+            manifest.setProperty("tombstone." + i + ".source", tombstone.getKey());
+            manifest.setProperty("tombstone." + i + ".before", Long.toString(tombstone.getValue()));
+            i++;
+        }
+
+        Path tmp = directory.resolve("manifest.properties.tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            manifest.store(out, "rag-simple segment");
+        }
+        Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void replayWal() throws IOException {
+        if (!Files.exists(walFile) || Files.size(walFile) < WAL_HEADER_BYTES) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(WAL_HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != WAL_MAGIC) {
+                return;
+            }
+            long[] baseCount = {header.getLong()};
+
+            // primera pasada: de cada transacción solo se anota dónde empieza y cuántos registros tiene
+            List<CommittedTransaction> committed = new ArrayList<>();
+            Map<Long, long[]> pending = new HashMap<>();
+            forEachWalRecord(channel, WAL_HEADER_BYTES, channel.size(), (offset, type, record) -> {
+                long transactionId = record.getLong();
+                if (type == RECORD_CHUNK) {
+                    pending.computeIfAbsent(transactionId, id -> new long[] {offset, 0})[1]++;
+                } else if (type == RECORD_COMMIT) {
+                    long[] transaction = pending.remove(transactionId);
+                    committed.add(new CommittedTransaction(transactionId,
+                            transaction != null ? transaction[0] : offset, offset,
+                            transaction != null ? transaction[1] : 0, decodeReplacedSource(record)));
+                } else if (type == RECORD_CLEAR) {
+                    // lo confirmado antes del vaciado ya no cuenta; las cargas abiertas siguen
+                    committed.clear();
+                    baseCount[0] = 0;
+                }
+            });
+
+            // las transacciones que el manifest ya contiene se aplicaron antes de la caída (con su lápida);
+            // las demás se vuelven a leer del WAL
+            long position = baseCount[0];
+            for (CommittedTransaction transaction : committed) {
+                long end = position + transaction.chunks;
+                if (end > count) {
+                    apply(channel, transaction.id, transaction.firstRecord, transaction.commitRecord,
+                            transaction.chunks, transaction.replacedSource);
+                } else if (transaction.replacedSource != null) {
+                    tombstones.merge(transaction.replacedSource, position, Math::max);
+                }
+                position = end;
+            }
+        }
+    }
+
+    private void truncateSegments() throws IOException {
+        truncate(vectorsFile, count * dimensions * Float.BYTES);
+        truncate(indexFile, count * INDEX_ENTRY_BYTES);
+        truncate(blobFile, blobBytes);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+        }
+    }
+
+    /*
+    Agrega al segmento los chunks registros de la transacción, leyéndolos del WAL entre from y su COMMIT
+    (to): la carga no los retiene en memoria. Después aplica la lápida del documento reemplazado y
+    publica el manifest; si algo falla antes, los bytes escritos quedan fuera de count y se sobrescriben.
+    */
+    private void apply(FileChannel walChannel, long transactionId, long from, long to, long chunks,
+                       String replacedSource) throws IOException {
+        long before = count;
+        Map<String, Long> applied = new HashMap<>();
+        if (chunks > 0) {
+            try (FileChannel vectors = openForAppend(vectorsFile, count * dimensions * Float.BYTES);
+                 FileChannel index = openForAppend(indexFile, count * INDEX_ENTRY_BYTES);
+                 FileChannel blob = openForAppend(blobFile, blobBytes)) {
+                SegmentWriter writer = new SegmentWriter(vectors, index, blob, blobBytes);
+                forEachWalRecord(walChannel, from, to, (offset, type, record) -> {
+                    if (type != RECORD_CHUNK || record.getLong() != transactionId) {
+                        return;
+                    }
+                    StoredChunk chunk = decodeChunk(record);
+                    if (dimensions == 0) {
+                        dimensions = chunk.vector.length;
+                    }
+                    writer.write(chunk.source, chunk.text, chunk.vector);
+                    applied.merge(chunk.source, 1L, Long::sum);
+                });
+                writer.force();
+                count += chunks;
+                blobBytes = writer.offset;
+            }
+        }
+
+        applied.forEach((source, records) -> liveRecords.merge(source, records, Long::sum));
+        if (replacedSource != null) {
+            tombstone(replacedSource, before, applied.getOrDefault(replacedSource, 0L));
+        }
+        writeManifest();
+    }
+
+    // los registros de source anteriores a before quedan muertos; survivors son los posteriores ya aplicados
+    private void tombstone(String source, long before, long survivors) {
+        tombstones.merge(source, before, Math::max);
+        long live = liveRecords.getOrDefault(source, 0L);
+        deadRecords += Math.max(0, live - survivors);
+        if (survivors > 0) {
+            liveRecords.put(source, survivors);
+        } else {
+            liveRecords.remove(source);
+        }
+    }
+
+    private boolean isLive(long position, String source) {
+        return position >= tombstones.getOrDefault(source, 0L);
+    }
+
+    private void loadSegments(ChunkLoader loader) throws IOException {
+        liveRecords.clear();
+        deadRecords = 0;
+        forEachRecord((position, source, text, vector) -> {
+            if (isLive(position, source)) {
+                liveRecords.merge(source, 1L, Long::sum);
+                loader.accept(source, text, vector);
+            } else {
+                deadRecords++;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void accept(long position, String source, String text, float[] vector) throws IOException;
+    }
+
+    private void forEachRecord(RecordVisitor visitor) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        try (FileChannel vectors = FileChannel.open(vectorsFile, StandardOpenOption.READ);
+             FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel blob = FileChannel.open(blobFile, StandardOpenOption.READ)) {
+
+            int vectorBytes = dimensions * Float.BYTES;
+            MappedReader vectorReader = new MappedReader(vectors, 0, count * vectorBytes, ByteOrder.LITTLE_ENDIAN);
+            MappedReader indexReader = new MappedReader(index, 0, count * INDEX_ENTRY_BYTES, ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer blobBuffer = ByteBuffer.allocate(0);
+
+            for (long i = 0; i < count; i++) {
+                float[] vector = new float[dimensions];
+                vectorReader.require(vectorBytes).asFloatBuffer().get(vector);
+                vectorReader.skip(vectorBytes);
+
+                ByteBuffer entry = indexReader.require(INDEX_ENTRY_BYTES);
+                long offset = entry.getLong();
+                int sourceLength = entry.getInt();
+                int textLength = entry.getInt();
+
+                // el blob se lee con lecturas posicionales: un registro nunca ocupa más que su origen y su texto
+                int recordBytes = sourceLength + textLength;
+                if (blobBuffer.capacity() < recordBytes) {
+                    blobBuffer = ByteBuffer.allocate(Math.max(recordBytes, blobBuffer.capacity() * 2));
+                }
+                blobBuffer.clear().limit(recordBytes);
+                readFully(blob, blobBuffer, offset);
+                String source = StandardCharsets.UTF_8.decode(blobBuffer.slice(0, sourceLength)).toString();
+                String text = StandardCharsets.UTF_8.decode(blobBuffer.slice(sourceLength, textLength)).toString();
+
+                visitor.accept(i, source, text, vector);
+            }
+        }
+    }
+
+    /*
+    Lectura secuencial de [start, end) de un archivo mapeado por ventanas de a lo sumo MAP_WINDOW_BYTES: un
+    solo FileChannel.map no admite más de 2 GB. require(n) devuelve el buffer posicionado en la lectura
+    actual con al menos n bytes disponibles, volviendo a mapear desde ahí si el registro cruza el final
+    de la ventana; quien llama debe comprobar antes con remaining() que esos bytes existen.
+    */
+    private static class MappedReader {
+
+        private final FileChannel channel;
+        private final long end;
+        private final ByteOrder order;
+        private ByteBuffer window = ByteBuffer.allocate(0);
+        private long windowStart;
+
+        private MappedReader(FileChannel channel, long start, long end, ByteOrder order) {
+            this.channel = channel;
+            this.end = end;
+            this.order = order;
+            this.windowStart = start;
+        }
+
+        private long position() {
+            return windowStart + window.position();
+        }
+
+        private long remaining() {
+            return end - position();
+        }
+
+        private ByteBuffer require(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = position();
+                long size = Math.min(end - position, Math.max(MAP_WINDOW_BYTES, bytes));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(order);
+                windowStart = position;
+            }
+            return window;
+        }
+
+        // avanza después de leer a través de una vista (asFloatBuffer no mueve la posición del buffer)
+        private void skip(int bytes) {
+            window.position(window.position() + bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WalVisitor {
+        void accept(long offset, byte type, ByteBuffer record) throws IOException;
+    }
+
+    // recorre los registros del WAL en [from, to) hasta el primero incompleto o con CRC inválido
+    private static void forEachWalRecord(FileChannel channel, long from, long to, WalVisitor visitor)
+            throws IOException {
+        MappedReader reader = new MappedReader(channel, from, to, ByteOrder.BIG_ENDIAN);
+        while (reader.remaining() >= 1 + Integer.BYTES) {
+            long offset = reader.position();
+            ByteBuffer buffer = reader.require(1 + Integer.BYTES);
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || reader.remaining() < (long) length + Integer.BYTES) {
+                return;
+            }
+            buffer = reader.require(length + Integer.BYTES);
+            byte[] body = new byte[length];
+            buffer.get(body);
+            if (buffer.getInt() != crc(type, body)) {
+                return;
+            }
+            visitor.accept(offset, type, ByteBuffer.wrap(body));
+        }
+    }
+
+    // escribe registros al final de los tres archivos del segmento
+    private class SegmentWriter {
+
+        private final FileChannel vectors;
+        private final FileChannel index;
+        private final FileChannel blob;
+        private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private ByteBuffer vectorBuffer;
+        private long offset;
+
+        private SegmentWriter(FileChannel vectors, FileChannel index, FileChannel blob, long offset) {
+            this.vectors = vectors;
+            this.index = index;
+            this.blob = blob;
+            this.offset = offset;
+        }
+
+        private void write(String source, String text, float[] vector) throws IOException {
+            // las dimensiones pueden fijarse recién con el primer registro
+            if (vectorBuffer == null) {
+                vectorBuffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            vectorBuffer.clear();
+            vectorBuffer.asFloatBuffer().put(vector);
+            writeFully(vectors, vectorBuffer);
+
+            byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+            byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+            writeFully(blob, ByteBuffer.wrap(sourceBytes));
+            writeFully(blob, ByteBuffer.wrap(textBytes));
+
+            indexBuffer.clear();
+            indexBuffer.putLong(offset).putInt(sourceBytes.length).putInt(textBytes.length).flip();
+            writeFully(index, indexBuffer);
+            offset += sourceBytes.length + textBytes.length;
+        }
+
+        private void force() throws IOException {
+            vectors.force(false);
+            index.force(false);
+            blob.force(false);
+        }
+    }
+
+    private void resetWal() throws IOException {
+        if (wal != null) {
+            wal.close();
+        }
+        wal = FileChannel.open(walFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(WAL_HEADER_BYTES);
+        header.putInt(WAL_MAGIC).putLong(count).flip();
+        writeFully(wal, header);
+        wal.force(false);
+    }
+
+    private void writeWalRecord(byte type, byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(1 + Integer.BYTES + body.length + Integer.BYTES);
+        record.put(type).putInt(body.length).put(body).putInt(crc(type, body)).flip();
+        writeFully(wal, record);
+    }
+
+    private static byte[] encodeChunk(long transactionId, String chunkSource, String chunkText, float[] vector) {
+        byte[] source = chunkSource.getBytes(StandardCharsets.UTF_8);
+        byte[] text = chunkText.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES * 3 + source.length + text.length
+                + vector.length * Float.BYTES);
+        buffer.putLong(transactionId);
+        buffer.putInt(source.length).put(source);
+        buffer.putInt(text.length).put(text);
+        buffer.putInt(vector.length);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+
+    private static StoredChunk decodeChunk(ByteBuffer buffer) {
+        byte[] source = new byte[buffer.getInt()];
+        buffer.get(source);
+        byte[] text = new byte[buffer.getInt()];
+        buffer.get(text);
+        float[] vector = new float[buffer.getInt()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = buffer.getFloat();
+        }
+        return new StoredChunk(new String(source, StandardCharsets.UTF_8),
+                new String(text, StandardCharsets.UTF_8), vector);
+    }
+
+    // cuerpo del COMMIT: id de la transacción y, opcionalmente, el origen que reemplaza
+    private static byte[] encodeCommit(long transactionId, String replacedSource) {
+        byte[] source = replacedSource != null ? replacedSource.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        return ByteBuffer.allocate(Long.BYTES + Integer.BYTES + source.length)
+                .putLong(transactionId)
+                .putInt(replacedSource != null ? source.length : -1)
+                .put(source)
+                .array();
+    }
+
+    private static String decodeReplacedSource(ByteBuffer buffer) {
+        // los COMMIT escritos antes de existir el reemplazo solo traen el id
+        if (buffer.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] source = new byte[length];
+        buffer.get(source);
+        return new String(source, StandardCharsets.UTF_8);
+    }
+
+    // registros de una carga; se aplican al segmento solo si se confirma. En memoria solo se guarda dónde
+    // empiezan en el WAL y cuántos son
+    public class Transaction {
+
+        private final long id;
+        private long firstRecord = -1;
+        private long appended;
+        private String replacedSource;
+        private boolean closed;
+
+        private Transaction(long id) {
+            this.id = id;
+        }
+
+        public void append(String source, String text, float[] vector) throws IOException {
+            byte[] record = encodeChunk(id, source, text, vector);
+            synchronized (SegmentStore.this) {
+                if (firstRecord < 0) {
+                    firstRecord = wal.position();
+                }
+                writeWalRecord(RECORD_CHUNK, record);
+            }
+            appended++;
+        }
+
+        // al confirmar, los registros anteriores de source quedan reemplazados por los de esta carga
+        public void replaceSource(String source) {
+            this.replacedSource = source;
+        }
+
+        // hace durable la carga y la aplica a los archivos del segmento
+        public void commit() throws IOException {
+            synchronized (SegmentStore.this) {
+                if (closed) {
+                    return;
+                }
+                if (appended > 0 || replacedSource != null) {
+                    long commitRecord = wal.position();
+                    writeWalRecord(RECORD_COMMIT, encodeCommit(id, replacedSource));
+                    wal.force(false);
+                    apply(wal, id, firstRecord, commitRecord, appended, replacedSource);
+                }
+                finish();
+            }
+        }
+
+        // descarta la carga: sus registros quedan en el WAL sin COMMIT y se ignoran al reabrir
+        public void rollback() throws IOException {
+            synchronized (SegmentStore.this) {
+                if (!closed) {
+                    finish();
+                }
+            }
+        }
+
+        private void finish() throws IOException {
+            closed = true;
+            openTransactions--;
+            // sin cargas abiertas todo lo confirmado ya está en el segmento y el WAL puede vaciarse
+            if (openTransactions == 0) {
+                resetWal();
+            }
+        }
+    }
+
+    private static int crc(byte type, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static FileChannel openForAppend(Path file, long position) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(position);
+        return channel;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Fin inesperado de " + channel + " en la posición " + position);
+            }
+        }
+    }
+
+    // transacción confirmada encontrada al reabrir: sus registros están en el WAL entre firstRecord y commitRecord
+    private static class CommittedTransaction {
+        private final long id;
+        private final long firstRecord;
+        private final long commitRecord;
+        private final long chunks;
+        private final String replacedSource;
+
+        private CommittedTransaction(long id, long firstRecord, long commitRecord, long chunks,
+                                     String replacedSource) {
+            this.id = id;
+            this.firstRecord = firstRecord;
+            this.commitRecord = commitRecord;
+            this.chunks = chunks;
+            this.replacedSource = replacedSource;
+        }
+    }
+
+    private static class StoredChunk {
+        private final String source;
+        private final String text;
+        private final float[] vector;
+
+        private StoredChunk(String source, String text, float[] vector) {
+            this.source = source;
+            this.text = text;
+            this.vector = vector;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.rag.rag_simple.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class XxHash64Test {
+
+    // valores de referencia de XXH64 con semilla 0; cubren la cola de bytes sueltos, de 4 y de 8 bytes
+    // y el bucle de bloques de 32 bytes
+    @Test
+    void matchesReferenceVectors() {
+        assertEquals(0xEF46DB3751D8E999L, hash(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, hash("a"));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc"));
+        assertEquals(0x066ED728FCEEB3BEL, hash("message digest"));
+        assertEquals(0xCFE1F278FA89835CL, hash("abcdefghijklmnopqrstuvwxyz"));
+        assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition"));
+        assertEquals(0xE04A477F19EE145DL,
+                hash("12345678901234567890123456789012345678901234567890123456789012345678901234567890"));
+    }
+
+    @Test
+    void seedChangesTheHash() {
+        byte[] input = "párrafo".getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(XxHash64.hash(input, 0), XxHash64.hash(input, 1));
+    }
+
+    private static long hash(String text) {
+        return XxHash64.hash(text.getBytes(StandardCharsets.US_ASCII), 0);
+    }
+}
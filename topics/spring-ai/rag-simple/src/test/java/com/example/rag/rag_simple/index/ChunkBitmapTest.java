@@ -0,0 +1,152 @@
+package com.example.rag.rag_simple.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkBitmapTest {
+
+    @Test
+    void idsAroundContainerBoundaries() {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        int[] ids = {0, 65_535, 65_536, 131_071, 131_072, 3 << 16, Integer.MAX_VALUE};
+        for (int id : ids) {
+            bitmap.add(id);
+        }
+        bitmap.add(65_536);
+        assertEquals(ids.length, bitmap.cardinality());
+        for (int id : ids) {
+            assertTrue(bitmap.contains(id), "id " + id);
+        }
+        assertFalse(bitmap.contains(65_537));
+        assertEquals(toList(ids), toList(bitmap));
+
+        bitmap.remove(65_536);
+        bitmap.remove(65_536);
+        assertFalse(bitmap.contains(65_536));
+        assertEquals(ids.length - 1, bitmap.cardinality());
+    }
+
+    // con más de 4096 ids un contenedor pasa a mapa de bits; al quitar vuelve a arreglo
+    @Test
+    void denseContainerConvertsBothWays() {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int id = 65_536; id < 65_536 + 6000; id++) {
+            bitmap.add(id);
+            expected.add(id);
+        }
+        assertEquals(new ArrayList<>(expected), toList(bitmap));
+
+        for (int id = 65_536; id < 65_536 + 3000; id++) {
+            bitmap.remove(id);
+            expected.remove(id);
+        }
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(new ArrayList<>(expected), toList(bitmap));
+
+        for (Integer id : List.copyOf(expected)) {
+            bitmap.remove(id);
+        }
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void andAndOrMatchSetOperations() {
+        Random random = new Random(3);
+        for (int round = 0; round < 5; round++) {
+            TreeSet<Integer> left = new TreeSet<>();
+            TreeSet<Integer> right = new TreeSet<>();
+            // contenedores dispersos (arreglo) y densos (mapa de bits) en las mismas claves y en claves distintas
+            ChunkBitmap a = randomBitmap(random, left, 5_000 + round * 2_000);
+            ChunkBitmap b = randomBitmap(random, right, 9_000 - round * 1_500);
+
+            TreeSet<Integer> intersection = new TreeSet<>(left);
+            intersection.retainAll(right);
+            TreeSet<Integer> union = new TreeSet<>(left);
+            union.addAll(right);
+
+            ChunkBitmap and = ChunkBitmap.and(a, b);
+            ChunkBitmap or = ChunkBitmap.or(a, b);
+            assertEquals(new ArrayList<>(intersection), toList(and));
+            assertEquals(intersection.size(), and.cardinality());
+            assertEquals(new ArrayList<>(union), toList(or));
+            assertEquals(union.size(), or.cardinality());
+            // los operandos no cambian
+            assertEquals(new ArrayList<>(left), toList(a));
+            assertEquals(new ArrayList<>(right), toList(b));
+        }
+    }
+
+    @Test
+    void forEachInRangeCrossesContainers() {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        for (int id = 0; id < 4 << 16; id += 1000) {
+            bitmap.add(id);
+        }
+        List<Integer> inRange = new ArrayList<>();
+        bitmap.forEachInRange(65_000, 200_000, inRange::add);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 65_000; id < 200_000; id += 1000) {
+            expected.add(id);
+        }
+        assertEquals(expected, inRange);
+
+        List<Integer> empty = new ArrayList<>();
+        bitmap.forEachInRange(1001, 1999, empty::add);
+        bitmap.forEachInRange(5000, 5000, empty::add);
+        assertTrue(empty.isEmpty());
+    }
+
+    @Test
+    void copyIsIndependent() {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        for (int id = 0; id < 5000; id++) {
+            bitmap.add(id);
+        }
+        ChunkBitmap copy = bitmap.copy();
+        copy.remove(10);
+        copy.add(70_000);
+        assertTrue(bitmap.contains(10));
+        assertFalse(bitmap.contains(70_000));
+        assertEquals(5000, bitmap.cardinality());
+        assertEquals(5000, copy.cardinality());
+    }
+
+    private static ChunkBitmap randomBitmap(Random random, TreeSet<Integer> ids, int dense) {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        for (int i = 0; i < dense; i++) {
+            int id = 65_536 + random.nextInt(65_536);
+            bitmap.add(id);
+            ids.add(id);
+        }
+        for (int i = 0; i < 300; i++) {
+            int id = random.nextInt(4 << 16);
+            bitmap.add(id);
+            ids.add(id);
+        }
+        return bitmap;
+    }
+
+    private static List<Integer> toList(ChunkBitmap bitmap) {
+        List<Integer> ids = new ArrayList<>();
+        bitmap.forEach(ids::add);
+        return ids;
+    }
+
+    private static List<Integer> toList(int[] ids) {
+        List<Integer> list = new ArrayList<>();
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.rag.rag_simple.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswVectorIndexTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final int VECTORS = 3000;
+    private static final int K = 10;
+
+    // los niveles del grafo son aleatorios, así que se exige un recall medio holgado y no uno exacto
+    @Test
+    void recallAgainstExactSearch() {
+        Random random = new Random(1);
+        FloatVectorStore store = new FloatVectorStore(DIMENSIONS, VECTORS);
+        HnswVectorIndex index = new HnswVectorIndex(store, 16, 200, 100);
+        for (int i = 0; i < VECTORS; i++) {
+            index.add(store.add(randomVector(random)));
+        }
+
+        int queries = 50;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<Integer> exact = ids(index.searchExact(query, K));
+            for (SearchResult result : index.search(query, K)) {
+                if (exact.contains(result.getId())) {
+                    found++;
+                }
+            }
+        }
+        double recall = (double) found / (queries * K);
+        assertTrue(recall >= 0.9, "recall@" + K + " = " + recall);
+    }
+
+    @Test
+    void filteredSearchOnlyReturnsCandidates() {
+        Random random = new Random(2);
+        FloatVectorStore store = new FloatVectorStore(DIMENSIONS, 1000);
+        HnswVectorIndex index = new HnswVectorIndex(store, 8, 100, 50);
+        ChunkBitmap candidates = new ChunkBitmap();
+        for (int i = 0; i < 1000; i++) {
+            int id = store.add(randomVector(random));
+            index.add(id);
+            if (i % 2 == 0) {
+                candidates.add(id);
+            }
+        }
+
+        float[] query = randomVector(random);
+        List<SearchResult> results = index.search(query, K, candidates);
+        assertEquals(K, results.size());
+        results.forEach(result -> assertTrue(candidates.contains(result.getId()), "id " + result.getId()));
+    }
+
+    @Test
+    void emptyIndexReturnsNothing() {
+        HnswVectorIndex index = new HnswVectorIndex(new FloatVectorStore(DIMENSIONS, 1), 16, 200, 100);
+        assertTrue(index.search(new float[DIMENSIONS], K).isEmpty());
+    }
+
+    @Test
+    void vectorReturnsTheNormalizedStoredVector() {
+        FloatVectorStore store = new FloatVectorStore(2, 1);
+        HnswVectorIndex index = new HnswVectorIndex(store, 16, 200, 100);
+        index.add(store.add(new float[]{3, 4}));
+        assertArrayEquals(new float[]{0.6f, 0.8f}, index.vector(0), 1e-6f);
+    }
+
+    @Test
+    void rejectsParametersThatBreakTheGraph() {
+        FloatVectorStore store = new FloatVectorStore();
+        assertThrows(IllegalArgumentException.class, () -> new HnswVectorIndex(store, 1, 200, 100));
+        assertThrows(IllegalArgumentException.class, () -> new HnswVectorIndex(store, 16, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new HnswVectorIndex(store, 16, 200, 0));
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static Set<Integer> ids(List<SearchResult> results) {
+        Set<Integer> ids = new HashSet<>();
+        results.forEach(result -> ids.add(result.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.rag.rag_simple.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    @Test
+    void keepsTheKBestSortedDescending() {
+        Random random = new Random(42);
+        float[] scores = new float[1000];
+        TopK topK = new TopK(10);
+        for (int id = 0; id < scores.length; id++) {
+            scores[id] = random.nextFloat() * 2 - 1;
+            topK.offer(id, scores[id]);
+        }
+
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        List<SearchResult> results = topK.toSortedList();
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(sorted[sorted.length - 1 - i], results.get(i).getScore());
+            assertEquals(scores[results.get(i).getId()], results.get(i).getScore());
+        }
+        assertEquals(sorted[sorted.length - 10], topK.minScore());
+    }
+
+    @Test
+    void minScoreIsNegativeInfinityUntilFull() {
+        TopK topK = new TopK(3);
+        topK.offer(1, 0.5f);
+        topK.offer(2, 0.7f);
+        assertEquals(2, topK.size());
+        assertEquals(Float.NEGATIVE_INFINITY, topK.minScore());
+        topK.offer(3, 0.1f);
+        assertEquals(0.1f, topK.minScore());
+    }
+
+    @Test
+    void worseScoreThanTheRootIsIgnored() {
+        TopK topK = new TopK(2);
+        topK.offer(1, 0.9f);
+        topK.offer(2, 0.8f);
+        topK.offer(3, 0.8f);
+        topK.offer(4, 0.1f);
+        List<SearchResult> results = topK.toSortedList();
+        assertEquals(List.of(1, 2), results.stream().map(SearchResult::getId).toList());
+    }
+
+    @Test
+    void zeroCapacityKeepsNothing() {
+        TopK topK = new TopK(0);
+        topK.offer(1, 1.0f);
+        assertEquals(0, topK.size());
+        assertTrue(topK.toSortedList().isEmpty());
+    }
+
+    // la búsqueda paralela reparte el escaneo en trozos y fusiona sus TopK: el resultado es el mismo
+    @Test
+    void mergeEqualsASingleScan() {
+        Random random = new Random(7);
+        TopK single = new TopK(5);
+        TopK left = new TopK(5);
+        TopK right = new TopK(5);
+        for (int id = 0; id < 200; id++) {
+            float score = random.nextFloat();
+            single.offer(id, score);
+            (id < 100 ? left : right).offer(id, score);
+        }
+        left.merge(right);
+        assertEquals(ids(single), ids(left));
+    }
+
+    private static List<Integer> ids(TopK topK) {
+        return topK.toSortedList().stream().map(SearchResult::getId).toList();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.model.DocumentChunk;
+import com.example.rag.rag_simple.model.ScoredChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPackerTest {
+
+    @Test
+    void estimatesTokensPerWordAndPunctuation() {
+        // hola = 1, mundo = 2, "." = 1; los espacios no cuentan
+        assertEquals(4, ContextPacker.estimateTokens("hola mundo."));
+        assertEquals(0, ContextPacker.estimateTokens("  \n "));
+        assertEquals(3, ContextPacker.estimateTokens("---"));
+    }
+
+    @Test
+    void contextStaysWithinTheBudget() {
+        ContextPacker packer = new ContextPacker(40, 1.0, 0.8);
+        List<ScoredChunk> candidates = List.of(
+                scored(1, "El índice segmentado guarda los vectores en memoria.", 0.9f),
+                scored(2, "La caché semántica responde preguntas parecidas sin llamar al modelo.", 0.8f),
+                scored(3, "Ollama genera la respuesta a partir del contexto recuperado.", 0.7f),
+                scored(4, "Los fragmentos se agrupan por párrafos antes de calcular embeddings.", 0.6f));
+
+        ContextPacker.PackedContext packed = packer.pack(candidates, chunk -> null);
+        assertTrue(packed.getTokens() <= 40, "tokens = " + packed.getTokens());
+        assertEquals(ContextPacker.estimateTokens(packed.getText()), packed.getTokens());
+        assertTrue(packed.getChunks().size() < candidates.size());
+        assertEquals(1, packed.getChunks().get(0).getChunk().getId());
+    }
+
+    // un pasaje que no cabe se salta, pero uno posterior más corto todavía puede entrar
+    @Test
+    void skipsAPassageThatDoesNotFitAndKeepsAShorterOne() {
+        ContextPacker packer = new ContextPacker(25, 1.0, 0.8);
+        List<ScoredChunk> candidates = List.of(
+                scored(1, "Primer pasaje con algunas palabras.", 0.9f),
+                scored(2, "Un pasaje bastante más largo que ya no entra en lo que queda del presupuesto.", 0.8f),
+                scored(3, "Corto.", 0.7f));
+
+        ContextPacker.PackedContext packed = packer.pack(candidates, chunk -> null);
+        assertEquals(List.of(1, 3), ids(packed));
+        assertTrue(packed.getTokens() <= 25);
+    }
+
+    @Test
+    void firstPassageIsTruncatedInsteadOfLeavingTheContextEmpty() {
+        ContextPacker packer = new ContextPacker(5, 1.0, 0.8);
+        ContextPacker.PackedContext packed = packer.pack(
+                List.of(scored(1, "uno dos tres cuatro cinco seis siete ocho nueve diez", 1.0f)), chunk -> null);
+        assertEquals(List.of(1), ids(packed));
+        assertFalse(packed.getText().isEmpty());
+        assertTrue(ContextPacker.estimateTokens(packed.getText()) <= 5);
+        assertTrue("uno dos tres cuatro cinco seis siete ocho nueve diez".startsWith(packed.getText()));
+    }
+
+    @Test
+    void repeatedSentencesAreDroppedAcrossPassages() {
+        ContextPacker packer = new ContextPacker(500, 1.0, 0.8);
+        List<ScoredChunk> candidates = List.of(
+                scored(1, "Las cargas se aplican desde el WAL. El manifest es la fuente de verdad.", 0.9f),
+                scored(2, "El manifest es la fuente de verdad. La compactación reescribe los archivos.", 0.8f),
+                scored(3, "Las cargas se aplican desde el WAL.", 0.7f));
+
+        ContextPacker.PackedContext packed = packer.pack(candidates, chunk -> null);
+        assertEquals(List.of(1, 2), ids(packed));
+        assertEquals(2, packed.getDroppedSentences());
+        assertEquals(1, count(packed.getText(), "fuente de verdad"));
+        assertTrue(packed.getText().contains("La compactación reescribe los archivos."));
+    }
+
+    // con lambda 0.5 un candidato casi igual al primero pierde contra uno menos relevante pero distinto
+    @Test
+    void mmrPrefersADiverseCandidateOverANearDuplicate() {
+        ContextPacker packer = new ContextPacker(500, 0.5, 0.8);
+        Map<Integer, float[]> vectors = Map.of(
+                1, new float[]{1, 0},
+                2, new float[]{0.99f, 0.141f},
+                3, new float[]{0, 1});
+        List<ScoredChunk> candidates = List.of(
+                scored(1, "Configurar la cuota de memoria por colección.", 0.9f),
+                scored(2, "Ajustar el presupuesto total de memoria compartido.", 0.89f),
+                scored(3, "Elegir el modelo de embeddings de Ollama.", 0.5f));
+
+        ContextPacker.PackedContext packed = packer.pack(candidates, chunk -> vectors.get(chunk.getId()));
+        assertEquals(List.of(1, 3, 2), ids(packed));
+    }
+
+    private static ScoredChunk scored(int id, String text, float score) {
+        return new ScoredChunk(new DocumentChunk(id, id, text, "doc.txt"), score);
+    }
+
+    private static List<Integer> ids(ContextPacker.PackedContext packed) {
+        return packed.getChunks().stream().map(chunk -> chunk.getChunk().getId()).toList();
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
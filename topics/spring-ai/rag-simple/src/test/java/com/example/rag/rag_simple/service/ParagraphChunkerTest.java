@@ -0,0 +1,125 @@
+package com.example.rag.rag_simple.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParagraphChunkerTest {
+
+    @Test
+    void groupsParagraphsUpToChunkSize() {
+        ParagraphChunker chunker = new ParagraphChunker(20);
+        List<String> chunks = chunker.split("uno dos\n\ntres cuatro\r\n\r\n\n\ncinco seis siete");
+        assertEquals(List.of("uno dos\n\ntres cuatro", "cinco seis siete"), chunks);
+    }
+
+    @Test
+    void singleNewlineStaysInsideTheParagraph() {
+        ParagraphChunker chunker = new ParagraphChunker(100);
+        assertEquals(List.of("línea uno\nlínea dos"), chunker.split("línea uno\nlínea dos\n"));
+    }
+
+    @Test
+    void longParagraphIsCutAtTheLastSpace() {
+        ParagraphChunker chunker = new ParagraphChunker(10);
+        List<String> chunks = chunker.split("aaaa bbbb cccc dddd");
+        assertEquals(List.of("aaaa bbbb", "cccc dddd"), chunks);
+        chunks.forEach(chunk -> assertTrue(chunk.length() <= 10, chunk));
+    }
+
+    // el InputStream se decodifica en ventanas de 8 KB: un carácter de varios bytes, un \r\n o una línea
+    // en blanco partidos entre dos lecturas no deben cambiar los fragmentos
+    @Test
+    void streamMatchesStringAcrossDecodeWindows() throws IOException {
+        String text = sampleText(40_000);
+        ParagraphChunker chunker = new ParagraphChunker(500);
+        List<String> expected = chunker.split(text);
+        assertTrue(expected.size() > 50);
+
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        for (int step : new int[]{1, 7, 8191, 8193, utf8.length}) {
+            assertEquals(expected, splitStream(chunker, new SlowInputStream(utf8, step), StandardCharsets.UTF_8),
+                    "lecturas de " + step + " bytes");
+        }
+        // desplazar el texto mueve las fronteras de la ventana por dentro de los caracteres de dos bytes
+        for (int shift = 1; shift <= 3; shift++) {
+            String shifted = "x".repeat(shift) + "\n\n" + text;
+            assertEquals(chunker.split(shifted), splitStream(chunker,
+                    new ByteArrayInputStream(shifted.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void streamReturnsTheNumberOfChunks() throws IOException {
+        ParagraphChunker chunker = new ParagraphChunker(30);
+        String text = sampleText(5_000);
+        List<String> chunks = new ArrayList<>();
+        int emitted = chunker.split(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_16LE)),
+                StandardCharsets.UTF_16LE, chunks::add);
+        assertEquals(chunks.size(), emitted);
+        assertEquals(chunker.split(text), chunks);
+    }
+
+    private static List<String> splitStream(ParagraphChunker chunker, InputStream in, Charset charset)
+            throws IOException {
+        List<String> chunks = new ArrayList<>();
+        chunker.split(in, charset, chunks::add);
+        return chunks;
+    }
+
+    // párrafos con acentos y eñes (dos bytes en UTF-8), saltos \r\n y líneas en blanco repetidas
+    private static String sampleText(int length) {
+        String[] words = {"análisis", "índice", "señal", "vector", "búsqueda", "año", "fragmento", "corazón"};
+        StringBuilder text = new StringBuilder();
+        int i = 0;
+        while (text.length() < length) {
+            text.append(words[i % words.length]);
+            i++;
+            if (i % 37 == 0) {
+                text.append(i % 2 == 0 ? "\r\n\r\n" : "\n\n\n");
+            } else if (i % 11 == 0) {
+                text.append('\n');
+            } else {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    // entrega como mucho step bytes por lectura
+    private static class SlowInputStream extends InputStream {
+        private final byte[] data;
+        private final int step;
+        private int position;
+
+        private SlowInputStream(byte[] data, int step) {
+            this.data = data;
+            this.step = step;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, step), data.length - position);
+            System.arraycopy(data, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
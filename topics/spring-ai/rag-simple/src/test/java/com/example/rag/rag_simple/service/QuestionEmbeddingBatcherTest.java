@@ -0,0 +1,192 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.cache.EmbeddingCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuestionEmbeddingBatcherTest {
+
+    // ventana larga: los lotes se cierran al juntar maxBatchSize preguntas, así las pruebas no dependen del reloj
+    private static final long LONG_WINDOW_MILLIS = 60_000;
+
+    private final FakeModel model = new FakeModel();
+    private final ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+    private QuestionEmbeddingBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        model.release.countDown();
+        callers.shutdownNow();
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentQuestionsShareOneCall() throws Exception {
+        batcher = batcher(LONG_WINDOW_MILLIS, 4);
+        List<Future<float[]>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String text = "pregunta " + i;
+            results.add(callers.submit(() -> batcher.embed(text)));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(FakeModel.vectorOf("pregunta " + i), results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, model.batches.size());
+        assertEquals(4, model.batches.get(0).size());
+        assertEquals(4.0, batcher.averageBatchSize());
+    }
+
+    @Test
+    void identicalQuestionsAreSentOnceAndCached() throws Exception {
+        batcher = batcher(LONG_WINDOW_MILLIS, 3);
+        List<Future<float[]>> results = new ArrayList<>();
+        for (String text : List.of("¿qué es un segmento?", "¿qué es un segmento?", "¿qué es el WAL?")) {
+            results.add(callers.submit(() -> batcher.embed(text)));
+        }
+        for (Future<float[]> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1, model.batches.size());
+        assertEquals(2, model.batches.get(0).size());
+        assertEquals(Set.of("¿qué es un segmento?", "¿qué es el WAL?"), Set.copyOf(model.batches.get(0)));
+
+        // la segunda vez sale de la EmbeddingCache sin pasar por el modelo
+        batcher.embed("¿qué es un segmento?");
+        assertEquals(1, model.batches.size());
+    }
+
+    @Test
+    void questionThatTimesOutInTheQueueIsNotSent() throws Exception {
+        batcher = batcher(LONG_WINDOW_MILLIS, 4);
+        assertThrows(TimeoutException.class, () -> batcher.embed("abandonada", Duration.ofMillis(50)));
+
+        // el lote se completa con tres preguntas más; la abandonada se descarta al despacharlo
+        List<Future<float[]>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String text = "pregunta " + i;
+            results.add(callers.submit(() -> batcher.embed(text)));
+        }
+        for (Future<float[]> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        List<String> sent = model.batches.stream().flatMap(List::stream).toList();
+        assertEquals(3, sent.size());
+        assertFalse(sent.contains("abandonada"), sent.toString());
+    }
+
+    @Test
+    void lastWaiterTimingOutCancelsTheCall() throws Exception {
+        batcher = batcher(1, 2);
+        model.block = true;
+        assertThrows(TimeoutException.class, () -> batcher.embed("lenta", Duration.ofMillis(200)));
+        assertTrue(model.interrupted.await(5, TimeUnit.SECONDS), "la llamada al modelo no se canceló");
+    }
+
+    @Test
+    void callIsKeptWhileAnotherQuestionStillWaits() throws Exception {
+        batcher = batcher(LONG_WINDOW_MILLIS, 2);
+        model.block = true;
+        Future<float[]> patient = callers.submit(() -> batcher.embed("paciente", Duration.ofSeconds(30)));
+        assertThrows(TimeoutException.class, () -> batcher.embed("impaciente", Duration.ofMillis(300)));
+
+        model.release.countDown();
+        assertArrayEquals(FakeModel.vectorOf("paciente"), patient.get(5, TimeUnit.SECONDS));
+        assertEquals(1, model.interrupted.getCount());
+    }
+
+    @Test
+    void modelErrorReachesEveryCaller() throws Exception {
+        batcher = batcher(LONG_WINDOW_MILLIS, 2);
+        RuntimeException failure = new IllegalStateException("Ollama no responde");
+        model.failure = failure;
+        Future<float[]> first = callers.submit(() -> batcher.embed("a"));
+        Future<float[]> second = callers.submit(() -> batcher.embed("b"));
+        for (Future<float[]> result : List.of(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    void zeroWindowCallsTheModelDirectly() {
+        batcher = batcher(0, 32);
+        assertArrayEquals(FakeModel.vectorOf("directa"), batcher.embed("directa"));
+        assertEquals(List.of(List.of("directa")), model.batches);
+    }
+
+    private QuestionEmbeddingBatcher batcher(long windowMillis, int maxBatchSize) {
+        EmbeddingCache cache = new EmbeddingCache("test", 1 << 20, "");
+        return new QuestionEmbeddingBatcher(model, cache, windowMillis, maxBatchSize);
+    }
+
+    // registra los lotes recibidos; con block espera a release y avisa si lo interrumpen
+    private static class FakeModel implements EmbeddingModel {
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private volatile boolean block;
+        private volatile RuntimeException failure;
+
+        @Override
+        public List<float[]> embed(List<String> texts) {
+            batches.add(List.copyOf(texts));
+            if (failure != null) {
+                throw failure;
+            }
+            if (block) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new IllegalStateException("Llamada cancelada", e);
+                }
+            }
+            return texts.stream().map(FakeModel::vectorOf).toList();
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return embed(List.of(text)).get(0);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static float[] vectorOf(String text) {
+            return new float[]{text.length(), text.hashCode()};
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.rag.rag_simple.service;
+
+import com.example.rag.rag_simple.cache.EmbeddingCache;
+import com.example.rag.rag_simple.index.SegmentedVectorIndex;
+import com.example.rag.rag_simple.index.VectorIndexFactory;
+import com.example.rag.rag_simple.metrics.RagMetrics;
+import com.example.rag.rag_simple.store.SegmentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagServiceTest {
+
+    private static final String COLLECTION = "general";
+    private static final String SOURCE = "manual.txt";
+
+    @TempDir
+    Path directory;
+
+    private final BlockingModel model = new BlockingModel();
+    private final ExecutorService jobs = Executors.newVirtualThreadPerTaskExecutor();
+    private EmbeddingPipeline pipeline;
+    private QuestionEmbeddingBatcher batcher;
+    private CollectionRegistry collections;
+    private RagService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        RagMetrics metrics = new RagMetrics(new SimpleMeterRegistry());
+        EmbeddingCache cache = new EmbeddingCache("test", 1 << 20, "");
+        VectorIndexFactory indexFactory = new VectorIndexFactory("exact", 16, 200, 100, 4096, 0.3, 50,
+                256, 64, 16, 20, 16384, directory.resolve("vectors").toString());
+        collections = new CollectionRegistry(indexFactory, cache, metrics, directory.toString(), COLLECTION,
+                64, 0, 0, true, 0.95f, 100);
+        collections.abrir();
+        pipeline = new EmbeddingPipeline(model, cache, metrics, 32, 4);
+        batcher = new QuestionEmbeddingBatcher(model, cache, 0, 32);
+        service = new RagService(cache, collections, pipeline, batcher, metrics, new ContextPacker(600, 0.7, 0.8),
+                ChatClient.builder(new UnusedChatModel()), "hybrid", 20, 10, 0.3, 60_000, 5_000, 500, 2_000);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        model.release.countDown();
+        jobs.shutdownNow();
+        service.cerrar();
+        pipeline.shutdown();
+        batcher.shutdown();
+        collections.cerrar();
+    }
+
+    // la segunda carga del mismo documento espera a que confirme la primera y la reemplaza entera,
+    // en memoria y en disco
+    @Test
+    void overlappingUploadsOfTheSameSourceRunOneAfterTheOther() throws Exception {
+        upload(document("v0"));
+
+        model.blockOn("v1");
+        Future<String> first = jobs.submit(() -> upload(document("v1")));
+        assertTrue(model.blocked.await(5, TimeUnit.SECONDS));
+        Future<String> second = jobs.submit(() -> upload(document("v2")));
+
+        // mientras la primera no confirma, la segunda no llega al modelo
+        Thread.sleep(300);
+        assertFalse(model.received("v2"));
+        assertFalse(second.isDone());
+
+        model.release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(paragraphs("v2"), indexedTexts());
+        close();
+        assertEquals(paragraphs("v2"), storedTexts());
+    }
+
+    @Test
+    void deleteWaitsForTheUploadInProgress() throws Exception {
+        model.blockOn("v1");
+        Future<String> upload = jobs.submit(() -> upload(document("v1")));
+        assertTrue(model.blocked.await(5, TimeUnit.SECONDS));
+        Future<Boolean> delete = jobs.submit(() -> service.eliminarDocumento(COLLECTION, SOURCE));
+
+        Thread.sleep(300);
+        assertFalse(delete.isDone());
+
+        model.release.countDown();
+        upload.get(10, TimeUnit.SECONDS);
+        assertTrue(delete.get(10, TimeUnit.SECONDS));
+
+        assertEquals(Set.of(), indexedTexts());
+        close();
+        assertEquals(Set.of(), storedTexts());
+    }
+
+    // los fragmentos de una carga que falla ya pudieron responder preguntas: sus respuestas no deben
+    // guardarse en la caché semántica
+    @Test
+    void failedUploadInvalidatesAnswers() throws Exception {
+        int epoch = epoch();
+        model.failOn("v1");
+        assertThrows(IllegalStateException.class, () -> upload(document("v1")));
+        assertTrue(epoch() > epoch);
+        assertEquals(Set.of(), indexedTexts());
+    }
+
+    private int epoch() {
+        try (RagCollection.Lease lease = collections.acquire(COLLECTION)) {
+            return lease.collection().epoch();
+        }
+    }
+
+    // como al apagar la aplicación: primero se detiene la compactación en segundo plano, después se
+    // cierran los almacenes
+    private void close() throws IOException {
+        service.cerrar();
+        collections.cerrar();
+    }
+
+    private String upload(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), COLLECTION, SOURCE, Set.of(),
+                bytes.length);
+        return service.cargarDocumento(COLLECTION, SOURCE, new ByteArrayInputStream(bytes), job);
+    }
+
+    private Set<String> indexedTexts() {
+        try (RagCollection.Lease lease = collections.acquire(COLLECTION)) {
+            SegmentedVectorIndex index = lease.collection().index();
+            Set<String> texts = new HashSet<>();
+            for (int id : index.chunkIds(SOURCE)) {
+                texts.add(index.snapshot().chunk(id).getText());
+            }
+            return texts;
+        }
+    }
+
+    private Set<String> storedTexts() throws IOException {
+        Set<String> texts = new HashSet<>();
+        SegmentStore store = new SegmentStore(directory);
+        store.open((source, text, vector) -> {
+            if (source.equals(SOURCE)) {
+                texts.add(text);
+            }
+        });
+        store.close();
+        return texts;
+    }
+
+    // párrafos de ~300 caracteres: cada uno queda en su propio fragmento (CHUNK_SIZE = 500)
+    private static Set<String> paragraphs(String version) {
+        Set<String> paragraphs = new LinkedHashSet<>();
+        for (int i = 0; i < 6; i++) {
+            paragraphs.add((version + " párrafo " + i + " del manual de operación.").repeat(8).strip());
+        }
+        return paragraphs;
+    }
+
+    private static String document(String version) {
+        return String.join("\n\n", paragraphs(version));
+    }
+
+    // bloquea la llamada cuyo lote contiene un texto de la versión indicada hasta release
+    private static class BlockingModel implements EmbeddingModel {
+        private final List<String> texts = new CopyOnWriteArrayList<>();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile String blockVersion;
+        private volatile String failVersion;
+
+        void blockOn(String version) {
+            blockVersion = version;
+        }
+
+        void failOn(String version) {
+            failVersion = version;
+        }
+
+        boolean received(String version) {
+            return texts.stream().anyMatch(text -> text.startsWith(version + " "));
+        }
+
+        @Override
+        public List<float[]> embed(List<String> batch) {
+            texts.addAll(batch);
+            String failing = failVersion;
+            if (failing != null && batch.stream().anyMatch(text -> text.startsWith(failing + " "))) {
+                throw new IllegalStateException("Ollama no responde");
+            }
+            String version = blockVersion;
+            if (version != null && batch.stream().anyMatch(text -> text.startsWith(version + " "))) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            return batch.stream().map(BlockingModel::vectorOf).toList();
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return embed(List.of(text)).get(0);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static float[] vectorOf(String text) {
+            return new float[]{text.length(), text.hashCode() % 1000, 1};
+        }
+    }
+
+    private static class UnusedChatModel implements ChatModel {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
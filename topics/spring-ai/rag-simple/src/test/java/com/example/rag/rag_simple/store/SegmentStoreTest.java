@@ -0,0 +1,242 @@
+package com.example.rag.rag_simple.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentStoreTest {
+
+    private static final int DIMENSIONS = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenRestoresCommittedChunksInOrder() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        SegmentStore.Transaction transaction = store.begin();
+        for (int i = 0; i < 10; i++) {
+            transaction.append("doc.txt", "párrafo " + i, vector(i));
+        }
+        transaction.commit();
+        store.close();
+
+        List<Record> restored = new ArrayList<>();
+        open(restored).close();
+        assertEquals(10, restored.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Record("doc.txt", "párrafo " + i), restored.get(i));
+            assertArrayEquals(vector(i), restored.get(i).vector);
+        }
+    }
+
+    @Test
+    void uncommittedTransactionIsDiscardedOnReopen() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        SegmentStore.Transaction committed = store.begin();
+        committed.append("a.txt", "a0", vector(0));
+        committed.commit();
+
+        // la segunda carga escribe en el WAL pero el proceso "se cae" antes del COMMIT
+        SegmentStore.Transaction open = store.begin();
+        open.append("b.txt", "b0", vector(1));
+        open.append("b.txt", "b1", vector(2));
+        store.close();
+
+        List<Record> restored = new ArrayList<>();
+        assertEquals(1, open(restored).size());
+        assertEquals(List.of(new Record("a.txt", "a0")), restored);
+    }
+
+    @Test
+    void tornWalTailIsIgnored() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        SegmentStore.Transaction first = store.begin();
+        SegmentStore.Transaction second = store.begin();
+        first.append("a.txt", "a0", vector(0));
+        second.append("b.txt", "b0", vector(1));
+        first.append("a.txt", "a1", vector(2));
+        first.commit();
+        second.append("b.txt", "b1", vector(3));
+        store.close();
+
+        // el último registro quedó escrito a medias
+        Path wal = directory.resolve("wal.log");
+        try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        List<Record> restored = new ArrayList<>();
+        open(restored).close();
+        assertEquals(List.of(new Record("a.txt", "a0"), new Record("a.txt", "a1")), restored);
+    }
+
+    @Test
+    void committedTransactionMissingFromManifestIsReplayedFromWal() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        SegmentStore.Transaction first = store.begin();
+        first.append("a.txt", "a0", vector(0));
+        first.commit();
+
+        // una carga abierta impide vaciar el WAL; la caída ocurre después del COMMIT de la segunda
+        // pero antes de publicar su manifest
+        SegmentStore.Transaction open = store.begin();
+        open.append("c.txt", "c0", vector(5));
+        byte[] manifest = Files.readAllBytes(directory.resolve("manifest.properties"));
+        SegmentStore.Transaction second = store.begin();
+        second.append("b.txt", "b0", vector(1));
+        second.append("b.txt", "b1", vector(2));
+        second.commit();
+        store.close();
+        Files.write(directory.resolve("manifest.properties"), manifest);
+
+        List<Record> restored = new ArrayList<>();
+        assertEquals(3, open(restored).size());
+        assertEquals(List.of(new Record("a.txt", "a0"), new Record("b.txt", "b0"), new Record("b.txt", "b1")),
+                restored);
+    }
+
+    @Test
+    void deletedAndReplacedSourcesStayDeadAfterReopen() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        commit(store, null, "a.txt", "a0", "a1");
+        commit(store, null, "b.txt", "b0");
+        store.deleteSource("a.txt");
+        commit(store, "b.txt", "b.txt", "b0 v2", "b1 v2");
+        assertEquals(3, store.deadRecords());
+        store.close();
+
+        List<Record> restored = new ArrayList<>();
+        assertEquals(5, open(restored).size());
+        assertEquals(List.of(new Record("b.txt", "b0 v2"), new Record("b.txt", "b1 v2")), restored);
+    }
+
+    @Test
+    void compactionRewritesOnlyLiveRecords() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        commit(store, null, "a.txt", "a0", "a1", "a2");
+        commit(store, null, "b.txt", "b0");
+        store.deleteSource("a.txt");
+
+        assertFalse(store.compactIfNeeded(0.9));
+        assertTrue(store.compactIfNeeded(0.5));
+        assertEquals(1, store.size());
+        assertEquals(0, store.deadRecords());
+        assertTrue(Files.exists(directory.resolve("chunks-1.idx")));
+        assertFalse(Files.exists(directory.resolve("chunks.idx")));
+
+        // lo que se agrega después de compactar va a la nueva generación
+        commit(store, null, "c.txt", "c0");
+        store.close();
+
+        List<Record> restored = new ArrayList<>();
+        assertEquals(2, open(restored).size());
+        assertEquals(List.of(new Record("b.txt", "b0"), new Record("c.txt", "c0")), restored);
+    }
+
+    @Test
+    void compactionWaitsForOpenTransactions() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        commit(store, null, "a.txt", "a0");
+        store.deleteSource("a.txt");
+
+        SegmentStore.Transaction open = store.begin();
+        assertFalse(store.compactIfNeeded(0.1));
+        open.rollback();
+        assertTrue(store.compactIfNeeded(0.1));
+        store.close();
+    }
+
+    @Test
+    void clearKeepsRecordsOfOpenTransactions() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        commit(store, null, "a.txt", "a0");
+
+        SegmentStore.Transaction transaction = store.begin();
+        transaction.append("b.txt", "b0", vector(1));
+        store.clear();
+        transaction.append("b.txt", "b1", vector(2));
+        transaction.commit();
+        assertEquals(2, store.size());
+        store.close();
+
+        List<Record> restored = new ArrayList<>();
+        open(restored).close();
+        assertEquals(List.of(new Record("b.txt", "b0"), new Record("b.txt", "b1")), restored);
+    }
+
+    @Test
+    void replayIgnoresCommitsBeforeClear() throws IOException {
+        SegmentStore store = open(new ArrayList<>());
+        SegmentStore.Transaction open = store.begin();
+        open.append("c.txt", "c0", vector(5));
+        commit(store, null, "a.txt", "a0");
+        store.clear();
+
+        // caída después del COMMIT de la segunda carga, antes de publicar su manifest
+        byte[] manifest = Files.readAllBytes(directory.resolve("manifest.properties"));
+        commit(store, null, "b.txt", "b0");
+        store.close();
+        Files.write(directory.resolve("manifest.properties"), manifest);
+
+        List<Record> restored = new ArrayList<>();
+        open(restored).close();
+        assertEquals(List.of(new Record("b.txt", "b0")), restored);
+    }
+
+    private SegmentStore open(List<Record> restored) throws IOException {
+        SegmentStore store = new SegmentStore(directory);
+        store.open((source, text, vector) -> restored.add(new Record(source, text, vector)));
+        return store;
+    }
+
+    private static void commit(SegmentStore store, String replacedSource, String source, String... texts)
+            throws IOException {
+        SegmentStore.Transaction transaction = store.begin();
+        if (replacedSource != null) {
+            transaction.replaceSource(replacedSource);
+        }
+        for (String text : texts) {
+            transaction.append(source, text, vector(text.hashCode()));
+        }
+        transaction.commit();
+    }
+
+    private static float[] vector(int seed) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = seed * 10 + i;
+        }
+        return vector;
+    }
+
+    // el vector no participa de equals: las comparaciones de listas solo miran origen y texto
+    private record Record(String source, String text, float[] vector) {
+
+        Record(String source, String text) {
+            this(source, text, null);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Record record && source.equals(record.source) && text.equals(record.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return source.hashCode() * 31 + text.hashCode();
+        }
+    }
+}